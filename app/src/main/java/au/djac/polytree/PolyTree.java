@@ -2,6 +2,7 @@ package au.djac.polytree;
 import au.djac.polytree.languages.*;
 import au.djac.polytree.parsing.*;
 import au.djac.polytree.definitions.*;
+import au.djac.polytree.stats.*;
 import au.djac.polytree.tree.*;
 import au.djac.polytree.view.*;
 
@@ -19,69 +20,139 @@ import java.util.concurrent.Callable;
                      footer = "Copyright (c) 2023-2024 by David J A Cooper.")
 public class PolyTree implements Callable<Integer>
 {
+    private static final int SLOWEST_FILES = 10;
+
     public static void main(String[] args)
     {
         System.exit(new CommandLine(new PolyTree()).execute(args));
     }
 
-    @CommandLine.Parameters(index = "0", description = "Root of the source code directory tree to parse and display.")
+    @CommandLine.Parameters(index = "0", arity = "0..1",
+                            description = "Root of the source code directory tree to parse and display (unless using --read-snapshot).")
     private File directory;
 
     @CommandLine.Option(names = {"-a", "--ascii"},
                         description = "Use standard ASCII symbols only (if non-ASCII box-drawing symbols don't display properly).")
     private boolean ascii;
 
+    @CommandLine.Option(names = {"-p", "--plain"},
+                        description = "Write plain text, without colours (e.g., when saving the output to a file).")
+    private boolean plain;
+
     @CommandLine.Option(names = {"-g", "--grep"},
                         description = "Show usage for the 'grep' command (instead of for the 'ack' command by default).")
     private boolean useGrep;
 
+    @CommandLine.Option(names = {"-s", "--scan"},
+                        description = "Use the faster single-pass scanning parser(s) instead of the regex-based ones.")
+    private boolean scan;
+
+    @CommandLine.Option(names = {"-t", "--threads"},
+                        description = "Number of threads used to read and parse source files (defaults to the number of available processors).")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"-c", "--cache"},
+                        description = "Directory in which to cache parsing results between runs, so that only changed files are re-parsed.")
+    private File cacheDir;
+
+    @CommandLine.Option(names = "--write-snapshot", paramLabel = "FILE",
+                        description = "Also save all the parsed definitions to FILE, which can be displayed later (even without the source code) using --read-snapshot.")
+    private File writeSnapshot;
+
+    @CommandLine.Option(names = "--read-snapshot", paramLabel = "FILE",
+                        description = "Display the definitions saved by --write-snapshot in FILE, instead of parsing a directory.")
+    private File readSnapshot;
+
+    @CommandLine.Option(names = {"-w", "--watch"},
+                        description = "Keep running, and update the display whenever source files change.")
+    private boolean watch;
+
+    @CommandLine.Option(names = {"-f", "--format"}, paramLabel = "FORMAT",
+                        description = "Output format: 'tree' (the default); 'json' (a single document) or 'ndjson' (one line per type), for use by other tools; or 'dot' (Graphviz) or 'mermaid', to draw the inheritance graph.")
+    private String format = "tree";
+
+    @CommandLine.Option(names = "--collapse", paramLabel = "N",
+                        description = "With --format dot or mermaid, replace the subtypes of any type having more than N of them (if none of those has more than N itself; otherwise, those below its other children, if more than N) with a single summary node. 0 (the default) means never.")
+    private int collapse = 0;
+
+    @CommandLine.Option(names = "--parse-budget", paramLabel = "STEPS",
+                        description = "Maximum work (in characters read during regex matching) to spend on any one file with the regex-based parser(s), before falling back to the scanning parser(s). 0 means no limit.")
+    private long parseBudget = ProjectLoader.DEFAULT_PARSE_BUDGET;
+
+    @CommandLine.Option(names = "--stats",
+                        description = "Report the time taken by each phase of the run, and various counts, on stderr.")
+    private boolean showStats;
+
+    @CommandLine.Option(names = "--stats-format", paramLabel = "FORMAT",
+                        description = "Format of the --stats report: 'table' (the default) or 'json'.")
+    private String statsFormat = "table";
+
+    private final Map<Language,TreeBuilder> treeBuilders = new HashMap<>();
+
     @Override
     public Integer call()
     {
+        if(!statsFormat.equals("table") && !statsFormat.equals("json"))
+        {
+            System.err.println("Unknown --stats-format: " + statsFormat + " (expected 'table' or 'json')");
+            return 1;
+        }
+        if(!Set.of("tree", "json", "ndjson", "dot", "mermaid").contains(format))
+        {
+            System.err.println("Unknown --format: " + format + " (expected 'tree', 'json', 'ndjson', 'dot' or 'mermaid')");
+            return 1;
+        }
+        if((directory == null) == (readSnapshot == null))
+        {
+            System.err.println("Expected either a directory or --read-snapshot (but not both)");
+            return 1;
+        }
+        if(readSnapshot != null && watch)
+        {
+            System.err.println("--watch cannot be used with --read-snapshot");
+            return 1;
+        }
+
         try
         {
-            var languageSet = new LanguageSet();
-            var projects = new HashMap<Language,Project>();
-            Files.walk(directory.toPath())
-                .filter(Files::isRegularFile)
-                .filter(path -> !path.toFile().getName().startsWith("._"))
-                .forEach(path ->
-                {
-                    languageSet.getByPath(path).ifPresent(language ->
-                    {
-                        try
-                        {
-                            var project = projects.computeIfAbsent(
-                                language,
-                                _l -> new Project(directory.toString(), language));
-
-                            language.getParser().parse(project, SourceFile.read(project, path));
-                        }
-                        catch(IOException e)
-                        {
-                            throw new UncheckedIOException(e);
-                        }
-                    });
-                });
-
-            projects.forEach((language, project) ->
+            var stats = newStats();
+            if(readSnapshot != null)
             {
-                var treeBuilder = new TreeBuilder();
-                project.walk(TypeDefinition.class).forEach(treeBuilder::addDefinition);
+                var start = stats.start();
+                var projects = Snapshot.read(readSnapshot.toPath())
+                                       .getProjects(new LanguageSet().scanning(scan));
+                stats.record("snapshot read", start);
+                show(projects, stats, false);
+                return 0;
+            }
 
-                var typeNodes = treeBuilder.build();
-                var output = Output.withAnsi().ascii(ascii);
-                new TreeViewer(output).view(typeNodes);
+            var loader = new ProjectLoader(new LanguageSet().scanning(scan))
+                .threads(threads)
+                .parseBudget(parseBudget)
+                .stats(stats);
+            if(cacheDir != null)
+            {
+                loader.cache(new ParseCache(cacheDir.toPath()));
+            }
+            var projects = loader.load(directory.toPath());
+            if(writeSnapshot != null)
+            {
+                var start = stats.start();
+                Snapshot.write(writeSnapshot.toPath(), projects);
+                stats.record("snapshot write", start);
+            }
+            show(projects, stats, false);
+            reportOverBudget(loader);
 
-                new SearchRecommender(output, language)
-                    .useAck(!useGrep)
-                    .showCommands(typeNodes, getAbsPath(directory));
-            });
+            if(watch)
+            {
+                watch(loader, projects);
+            }
             return 0;
         }
         catch(NoSuchFileException e)
         {
-            System.err.println("Directory cannot be found: " + e.getMessage());
+            System.err.println("File or directory cannot be found: " + e.getMessage());
             return 1;
         }
         catch(IOException | UncheckedIOException e)
@@ -91,6 +162,138 @@ public class PolyTree implements Callable<Integer>
         }
     }
 
+    private Stats newStats()
+    {
+        return showStats ? new Stats() : Stats.disabled();
+    }
+
+    /**
+     * Shows the projects in the chosen format, first clearing the screen if asked to (in watch
+     * mode). Only the (non-plain) tree view clears it, since other formats are for other tools.
+     */
+    private void show(Map<Language,Project> projects, Stats stats, boolean clearScreen)
+    {
+        var treeOutput = format.equals("tree")
+            ? (plain ? Output.plain() : Output.withAnsi()).ascii(ascii)
+            : null;
+        if(clearScreen && treeOutput != null && !plain)
+        {
+            treeOutput.clearScreen();
+        }
+
+        var exporter = (format.equals("json") || format.equals("ndjson"))
+            ? new JsonExporter(Output.plain()).ndjson(format.equals("ndjson"))
+            : null;
+        if(exporter != null)
+        {
+            exporter.start();
+        }
+        var graphExporter = format.equals("dot")     ? new DotExporter(Output.plain()).collapse(collapse)
+                          : format.equals("mermaid") ? new MermaidExporter(Output.plain()).collapse(collapse)
+                          : null;
+
+        projects.forEach((language, project) ->
+        {
+            if(stats.isEnabled())
+            {
+                stats.count("definitions (" + language.getName() + ")", project.walk().count());
+
+                // Imports are otherwise resolved on demand while building the tree. Resolve them
+                // all up-front instead, so that the time taken can be reported separately.
+                stats.time("import resolution", () -> project.walk().forEach(ScopedDefinition::getImports));
+            }
+
+            // Keep each language's tree between updates (in watch mode), so that only the types
+            // affected by each change are rebuilt. (Updating disconnects and removes the types
+            // that have changed, so it counts as part of the build.)
+            var treeBuilder = treeBuilders.computeIfAbsent(language, _l -> new TreeBuilder()).stats(stats);
+            var typeNodes = stats.time("TreeBuilder.build", () ->
+            {
+                treeBuilder.update(project.walk(TypeDefinition.class).toList());
+                return treeBuilder.build();
+            });
+            reportCycles(treeBuilder);
+            if(exporter != null)
+            {
+                stats.time("JsonExporter.export", () -> exporter.export(language, typeNodes));
+            }
+            else if(graphExporter != null)
+            {
+                stats.time("GraphExporter.export", () -> graphExporter.export(language.getName(), typeNodes));
+            }
+            else
+            {
+                stats.time("TreeViewer.view", () -> new TreeViewer(treeOutput).view(typeNodes));
+
+                stats.time("SearchRecommender.showCommands", () ->
+                    new SearchRecommender(treeOutput, language)
+                        .useAck(!useGrep)
+                        .showCommands(typeNodes, (directory != null) ? getAbsPath(directory) : project.getName()));
+                treeOutput.flush();
+            }
+
+            stats.count("resolution cache hits", project.getResolutionCache().getHits());
+            stats.count("resolution cache misses", project.getResolutionCache().getMisses());
+        });
+
+        if(exporter != null)
+        {
+            exporter.finish();
+        }
+
+        if(stats.isEnabled())
+        {
+            if(statsFormat.equals("json")) { stats.printJson(System.err, SLOWEST_FILES); }
+            else                           { stats.printTable(System.err, SLOWEST_FILES); }
+        }
+    }
+
+    private void reportOverBudget(ProjectLoader loader)
+    {
+        for(var path : loader.getOverBudget())
+        {
+            System.err.println("Warning: " + path + " took too long to parse, so it was parsed again with a simpler parser.");
+        }
+    }
+
+    private void reportCycles(TreeBuilder treeBuilder)
+    {
+        for(var cycle : treeBuilder.getCycles())
+        {
+            var names = String.join(", ", cycle.stream().map(TypeNode::getName).toList());
+            System.err.println("Warning: inheritance cycle among " + names + "; override links there may be incomplete.");
+        }
+    }
+
+    private void watch(ProjectLoader loader, Map<Language,Project> projects) throws IOException
+    {
+        var root = directory.toPath();
+        try(var watcher = new DirectoryWatcher(root))
+        {
+            while(true)
+            {
+                var changed = watcher.next();
+                var stats = newStats();
+                try
+                {
+                    loader.stats(stats).update(projects, root, changed);
+                }
+                catch(IOException | RuntimeException e)
+                {
+                    // Probably a file caught mid-edit; the next change will pick it up again.
+                    System.err.println("Could not update: " + e.getMessage());
+                    continue;
+                }
+                show(projects, stats, true);
+                reportOverBudget(loader);
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private String getAbsPath(File directory)
     {
         try
@@ -1,17 +1,17 @@
 package au.djac.polytree.definitions;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.util.stream.*;
 import java.util.function.*;
 
 public class AnonymousScope extends ScopedDefinition
 {
-    private static int sequenceNumber = 0;
+    private static final AtomicInteger sequenceNumber = new AtomicInteger();
 
     private static String placeholderName()
     {
-        sequenceNumber++;
-        return "-anonymous-" + sequenceNumber + "-";
+        return "-anonymous-" + sequenceNumber.incrementAndGet() + "-";
     }
 
     public AnonymousScope(SourceFile file, int startPos, int endPos)
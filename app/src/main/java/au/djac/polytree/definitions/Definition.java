@@ -34,6 +34,13 @@ public abstract class Definition
         this.endPos = endPos;
     }
 
+    public void clearLocation()
+    {
+        this.file = Optional.empty();
+        this.startPos = -1;
+        this.endPos = -1;
+    }
+
     public void addModifier(Modifier modifier)
     {
         modifiers.add(modifier);
@@ -1,6 +1,7 @@
 package au.djac.polytree.definitions;
 
 import java.util.*;
+import java.util.function.*;
 import java.util.stream.*;
 
 public class Import
@@ -12,25 +13,54 @@ public class Import
 
     private final ScopedDefinition source;
     private final List<String> localName;
+    private final Predicate<ScopedDefinition> memberFilter; // Only for wildcard imports.
 
     public Import(ScopedDefinition source, List<String> localName)
     {
-        this.source = source;
-        this.localName = Collections.unmodifiableList(new ArrayList<>(localName));
+        this(source, Collections.unmodifiableList(new ArrayList<>(localName)), null);
     }
 
     public Import(ScopedDefinition source, String name)
+    {
+        this(source, List.of(name), null);
+    }
+
+    private Import(ScopedDefinition source, List<String> localName,
+                   Predicate<ScopedDefinition> memberFilter)
     {
         this.source = source;
-        this.localName = List.of(name);
+        this.localName = localName;
+        this.memberFilter = memberFilter;
+    }
+
+    /**
+     * Imports each member of 'source' accepted by 'memberFilter', under its own name (as for a
+     * Java "import pkg.*;"). Members are looked up by name when needed, rather than listed
+     * up-front. (A wildcard import's local name is empty.)
+     */
+    public static Import wildcard(ScopedDefinition source, Predicate<ScopedDefinition> memberFilter)
+    {
+        return new Import(source, List.of(), memberFilter);
     }
 
     public ScopedDefinition getSource() { return source; }
     public List<String> getLocalName()  { return localName; }
+    public boolean isWildcard()         { return memberFilter != null; }
+
+    /**
+     * For a wildcard import, returns the individual imports it makes under 'name'.
+     */
+    public Stream<Import> getMembers(String name)
+    {
+        return source.getNestedNamed(name)
+                     .filter(memberFilter)
+                     .map(member -> new Import(member, name));
+    }
 
     @Override
     public String toString()
     {
-        return String.format("`import %s as %s`", source, localName);
+        return isWildcard() ? String.format("`import %s.*`", source)
+                            : String.format("`import %s as %s`", source, localName);
     }
 }
@@ -1,10 +1,11 @@
 package au.djac.polytree.definitions;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 public class Modifier implements Comparable<Modifier>
 {
-    private static final Map<String,Modifier> mods = new HashMap<>();
+    private static final Map<String,Modifier> mods = new ConcurrentHashMap<>();
 
     public static Modifier ABSTRACT        = named("abstract");
     public static Modifier CLASS_METHOD    = named("classmethod");
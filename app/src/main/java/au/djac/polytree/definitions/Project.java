@@ -7,7 +7,8 @@ import java.util.stream.*;
 public class Project extends ScopedDefinition
 {
     private Language language;
-    private List<SourceFile> sourceFiles = new ArrayList<>();
+    private List<SourceFile> sourceFiles = Collections.synchronizedList(new ArrayList<>());
+    private final ResolutionCache resolutionCache = new ResolutionCache();
 
     public Project(String name, Language language)
     {
@@ -20,11 +21,21 @@ public class Project extends ScopedDefinition
         sourceFiles.add(file);
     }
 
+    public Language getLanguage()
+    {
+        return language;
+    }
+
     public Stream<SourceFile> getSourceFiles()
     {
         return sourceFiles.stream();
     }
 
+    public ResolutionCache getResolutionCache()
+    {
+        return resolutionCache;
+    }
+
     @Override
     public String toString()
     {
@@ -44,6 +44,20 @@ public class QualifiedName
 
     public <D extends ScopedDefinition> Stream<D> resolve(Class<D> defnClass)
     {
-        return (withinScope ? scope : scope.getContaining().get()).resolve(defnClass, names);
+        return getResolutionScope().resolve(defnClass, names);
+    }
+
+    /**
+     * Returns the first definition that resolve() would find, consulting the project's
+     * ResolutionCache.
+     */
+    public <D extends ScopedDefinition> Optional<D> resolveFirst(Class<D> defnClass)
+    {
+        return getResolutionScope().resolveFirst(defnClass, names);
+    }
+
+    private ScopedDefinition getResolutionScope()
+    {
+        return withinScope ? scope : scope.getContaining().get();
     }
 }
@@ -36,6 +36,6 @@ public class QualifiedTypeName extends QualifiedName
 
     public Optional<TypeDefinition> resolve()
     {
-        return resolve(TypeDefinition.class).findFirst();
+        return resolveFirst(TypeDefinition.class);
     }
 }
@@ -0,0 +1,88 @@
+package au.djac.polytree.definitions;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Remembers the results of ScopedDefinition.resolveFirst() for a project, including failures to
+ * find anything. Results are recorded for each scope along the way up the chain of containing
+ * scopes, so that names used throughout (say) a class are resolved from the class's scope only
+ * once.
+ *
+ * The project clears the cache whenever any definitions are added or removed.
+ */
+public class ResolutionCache
+{
+    private static class Key
+    {
+        private final ScopedDefinition scope;
+        private final Class<?> defnClass;
+        private final List<String> names;
+
+        private Key(ScopedDefinition scope, Class<?> defnClass, List<String> names)
+        {
+            this.scope = scope;
+            this.defnClass = defnClass;
+            this.names = names;
+        }
+
+        @Override
+        public boolean equals(Object otherObj)
+        {
+            if(!(otherObj instanceof Key)) { return false; }
+
+            var other = (Key)otherObj;
+            return scope == other.scope && defnClass == other.defnClass && names.equals(other.names);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (System.identityHashCode(scope) * 31 + defnClass.hashCode()) * 31 + names.hashCode();
+        }
+    }
+
+    private final Map<Key,Optional<? extends ScopedDefinition>> results = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the cached result for 'names' in 'scope', or else the result of 'resolver' (which is
+     * then cached). The resolver may itself consult the cache.
+     */
+    <D extends ScopedDefinition> Optional<D> get(ScopedDefinition scope, Class<D> defnClass,
+                                                 List<String> names, Supplier<Optional<D>> resolver)
+    {
+        var result = results.get(new Key(scope, defnClass, names));
+        if(result != null)
+        {
+            hits.incrementAndGet();
+
+            @SuppressWarnings("unchecked")
+            var resultD = (Optional<D>)result;
+            return resultD;
+        }
+
+        misses.incrementAndGet();
+        var resolved = resolver.get();
+        results.put(new Key(scope, defnClass, List.copyOf(names)), resolved);
+        return resolved;
+    }
+
+    /** Discards all results, and resets the hit and miss counts. */
+    public void clear()
+    {
+        if(!results.isEmpty())
+        {
+            results.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    public long getHits()   { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public int size()       { return results.size(); }
+}
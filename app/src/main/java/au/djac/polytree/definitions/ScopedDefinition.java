@@ -1,19 +1,88 @@
 package au.djac.polytree.definitions;
 
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.*;
 import java.util.function.*;
 
 public abstract class ScopedDefinition extends Definition
 {
+    /**
+     * A named scope visible directly within this one, found within 'top', which is either the
+     * same scope or the (nested) anonymous scope(s) containing it.
+     */
+    private static class IndexEntry
+    {
+        private final ScopedDefinition top;
+        private final ScopedDefinition named;
+
+        private IndexEntry(ScopedDefinition top, ScopedDefinition named)
+        {
+            this.top = top;
+            this.named = named;
+        }
+    }
+
     private boolean descendable = false;
     private boolean ascendable = false;
     private Optional<ScopedDefinition> containing = Optional.empty();
     private Optional<String> typeParams           = Optional.empty();
     private final Map<String,ScopedDefinition> nested = new LinkedHashMap<>();
 
+    /**
+     * The imports of a scope, with the positions (in 'all') of the non-wildcard imports indexed
+     * by the first component of their local names. Wildcard imports (and any with an empty local
+     * name) are candidates for every name.
+     */
+    private static class ImportIndex
+    {
+        private final List<Import> all;
+        private final Map<String,List<Integer>> byName = new HashMap<>();
+        private final List<Integer> anyName = new ArrayList<>();
+
+        private ImportIndex(List<Import> all)
+        {
+            this.all = all;
+            for(int i = 0; i < all.size(); i++)
+            {
+                var import_ = all.get(i);
+                if(import_.isWildcard() || import_.getLocalName().isEmpty())
+                {
+                    anyName.add(i);
+                }
+                else
+                {
+                    byName.computeIfAbsent(import_.getLocalName().get(0), _k -> new ArrayList<>()).add(i);
+                }
+            }
+        }
+
+        /**
+         * The imports that could supply 'name' as the first component of a qualified name, in
+         * their original order.
+         */
+        private Stream<Import> get(String name)
+        {
+            var named = byName.getOrDefault(name, List.of());
+            if(anyName.isEmpty())
+            {
+                return named.stream().map(all::get);
+            }
+            return Stream.concat(named.stream(), anyName.stream()).sorted().map(all::get);
+        }
+    }
+
     private final List<Import.Supplier> importSuppliers = new ArrayList<>();
-    private List<Import> imports = null;
+    private ImportIndex imports = null;
+
+    // The named scopes visible directly within this one, by name, for resolveLocally() and
+    // resolveHere(). Built on demand, and discarded whenever the nested definitions change.
+    private volatile Map<String,List<IndexEntry>> nameIndex = null;
+
+    // The results of walk(Class), by class. Built on demand, and discarded whenever anything
+    // within this scope changes.
+    private volatile Map<Class<?>,List<ScopedDefinition>> walkIndex = null;
 
     public ScopedDefinition(SourceFile file, int startPos, int endPos, String name)
     {
@@ -46,11 +115,150 @@ public abstract class ScopedDefinition extends Definition
         }
     }
 
-    public void addNested(ScopedDefinition defn)
+    public synchronized void addNested(ScopedDefinition defn)
     {
         validateNested(defn);
         nested.put(defn.getName(), defn);
         defn.containing = Optional.of(this);
+        nestedChanged();
+    }
+
+    /**
+     * Discards the name index of this scope, and of any scopes that see through it (because it
+     * is anonymous), the walk indexes of this scope and all containing scopes, and the project's
+     * cached resolution results.
+     */
+    private void nestedChanged()
+    {
+        ScopedDefinition scope = this;
+        boolean seenThrough = true;
+        while(true)
+        {
+            if(seenThrough) { scope.nameIndex = null; }
+            scope.walkIndex = null;
+            seenThrough = seenThrough && scope instanceof AnonymousScope;
+            if(scope.containing.isEmpty()) { break; }
+            scope = scope.containing.get();
+        }
+
+        if(scope instanceof Project)
+        {
+            ((Project)scope).getResolutionCache().clear();
+        }
+    }
+
+    /**
+     * Returns the named scopes directly within this one (looking through anonymous scopes) that
+     * are called 'name'.
+     */
+    Stream<ScopedDefinition> getNestedNamed(String name)
+    {
+        return getNameIndex().getOrDefault(name, List.of()).stream().map(entry -> entry.named);
+    }
+
+    private synchronized Map<String,List<IndexEntry>> getNameIndex()
+    {
+        var index = nameIndex;
+        if(index == null)
+        {
+            index = new HashMap<>();
+            for(var top : nested.values())
+            {
+                for(var named : (Iterable<ScopedDefinition>)top.getNamedScopes()::iterator)
+                {
+                    index.computeIfAbsent(named.getName(), _k -> new ArrayList<>())
+                         .add(new IndexEntry(top, named));
+                }
+            }
+            nameIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Removes all nested definitions located in the file 'path' (or in any file under the directory
+     * 'path'), along with everything nested within them, and any packages left empty as a result.
+     *
+     * Packages are shared between files, so a package located in 'path' (e.g., a Python module
+     * or __init__.py) merely loses its location, and keeps any definitions from other files.
+     */
+    public synchronized void removeFrom(Path path)
+    {
+        var it = nested.values().iterator();
+        while(it.hasNext())
+        {
+            var defn = it.next();
+            var defnFile = defn.getSourceFile();
+            var inPath = defnFile.isPresent() && defnFile.get().getPath().startsWith(path);
+
+            if(inPath && !(defn instanceof PackageDefinition))
+            {
+                it.remove();
+                nestedChanged();
+                continue;
+            }
+
+            if(inPath)
+            {
+                defn.clearLocation();
+            }
+            defn.removeFrom(path);
+            if(defn instanceof PackageDefinition && defn.getSourceFile().isEmpty()
+                && defn.nested.isEmpty())
+            {
+                it.remove();
+                nestedChanged();
+            }
+        }
+    }
+
+    /**
+     * Moves everything nested within this scope into 'target', leaving this scope empty. Packages
+     * are shared, so each is merged into the package of the same name in 'target' (created if
+     * necessary), which takes on its location, modifiers, type parameters and import suppliers.
+     */
+    public void moveNestedTo(ScopedDefinition target)
+    {
+        List<ScopedDefinition> moving;
+        synchronized(this)
+        {
+            moving = new ArrayList<>(nested.values());
+            nested.clear();
+            nestedChanged();
+        }
+
+        for(var defn : moving)
+        {
+            if(!(defn instanceof PackageDefinition))
+            {
+                target.addNested(defn);
+                continue;
+            }
+
+            var pkg = target.getOrAddNested(defn.getName(), () ->
+            {
+                var newPkg = new PackageDefinition(defn.getName(),
+                                                   ((PackageDefinition)defn).getConstruct());
+                newPkg.setDescendable(defn.isDescendable());
+                newPkg.setAscendable(defn.isAscendable());
+                return newPkg;
+            });
+            defn.getSourceFile().ifPresent(
+                file -> pkg.setLocation(file, defn.getStartPos(), defn.getEndPos()));
+            defn.getModifiers().forEach(pkg::addModifier);
+            defn.typeParams.ifPresent(pkg::setTypeParams);
+            pkg.addImportSuppliers(defn.importSuppliers);
+            defn.moveNestedTo(pkg);
+        }
+    }
+
+    /**
+     * Discards the imports resolved so far, so that they will be resolved again (against the
+     * current set of definitions) when next needed.
+     */
+    public void clearImports()
+    {
+        imports = null;
     }
 
     public void addImportSupplier(Import.Supplier supplier)
@@ -70,45 +278,123 @@ public abstract class ScopedDefinition extends Definition
     public Stream<ScopedDefinition> getNested()       { return nested.values().stream(); }
     public Stream<ScopedDefinition> getNamedScopes()  { return Stream.of(this); }
 
+    public Stream<Import.Supplier> getImportSuppliers()
+    {
+        return importSuppliers.stream();
+    }
+
     public Stream<Import> getImports()
     {
-        if(imports == null)
+        return getImportIndex().all.stream();
+    }
+
+    private ImportIndex getImportIndex()
+    {
+        var index = imports;
+        if(index == null)
         {
-            imports = importSuppliers.stream().flatMap(Import.Supplier::get).toList();
+            index = new ImportIndex(importSuppliers.stream().flatMap(Import.Supplier::get).toList());
+            imports = index;
         }
-        return imports.stream();
+        return index;
     }
 
-    public Optional<ScopedDefinition> getNested(String name)
+    public synchronized Optional<ScopedDefinition> getNested(String name)
     {
         return Optional.ofNullable(nested.get(name));
     }
 
-    public ScopedDefinition getOrAddNested(String name, Supplier<? extends ScopedDefinition> supplier)
+    public synchronized ScopedDefinition getOrAddNested(String name,
+                                                        Supplier<? extends ScopedDefinition> supplier)
     {
         return nested.computeIfAbsent(name, k ->
         {
             var defn = supplier.get();
             validateNested(defn);
             defn.containing = Optional.of(this);
+            nestedChanged();
             return defn;
         });
     }
 
+    /**
+     * Returns this scope and everything nested within it, depth-first, in the order they were
+     * added.
+     */
     public Stream<ScopedDefinition> walk()
     {
-        return Stream.concat(
-            Stream.of(this),
-            nested.values().stream().flatMap(ScopedDefinition::walk)
-        );
+        return StreamSupport.stream(new WalkSpliterator(this), false);
     }
 
+    /**
+     * An iterative (explicit-stack) walk, so that deep nesting can't overflow the call stack, and
+     * so that short-circuiting operations (findFirst(), etc.) stop walking as soon as they're done.
+     */
+    private static class WalkSpliterator extends Spliterators.AbstractSpliterator<ScopedDefinition>
+    {
+        private ScopedDefinition root;
+        private final Deque<Iterator<ScopedDefinition>> stack = new ArrayDeque<>();
+
+        private WalkSpliterator(ScopedDefinition root)
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+            this.root = root;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ScopedDefinition> action)
+        {
+            if(root != null)
+            {
+                visit(root, action);
+                root = null;
+                return true;
+            }
+
+            while(!stack.isEmpty())
+            {
+                var it = stack.peek();
+                if(it.hasNext())
+                {
+                    visit(it.next(), action);
+                    return true;
+                }
+                stack.pop();
+            }
+            return false;
+        }
+
+        private void visit(ScopedDefinition defn, Consumer<? super ScopedDefinition> action)
+        {
+            if(!defn.nested.isEmpty())
+            {
+                stack.push(defn.nested.values().iterator());
+            }
+            action.accept(defn);
+        }
+    }
+
+    /**
+     * Returns the definitions of the given class (or a subclass) from walk(), in the same order.
+     * The results for each class are kept until something within this scope changes, so that
+     * (for instance) all the types in a project can be listed repeatedly without revisiting every
+     * method.
+     */
     public <D extends ScopedDefinition> Stream<D> walk(Class<D> defnClass)
     {
-        var stream = walk().filter(d -> defnClass.isAssignableFrom(d.getClass()));
+        var index = walkIndex;
+        if(index == null)
+        {
+            index = new ConcurrentHashMap<>();
+            walkIndex = index;
+        }
+
+        var list = index.computeIfAbsent(
+            defnClass,
+            _c -> walk().filter(d -> defnClass.isAssignableFrom(d.getClass())).toList());
 
         @SuppressWarnings("unchecked")
-        var castStream = (Stream<D>)stream;
+        var castStream = (Stream<D>)list.stream();
         return castStream;
     }
 
@@ -123,10 +409,44 @@ public abstract class ScopedDefinition extends Definition
             .flatMap(Supplier::get);
     }
 
+    /**
+     * Returns the first definition that resolve() would find. Results are cached in the project's
+     * ResolutionCache, for this scope and for each containing scope consulted along the way.
+     */
+    public <D extends ScopedDefinition> Optional<D> resolveFirst(Class<D> defnClass, List<String> names)
+    {
+        ScopedDefinition root = this;
+        while(root.containing.isPresent())
+        {
+            root = root.containing.get();
+        }
+
+        if(!(root instanceof Project))
+        {
+            return resolve(defnClass, names).findFirst();
+        }
+        return resolveFirst(defnClass, names, ((Project)root).getResolutionCache());
+    }
+
+    private <D extends ScopedDefinition> Optional<D> resolveFirst(Class<D> defnClass,
+                                                                  List<String> names,
+                                                                  ResolutionCache cache)
+    {
+        return cache.get(this, defnClass, names, () ->
+            resolveLocally(defnClass, names).findFirst()
+                .or(() -> resolveFromImports(defnClass, names).findFirst())
+                .or(() -> ascendable
+                    ? containing.flatMap(superScope -> superScope.resolveFirst(defnClass, names, cache))
+                    : Optional.empty()));
+    }
+
     private <D extends ScopedDefinition> Stream<D> resolveFromImports(Class<D> defnClass,
                                                                       List<String> names)
     {
-        return getImports().flatMap(import_ ->
+        var firstName = names.get(0);
+        return getImportIndex().get(firstName)
+            .flatMap(import_ -> import_.isWildcard() ? import_.getMembers(firstName) : Stream.of(import_))
+            .flatMap(import_ ->
         {
             var importNames = import_.getLocalName();
             var importNameSize = importNames.size();
@@ -160,10 +480,16 @@ public abstract class ScopedDefinition extends Definition
          });
     }
 
+    /**
+     * Finds definitions named by 'names' among the scopes nested within this one, looking through
+     * any anonymous scopes. Each name is a single hash lookup.
+     */
     public <D extends ScopedDefinition> Stream<D> resolveLocally(Class<D> defnClass, List<String> names)
     {
-        return nested.values().stream()
-            .flatMap(subScope -> subScope.resolveHere(defnClass, names));
+        if(names.isEmpty()) { throw new IllegalArgumentException("Name list cannot be empty"); }
+
+        return getNameIndex().getOrDefault(names.get(0), List.of()).stream()
+            .flatMap(entry -> entry.named.resolveMatched(defnClass, names));
     }
 
     public <D extends ScopedDefinition> Stream<D> resolveHere(Class<D> defnClass,
@@ -178,7 +504,16 @@ public abstract class ScopedDefinition extends Definition
         {
             return Stream.empty();
         }
+        return resolveMatched(defnClass, names);
+    }
 
+    /**
+     * Resolves 'names' from this scope, given that the first name is this scope's own.
+     */
+    private <D extends ScopedDefinition> Stream<D> resolveMatched(Class<D> defnClass,
+                                                                  List<String> names)
+    {
+        var size = names.size();
         if(size == 1)
         {
             if(defnClass.isAssignableFrom(getClass()))
@@ -193,8 +528,9 @@ public abstract class ScopedDefinition extends Definition
             }
         }
 
-        return nested.values().stream()
-            .filter(ScopedDefinition::isDescendable)
-            .flatMap(subScope -> subScope.resolveHere(defnClass, names.subList(1, size)));
+        var subNames = names.subList(1, size);
+        return getNameIndex().getOrDefault(subNames.get(0), List.of()).stream()
+            .filter(entry -> entry.top.isDescendable())
+            .flatMap(entry -> entry.named.resolveMatched(defnClass, subNames));
     }
 }
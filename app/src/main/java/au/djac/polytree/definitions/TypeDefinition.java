@@ -8,7 +8,7 @@ public class TypeDefinition extends ScopedDefinition
     private final String construct;
     private final TypeCategory category;
     private Optional<QualifiedTypeName> metaType = Optional.empty();
-    private final Set<QualifiedTypeName> superTypes = new HashSet<>();
+    private final Set<QualifiedTypeName> superTypes = new LinkedHashSet<>(); // In declaration order
 
     public TypeDefinition(SourceFile file, int startPos, int endPos,
                           String name, TypeCategory category, String construct)
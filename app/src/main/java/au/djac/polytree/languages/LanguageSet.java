@@ -9,16 +9,27 @@ import java.util.stream.*;
 
 public class LanguageSet
 {
-    private static Map<String,Supplier<Language>> LANGUAGE_CONSTRUCTORS = Map.of(
-        "java", () -> new Language("Java",
-                                   new JavaParser(),
-                                   new JavaCallRegexGenerator()),
-        "py",   () -> new Language("Python",
-                                   new PythonParser(),
-                                   new PythonCallRegexGenerator())
+    private static Map<String,Function<Boolean,Language>> LANGUAGE_CONSTRUCTORS = Map.of(
+        "java", scanning -> new Language("Java",
+                                         scanning ? new ScanningJavaParser() : new JavaParser(),
+                                         new JavaCallRegexGenerator()),
+        "py",   scanning -> new Language("Python",
+                                         scanning ? new ScanningPythonParser() : new PythonParser(),
+                                         new PythonCallRegexGenerator())
     );
 
     private Map<String,Language> languages = new HashMap<>();
+    private boolean scanning = false;
+
+    /**
+     * Selects the single-pass scanning parsers, where available, instead of the regex-based ones.
+     * Only affects languages not yet retrieved from this LanguageSet.
+     */
+    public LanguageSet scanning(boolean scanning)
+    {
+        this.scanning = scanning;
+        return this;
+    }
 
     public Optional<Language> getByPath(Path path)
     {
@@ -36,17 +47,26 @@ public class LanguageSet
         var lang = languages.get(extension);
         if(lang == null)
         {
-            var supplier = LANGUAGE_CONSTRUCTORS.get(extension);
-            if(supplier == null)
+            var constructor = LANGUAGE_CONSTRUCTORS.get(extension);
+            if(constructor == null)
             {
                 return Optional.empty();
             }
-            lang = supplier.get();
+            lang = constructor.apply(scanning);
             languages.put(extension, lang);
         }
         return Optional.of(lang);
     }
 
+    /** Finds a language by its name (e.g., as recorded in a snapshot). */
+    public Optional<Language> getByName(String name)
+    {
+        return LANGUAGE_CONSTRUCTORS.keySet().stream()
+            .map(ext -> getByExtension(ext).get())
+            .filter(lang -> lang.getName().equals(name))
+            .findFirst();
+    }
+
     public Stream<Language> getAll()
     {
         return languages.values().stream();
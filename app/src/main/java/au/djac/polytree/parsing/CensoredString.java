@@ -4,17 +4,48 @@ import java.util.*;
 import java.util.regex.*;
 import java.util.stream.*;
 
+/**
+ * A string alongside a 'censored' copy of itself, in which parts (comments, string literals, etc.)
+ * have been overwritten with a censor character. Patterns are matched against the censored text,
+ * and positions then used to retrieve the original text.
+ *
+ * The censored text is held in a char[], exposed via censored() as a CharSequence view rather
+ * than copied into a String. view() (and censoredGroup()) similarly return a CensoredString for a
+ * sub-range that reads through its parent (and so through any chain of views back to the one
+ * holding the buffer), and so sees any further censoring of the parent. A view only gets a buffer
+ * of its own when it is itself censored, so that censoring a view never affects its parent;
+ * views of it then see that buffer instead.
+ *
+ * Regex matching may be limited by a ParseBudget, which a view shares with its parent.
+ */
 public class CensoredString
 {
-    private static final char DEFAULT_CENSOR_CHAR = '\032'; // ASCII "substitute" control character
+    static final char DEFAULT_CENSOR_CHAR = '\032'; // ASCII "substitute" control character
 
-    private final String uncensored;
-    private final StringBuilder censored;
+    private final String uncensored; // The complete original string, shared with all views.
+    private final int base;          // Start of this string within 'uncensored'.
+    private final int length;
+
+    // Either this string's own censored text, or null while it's a view reading through 'parent'
+    // (from 'parentStart' onwards).
+    private char[] censored;
+    private CensoredString parent;
+    private final int parentStart;
+
+    private final CharSequence censoredView;
+    private String uncensoredString = null;
+    private ParseBudget budget = ParseBudget.unlimited();
 
     public CensoredString(String uncensored, String censored)
     {
         this.uncensored = uncensored;
-        this.censored = new StringBuilder(censored);
+        this.base = 0;
+        this.length = uncensored.length();
+        this.censored = censored.toCharArray();
+        this.parent = null;
+        this.parentStart = 0;
+        this.censoredView = new Chars(0, length);
+        this.uncensoredString = uncensored;
     }
 
     public CensoredString(String s)
@@ -22,19 +53,62 @@ public class CensoredString
         this(s, s);
     }
 
+    private CensoredString(CensoredString parent, int start, int end)
+    {
+        Objects.checkFromToIndex(start, end, parent.length);
+        this.uncensored = parent.uncensored;
+        this.base = parent.base + start;
+        this.length = end - start;
+        this.censored = null;
+        this.parent = parent;
+        this.parentStart = start;
+        this.censoredView = new Chars(0, length);
+        this.budget = parent.budget;
+    }
+
+    /**
+     * Charges all subsequent regex matching against this string (and views of it) to 'budget'.
+     */
+    public CensoredString budget(ParseBudget budget)
+    {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * Returns the sub-range [start, end) of this string, without copying either the censored or
+     * uncensored text.
+     */
+    public CensoredString view(int start, int end)
+    {
+        return new CensoredString(this, start, end);
+    }
+
     public int length()
     {
-        return uncensored.length();
+        return length;
     }
 
     public String uncensored()
     {
-        return uncensored;
+        if(uncensoredString == null)
+        {
+            uncensoredString = uncensored.substring(base, base + length);
+        }
+        return uncensoredString;
+    }
+
+    String uncensored(int start, int end)
+    {
+        return uncensored.substring(base + start, base + end);
     }
 
-    public String censored()
+    /**
+     * Returns a live view of the censored text, reflecting any subsequent censoring.
+     */
+    public CharSequence censored()
     {
-        return censored.toString();
+        return censoredView;
     }
 
     public void censorIteratively(Pattern p) { censorIteratively(p, DEFAULT_CENSOR_CHAR); }
@@ -50,7 +124,7 @@ public class CensoredString
 
     public boolean censor(Pattern pattern, char censorChar)
     {
-        var matcher = pattern.matcher(censored);
+        var matcher = pattern.matcher(budget.wrap(censoredView));
         boolean found = false;
         while(matcher.find())
         {
@@ -67,18 +141,97 @@ public class CensoredString
 
     public void censor(int start, int end, char censorChar)
     {
+        Objects.checkFromToIndex(start, end, length);
+        if(censored == null)
+        {
+            censored = copyCensored(0, length);
+            parent = null;
+        }
+
+        var buf = censored;
         for(int i = start; i < end; i++)
         {
-            if(censored.charAt(i) > ' ')
+            if(buf[i] > ' ')
             {
-                censored.setCharAt(i, censorChar);
+                buf[i] = censorChar;
             }
         }
     }
 
+    /** Returns the censored character at 'index', reading through any parents. */
+    private char censoredAt(int index)
+    {
+        var s = this;
+        while(s.censored == null)
+        {
+            index += s.parentStart;
+            s = s.parent;
+        }
+        return s.censored[index];
+    }
+
+    /** Copies the censored text in [start, end), from whichever string holds it. */
+    private char[] copyCensored(int start, int end)
+    {
+        var s = this;
+        while(s.censored == null)
+        {
+            start += s.parentStart;
+            end += s.parentStart;
+            s = s.parent;
+        }
+        return Arrays.copyOfRange(s.censored, start, end);
+    }
+
     public Matcher matcher(Pattern pattern)
     {
-        return new Matcher(pattern.matcher(censored));
+        return new Matcher(pattern.matcher(budget.wrap(censoredView)));
+    }
+
+    /**
+     * A CharSequence over part of the censored text. It reads through the enclosing
+     * CensoredString's current buffer (or its parent's), so it remains valid if that changes.
+     */
+    private class Chars implements CharSequence
+    {
+        private final int start;
+        private final int end;
+
+        Chars(int start, int end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length()
+        {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            if(index < 0 || index >= length())
+            {
+                throw new IndexOutOfBoundsException(index);
+            }
+            var buf = censored;
+            return (buf != null) ? buf[start + index] : censoredAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int s, int e)
+        {
+            Objects.checkFromToIndex(s, e, length());
+            return new Chars(start + s, start + e);
+        }
+
+        @Override
+        public String toString()
+        {
+            return new String(copyCensored(start, end));
+        }
     }
 
     public class Matcher
@@ -117,7 +270,7 @@ public class CensoredString
 
         public String uncensored()
         {
-            return uncensored.substring(matcher.start(), matcher.end());
+            return CensoredString.this.uncensored(matcher.start(), matcher.end());
         }
 
         public String censored()
@@ -130,27 +283,25 @@ public class CensoredString
             int start = matcher.start(name);
             if(start == -1) { return Optional.empty(); }
 
-            return Optional.of(uncensored.substring(start, matcher.end(name)));
+            return Optional.of(CensoredString.this.uncensored(start, matcher.end(name)));
         }
 
         public Optional<CensoredString> censoredGroup(String name)
         {
-            String censoredGroup = matcher.group(name);
-            if(censoredGroup == null) { return Optional.empty(); }
+            int start = matcher.start(name);
+            if(start == -1) { return Optional.empty(); }
 
-            return Optional.of(new CensoredString(
-                uncensored.substring(matcher.start(name), matcher.end(name)),
-                censoredGroup));
+            return Optional.of(view(start, matcher.end(name)));
         }
 
         public boolean hasGroup(String name)
         {
-            return matcher.group(name) != null;
+            return matcher.start(name) != -1;
         }
 
         public Stream<String> resultsUncensored()
         {
-            return matcher.results().map(m -> uncensored.substring(m.start(), m.end()));
+            return matcher.results().map(m -> CensoredString.this.uncensored(m.start(), m.end()));
         }
     }
 }
@@ -0,0 +1,390 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.definitions.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * The binary encoding of a single definition, shared by Snapshot and ParseCache. Those differ in
+ * how they store strings, source files and type names (and in how definitions are arranged), so
+ * the Encoder and Decoder leave these to their subclasses.
+ *
+ * A definition consists of its kind, name and (for packages and types) construct, its location,
+ * modifiers, flags, type parameters and import suppliers, and then the parts specific to types
+ * or methods. Definitions nested within it are not included.
+ */
+class DefinitionCodec
+{
+    static final byte PACKAGE = 'P';
+    static final byte ANONYMOUS = 'A';
+    static final byte TYPE = 'T';
+    static final byte METHOD = 'M';
+
+    private DefinitionCodec() {}
+
+    /** The parts of a QualifiedTypeName that are recorded (everything except its scope). */
+    record TypeName(List<String> names, String displayName, TypeCategory categoryHint,
+                    String constructHint)
+    {
+        static TypeName of(QualifiedTypeName typeName)
+        {
+            return new TypeName(typeName.getNames(),
+                                typeName.toString(),
+                                typeName.getCategoryHint(),
+                                typeName.getConstructHint());
+        }
+
+        void hint(QualifiedTypeName target)
+        {
+            target.categoryHint(categoryHint).constructHint(constructHint);
+        }
+    }
+
+    abstract static class Encoder
+    {
+        protected final DataOutputStream out;
+
+        Encoder(DataOutputStream out)
+        {
+            this.out = out;
+        }
+
+        abstract void writeString(String s) throws IOException;
+
+        /** Writes a reference to a definition's source file (if any). */
+        abstract void writeFile(Optional<SourceFile> file) throws IOException;
+
+        abstract void writeTypeName(TypeName typeName) throws IOException;
+
+        void writeDefinition(ScopedDefinition defn) throws IOException
+        {
+            if(defn instanceof PackageDefinition)
+            {
+                out.writeByte(PACKAGE);
+                writeString(defn.getName());
+                writeString(((PackageDefinition)defn).getConstruct());
+            }
+            else if(defn instanceof AnonymousScope)
+            {
+                out.writeByte(ANONYMOUS);
+            }
+            else if(defn instanceof TypeDefinition)
+            {
+                var type = (TypeDefinition)defn;
+                out.writeByte(TYPE);
+                writeString(defn.getName());
+                writeString(type.getCategory().name());
+                writeString(type.getConstruct());
+            }
+            else if(defn instanceof MethodDefinition)
+            {
+                out.writeByte(METHOD);
+                writeString(defn.getName());
+            }
+            else
+            {
+                throw new NotSerializableException(defn.getClass().getName());
+            }
+
+            writeLocation(defn);
+            writeModifiers(defn);
+            out.writeBoolean(defn.isDescendable());
+            out.writeBoolean(defn.isAscendable());
+            writeOptional(defn.getTypeParams());
+
+            var suppliers = defn.getImportSuppliers().toList();
+            out.writeInt(suppliers.size());
+            for(var supplier : suppliers)
+            {
+                if(!(supplier instanceof JavaParser.ImportDeclaration))
+                {
+                    throw new NotSerializableException(supplier.getClass().getName());
+                }
+                var decl = (JavaParser.ImportDeclaration)supplier;
+                writeNames(decl.names);
+                out.writeBoolean(decl.star);
+            }
+
+            if(defn instanceof TypeDefinition)
+            {
+                var type = (TypeDefinition)defn;
+                writeOptionalTypeName(type.getMetaType());
+                writeTypeNames(type.getSuperTypes().toList());
+            }
+            else if(defn instanceof MethodDefinition)
+            {
+                var method = (MethodDefinition)defn;
+                out.writeBoolean(method.isConstructor());
+                writeOptionalTypeName(method.getReturnType());
+                writeTypeNames(method.getCheckedExceptions().toList());
+
+                var params = method.getParameters().toList();
+                out.writeInt(params.size());
+                for(var param : params)
+                {
+                    writeString(param.getName());
+                    writeLocation(param);
+                    writeModifiers(param);
+                    out.writeBoolean(param.isImplicit());
+                    writeOptional(param.getDefaultValue());
+                    writeOptionalTypeName(param.getType());
+                }
+            }
+        }
+
+        private void writeLocation(Definition defn) throws IOException
+        {
+            writeFile(defn.getSourceFile());
+            out.writeInt(defn.getStartPos());
+            out.writeInt(defn.getEndPos());
+        }
+
+        private void writeModifiers(Definition defn) throws IOException
+        {
+            var mods = defn.getModifiers().toList();
+            out.writeInt(mods.size());
+            for(var mod : mods)
+            {
+                writeString(mod.toString());
+            }
+        }
+
+        private void writeTypeNames(List<QualifiedTypeName> typeNames) throws IOException
+        {
+            out.writeInt(typeNames.size());
+            for(var typeName : typeNames)
+            {
+                writeTypeName(TypeName.of(typeName));
+            }
+        }
+
+        private void writeOptionalTypeName(Optional<QualifiedTypeName> typeName) throws IOException
+        {
+            out.writeBoolean(typeName.isPresent());
+            if(typeName.isPresent())
+            {
+                writeTypeName(TypeName.of(typeName.get()));
+            }
+        }
+
+        void writeNames(List<String> names) throws IOException
+        {
+            out.writeInt(names.size());
+            for(var name : names)
+            {
+                writeString(name);
+            }
+        }
+
+        private void writeOptional(Optional<String> value) throws IOException
+        {
+            out.writeBoolean(value.isPresent());
+            if(value.isPresent())
+            {
+                writeString(value.get());
+            }
+        }
+    }
+
+    abstract static class Decoder
+    {
+        protected final Project project;
+        protected final ByteBuffer in;
+
+        Decoder(Project project, ByteBuffer in)
+        {
+            this.project = project;
+            this.in = in;
+        }
+
+        abstract String readString();
+
+        /** Reads a reference to a source file, giving null if there was none. */
+        abstract SourceFile readFile();
+
+        abstract TypeName readTypeName();
+
+        /**
+         * Returns a package, as yet without a location. By default, this is a new package, which
+         * readDefinition()'s caller will add to 'containing'.
+         */
+        ScopedDefinition getPackage(ScopedDefinition containing, String name, String construct,
+                                    boolean descendable, boolean ascendable)
+        {
+            var pkg = new PackageDefinition(name, construct);
+            pkg.setDescendable(descendable);
+            pkg.setAscendable(ascendable);
+            return pkg;
+        }
+
+        /** Gives a package its location (which it has only if 'file' isn't null). */
+        abstract void locatePackage(ScopedDefinition pkg, SourceFile file, int start, int end);
+
+        /**
+         * Reads a definition. Apart from a package given by getPackage(), it is not yet added to
+         * 'containing'.
+         */
+        ScopedDefinition readDefinition(ScopedDefinition containing) throws IOException
+        {
+            var kind = in.get();
+            String name = null;
+            String construct = null;
+            TypeCategory category = null;
+            switch(kind)
+            {
+                case PACKAGE:
+                    name = readString();
+                    construct = readString();
+                    break;
+
+                case TYPE:
+                    name = readString();
+                    category = TypeCategory.valueOf(readString());
+                    construct = readString();
+                    break;
+
+                case METHOD:
+                    name = readString();
+                    break;
+
+                case ANONYMOUS:
+                    break;
+
+                default:
+                    throw new StreamCorruptedException("Unknown definition kind " + kind);
+            }
+
+            var file = readFile();
+            var start = in.getInt();
+            var end = in.getInt();
+            var modifiers = readModifiers();
+            var descendable = readBoolean();
+            var ascendable = readBoolean();
+            var typeParams = readOptional();
+
+            var suppliers = new ArrayList<Import.Supplier>();
+            var nSuppliers = in.getInt();
+            for(int i = 0; i < nSuppliers; i++)
+            {
+                var names = readNames();
+                suppliers.add(new JavaParser.ImportDeclaration(project, names, readBoolean()));
+            }
+
+            ScopedDefinition defn;
+            switch(kind)
+            {
+                case PACKAGE:
+                    defn = getPackage(containing, name, construct, descendable, ascendable);
+                    locatePackage(defn, file, start, end);
+                    break;
+
+                case ANONYMOUS:
+                    defn = (file != null) ? new AnonymousScope(file, start, end)
+                                          : new AnonymousScope();
+                    break;
+
+                case TYPE:
+                {
+                    var type = new TypeDefinition(file, start, end, name, category, construct);
+                    if(readBoolean())
+                    {
+                        var t = readTypeName();
+                        t.hint(type.setMetaType(t.names(), t.displayName()));
+                    }
+                    var nSuperTypes = in.getInt();
+                    for(int i = 0; i < nSuperTypes; i++)
+                    {
+                        var t = readTypeName();
+                        t.hint(type.addSuperType(t.names(), t.displayName()));
+                    }
+                    defn = type;
+                    break;
+                }
+
+                default: // METHOD
+                {
+                    var method = new MethodDefinition(file, start, end, name);
+                    method.setConstructor(readBoolean());
+                    if(readBoolean())
+                    {
+                        var t = readTypeName();
+                        t.hint(method.setReturnType(t.names(), t.displayName()));
+                    }
+                    var nExceptions = in.getInt();
+                    for(int i = 0; i < nExceptions; i++)
+                    {
+                        var t = readTypeName();
+                        t.hint(method.addCheckedException(t.names(), t.displayName()));
+                    }
+                    var nParams = in.getInt();
+                    for(int i = 0; i < nParams; i++)
+                    {
+                        method.addParameter(readParameter(method));
+                    }
+                    defn = method;
+                    break;
+                }
+            }
+
+            if(kind != PACKAGE)
+            {
+                defn.setDescendable(descendable);
+                defn.setAscendable(ascendable);
+            }
+            modifiers.forEach(defn::addModifier);
+            typeParams.ifPresent(defn::setTypeParams);
+            defn.addImportSuppliers(suppliers);
+            return defn;
+        }
+
+        private ParameterDefinition readParameter(MethodDefinition method)
+        {
+            var name = readString();
+            var param = new ParameterDefinition(readFile(), in.getInt(), in.getInt(), name);
+            readModifiers().forEach(param::addModifier);
+            param.setImplicit(readBoolean());
+            readOptional().ifPresent(param::setDefaultValue);
+            if(readBoolean())
+            {
+                var t = readTypeName();
+                var type = new QualifiedTypeName(method, t.names(), t.displayName(), false);
+                t.hint(type);
+                param.setType(type);
+            }
+            return param;
+        }
+
+        private List<Modifier> readModifiers()
+        {
+            var count = in.getInt();
+            var mods = new ArrayList<Modifier>(count);
+            for(int i = 0; i < count; i++)
+            {
+                mods.add(Modifier.named(readString()));
+            }
+            return mods;
+        }
+
+        List<String> readNames()
+        {
+            var count = in.getInt();
+            var names = new ArrayList<String>(count);
+            for(int i = 0; i < count; i++)
+            {
+                names.add(readString());
+            }
+            return names;
+        }
+
+        private Optional<String> readOptional()
+        {
+            return readBoolean() ? Optional.of(readString()) : Optional.empty();
+        }
+
+        boolean readBoolean()
+        {
+            return in.get() != 0;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package au.djac.polytree.parsing;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches a directory tree for files being created, modified or deleted.
+ *
+ * WatchService only watches individual directories, so we register every directory in the tree,
+ * and any new directories as they appear. Editors and version control tools tend to generate
+ * several events at once, so next() waits for a short quiet period and reports them together.
+ */
+public class DirectoryWatcher implements Closeable
+{
+    private static final long SETTLE_MILLIS = 30;
+
+    private final Path root;
+    private final WatchService watchService;
+    private final Map<WatchKey,Path> directories = new HashMap<>();
+
+    public DirectoryWatcher(Path root) throws IOException
+    {
+        this.root = root;
+        this.watchService = root.getFileSystem().newWatchService();
+        registerAll(root);
+    }
+
+    /** Registers 'dir' and all directories beneath it. */
+    private void registerAll(Path dir) throws IOException
+    {
+        try(var paths = Files.walk(dir))
+        {
+            for(var path : paths.filter(Files::isDirectory).toList())
+            {
+                directories.put(path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE),
+                                path);
+            }
+        }
+        catch(NoSuchFileException e)
+        {
+            // Already gone again.
+        }
+    }
+
+    /**
+     * Blocks until something changes, and then returns the paths of all changed files and
+     * directories. (A new or deleted directory is reported as itself, not as the files it
+     * contains.)
+     */
+    public Set<Path> next() throws IOException, InterruptedException
+    {
+        var changed = new LinkedHashSet<Path>();
+        var key = watchService.take();
+        while(key != null)
+        {
+            handle(key, changed);
+            key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return changed;
+    }
+
+    private void handle(WatchKey key, Set<Path> changed) throws IOException
+    {
+        var dir = directories.get(key);
+        for(var event : key.pollEvents())
+        {
+            if(event.kind() == OVERFLOW)
+            {
+                // Events were lost, so treat everything as having changed.
+                changed.add(root);
+                registerAll(root);
+                continue;
+            }
+            if(dir == null) { continue; }
+
+            var path = dir.resolve((Path)event.context());
+            changed.add(path);
+            if(event.kind() == ENTRY_CREATE && Files.isDirectory(path))
+            {
+                registerAll(path);
+            }
+        }
+
+        if(!key.reset())
+        {
+            directories.remove(key); // Directory deleted.
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        watchService.close();
+    }
+}
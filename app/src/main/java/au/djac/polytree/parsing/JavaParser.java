@@ -41,7 +41,7 @@ import java.util.stream.*;
  */
 public class JavaParser extends Parser
 {
-    private static final Pattern MAIN_CENSOR_PATTERN = Pattern.compile(
+    static final Pattern MAIN_CENSOR_PATTERN = Pattern.compile(
         "//[^\n]*+"                       // single line comments
         + "|/\\*([^*]|\\*[^/])*+\\*?\\*/" // multi-line comments
         + "|\"([^\"\\\\]|\\\\.)*+\""      // strings
@@ -91,14 +91,14 @@ public class JavaParser extends Parser
     private static final String TYPE_LIST =
         ANNOTATABLE_TYPE_USE + "(\\s*+,\\s*+" + ANNOTATABLE_TYPE_USE + ")*+";
 
-    private static final List<String> RESERVED = List.of("abstract", "assert", "boolean", "break",
+    static final List<String> RESERVED = List.of("abstract", "assert", "boolean", "break",
         "byte", "case", "catch", "char", "class", "const", "continue", "default", "do", "double",
         "else", "enum", "extends", "final", "finally", "float", "for", "if", "goto", "implements",
         "import", "instanceof", "int", "interface", "long", "native", "new", "package", "private",
         "protected", "public", "return", "short", "static", "strictfp", "super", "switch",
         "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while");
 
-    private static final List<String> RESERVED_NON_TYPES = List.of("abstract", "assert", "break",
+    static final List<String> RESERVED_NON_TYPES = List.of("abstract", "assert", "break",
         "case", "catch", "class", "const", "continue", "default", "do", "else", "enum", "extends",
         "final", "finally", "for", "if", "goto", "implements", "import", "instanceof", "interface",
         "native", "new", "package", "private", "protected", "public", "return", "static",
@@ -169,9 +169,20 @@ public class JavaParser extends Parser
     @Override
     public void parse(Project project, SourceFile file)
     {
-        var content = new CensoredString(file.getContent());
+        parse(project, file, ParseBudget.unlimited());
+    }
+
+    @Override
+    public void parse(Project project, SourceFile file, ParseBudget budget)
+    {
+        var content = new CensoredString(file.getContent()).budget(budget);
         content.censor(MAIN_CENSOR_PATTERN);
 
+        // Flatten deeply-nested (...) and <...>, for the benefit of bracketExprRegex(). '<' is also
+        // less-than and shift-left, but those don't survive past ';' or '='.
+        collapseBrackets(content, '(', ')', "{", "");
+        collapseBrackets(content, '<', '>', "{(", ";=");
+
         var defnSet = new TreeSet<ScopedDefinition>((d1, d2) -> d1.getStartPos() - d2.getStartPos());
 
         while(true)
@@ -191,35 +202,12 @@ public class JavaParser extends Parser
             addModifiers(defn, matcher);
 
             var construct = matcher.uncensoredGroup("construct").orElse("");
-            var isInterface = "interface".equals(construct);
-            var isClass = !isInterface && !construct.isEmpty();
 
             defnSet
                 .tailSet(defn, false)
                 .stream()
-                .takeWhile(existingDefn -> existingDefn.getStartPos() <= defn.getEndPos())
-                .forEach(existingDefn ->
-                {
-                    if(isInterface)
-                    {
-                        // Everything in an interface is public.
-                        existingDefn.addModifier(Modifier.PUBLIC);
-
-                        // All non-default instance methods in an interface are abstract.
-                        if(existingDefn instanceof MethodDefinition &&
-                            !existingDefn.hasAnyModifier(Modifier.STATIC, Modifier.DEFAULT))
-                        {
-                            existingDefn.addModifier(Modifier.ABSTRACT);
-                        }
-                    }
-                    else if(isClass && !existingDefn.hasAnyModifier(Modifier.PRIVATE,
-                                                                    Modifier.PROTECTED,
-                                                                    Modifier.PUBLIC))
-                    {
-                        existingDefn.addModifier(Modifier.PACKAGE_PRIVATE);
-                    }
-                    defn.addNested(existingDefn);
-                });
+                .takeWhile(existingDefn -> existingDefn.getStartPos() < defn.getEndPos())
+                .forEach(existingDefn -> addMember(defn, construct, existingDefn));
             defn.getNested().forEach(defnSet::remove);
             defnSet.add(defn);
             content.censor(matcher);
@@ -230,24 +218,62 @@ public class JavaParser extends Parser
         defnSet.forEach(scope::addNested);
     }
 
-    private static ScopedDefinition findPackage(Project project, SourceFile file, CensoredString content)
+    /**
+     * Nests 'member' within 'defn', first applying the implicit modifiers that Java gives to the
+     * members of interfaces and classes. The 'construct' is that of 'defn' ("class", "interface",
+     * etc.), or empty if 'defn' is a method or anonymous class.
+     */
+    static void addMember(ScopedDefinition defn, String construct, ScopedDefinition member)
     {
-        ScopedDefinition scope = project;
-        var pkgMatcher = content.matcher(PACKAGE_PATTERN);
-        if(pkgMatcher.find())
+        var isInterface = "interface".equals(construct);
+        var isClass = !isInterface && !construct.isEmpty();
+
+        if(isInterface)
         {
-            for(var name : nameList(pkgMatcher.uncensoredGroup("name").get(), "\\."))
+            // Everything in an interface is public.
+            member.addModifier(Modifier.PUBLIC);
+
+            // All non-default instance methods in an interface are abstract.
+            if(member instanceof MethodDefinition &&
+                !member.hasAnyModifier(Modifier.STATIC, Modifier.DEFAULT))
             {
-                scope = scope.getOrAddNested(
-                    name,
-                    () -> {
-                        var pkg = new PackageDefinition(name, "package");
-                        pkg.setDescendable(true);
-                        return pkg;
-                    }
-                );
+                member.addModifier(Modifier.ABSTRACT);
             }
         }
+        else if(isClass && !member.hasAnyModifier(Modifier.PRIVATE,
+                                                  Modifier.PROTECTED,
+                                                  Modifier.PUBLIC))
+        {
+            member.addModifier(Modifier.PACKAGE_PRIVATE);
+        }
+        defn.addNested(member);
+    }
+
+    private static ScopedDefinition findPackage(Project project, SourceFile file, CensoredString content)
+    {
+        var pkgMatcher = content.matcher(PACKAGE_PATTERN);
+        return compilationUnit(
+            project, file,
+            pkgMatcher.find() ? nameList(pkgMatcher.uncensoredGroup("name").get(), "\\.") : List.of());
+    }
+
+    /**
+     * Creates the (anonymous) scope representing a single .java file, nested within its package.
+     */
+    static ScopedDefinition compilationUnit(Project project, SourceFile file, List<String> packageNames)
+    {
+        ScopedDefinition scope = project;
+        for(var name : packageNames)
+        {
+            scope = scope.getOrAddNested(
+                name,
+                () -> {
+                    var pkg = new PackageDefinition(name, "package");
+                    pkg.setDescendable(true);
+                    return pkg;
+                }
+            );
+        }
 
         var compilationUnit = new AnonymousScope(file, 0, file.getContent().length());
         compilationUnit.setAscendable(true);
@@ -262,44 +288,83 @@ public class JavaParser extends Parser
         var matcher = content.matcher(IMPORT_PATTERN);
         while(matcher.find())
         {
-            var names = nameList(matcher.uncensoredGroup("name").get(), "\\.");
+            imports.add(importSupplier(project,
+                                       nameList(matcher.uncensoredGroup("name").get(), "\\."),
+                                       matcher.hasGroup("star")));
+        }
+        imports.add(packageImportSupplier(project));
+        return imports;
+    }
+
+    static Import.Supplier importSupplier(Project project, List<String> names, boolean star)
+    {
+        return new ImportDeclaration(project, names, star);
+    }
+
+    static Import.Supplier packageImportSupplier(Project project)
+    {
+        // Add implicit imports for the top-level package(s), to enable fully-qualified type names.
+        // (To be clear: this does not correspond to anything explicitly in the source code, but
+        // rather to general Java semantics.)
+        return new ImportDeclaration(project, List.of(), true);
+    }
+
+    /**
+     * A single import declaration, resolved (lazily) against the whole project. An empty name list
+     * with 'star' set represents the implicit import of all top-level packages.
+     *
+     * This is a class, rather than a lambda, so that ParseCache can save and restore it.
+     */
+    static class ImportDeclaration implements Import.Supplier
+    {
+        final Project project;
+        final List<String> names;
+        final boolean star;
+
+        ImportDeclaration(Project project, List<String> names, boolean star)
+        {
+            this.project = (project instanceof ScratchProject)
+                ? ((ScratchProject)project).getTarget()
+                : project;
+            this.names = List.copyOf(names);
+            this.star = star;
+        }
 
-            if(matcher.hasGroup("star"))
+        @Override
+        public Stream<Import> get()
+        {
+            if(names.isEmpty())
             {
-                imports.add(() ->
-                    project.resolveLocally(ScopedDefinition.class, names)
-                        .findFirst()
-                        .stream()
-                        .flatMap(ScopedDefinition::getNested)
-                        .flatMap(ScopedDefinition::getNamedScopes)
-                        .filter(subDefn ->
-                            (subDefn instanceof TypeDefinition &&
-                                subDefn.hasModifier(Modifier.PUBLIC)) ||
-                            (subDefn instanceof MethodDefinition &&
-                                subDefn.hasModifier(Modifier.PUBLIC, Modifier.STATIC) &&
-                                !((MethodDefinition)subDefn).isConstructor())
-                        )
-                        .map(subDefn -> new Import(subDefn, subDefn.getName()))
-                );
+                return Stream.of(Import.wildcard(project, defn -> defn instanceof PackageDefinition));
+            }
+            else if(star)
+            {
+                return project.resolveLocally(ScopedDefinition.class, names)
+                    .findFirst()
+                    .stream()
+                    .map(defn -> Import.wildcard(defn, ImportDeclaration::isImportable));
             }
             else
             {
-                imports.add(() -> project
+                return project
                     .resolveLocally(ScopedDefinition.class, names)
                     .findFirst()
                     .stream()
-                    .map(defn -> new Import(defn, names.get(names.size() - 1))));
+                    .map(defn -> new Import(defn, names.get(names.size() - 1)));
             }
         }
 
-        // Add implicit imports for the top-level package(s), to enable fully-qualified type names.
-        // (To be clear: this does not correspond to anything explicitly in the source code, but
-        // rather to general Java semantics.)
-        imports.add(() -> project.getNested()
-            .filter(defn -> defn instanceof PackageDefinition)
-            .map(defn -> new Import(defn, defn.getName())));
-
-        return imports;
+        /**
+         * Whether a member of a package or type can be imported on demand ("import x.y.*;").
+         */
+        private static boolean isImportable(ScopedDefinition member)
+        {
+            return (member instanceof TypeDefinition &&
+                        member.hasModifier(Modifier.PUBLIC)) ||
+                   (member instanceof MethodDefinition &&
+                        member.hasModifier(Modifier.PUBLIC, Modifier.STATIC) &&
+                        !((MethodDefinition)member).isConstructor());
+        }
     }
 
     private static TypeDefinition makeNamedTypeDefinition(SourceFile file,
@@ -322,8 +387,8 @@ public class JavaParser extends Parser
         defn.setDescendable(true);
         matcher.uncensoredGroup("typeTypeParams").ifPresent(defn::setTypeParams);
 
-        addSuperTypes(defn, matcher, "implements", TypeCategory.INTERFACE);
         addSuperTypes(defn, matcher, "extends", category);
+        addSuperTypes(defn, matcher, "implements", TypeCategory.INTERFACE);
 
 
         // We generally expect nested definitions to have already been parsed. We forbid any
@@ -425,18 +490,33 @@ public class JavaParser extends Parser
     private static void addModifiers(Definition defn, CensoredString.Matcher matcher)
     {
         matcher.censoredGroup("modifiers").get().matcher(MODIFIER_PATTERN).resultsUncensored()
-            .forEach(s ->
-            {
-                s = s.strip();
-                if(s.equals("@Override"))
-                {
-                    defn.addModifier(Modifier.OVERRIDE);
-                }
-                else
-                {
-                    defn.addModifier(Modifier.named(s));
-                }
-            });
+            .forEach(s -> addModifier(defn, s));
+    }
+
+    static void addModifier(Definition defn, String s)
+    {
+        s = s.strip();
+        if(s.equals("@Override"))
+        {
+            defn.addModifier(Modifier.OVERRIDE);
+        }
+        else
+        {
+            defn.addModifier(Modifier.named(s));
+        }
+    }
+
+    @Override
+    public Optional<Parser> getFallback()
+    {
+        // Single-pass, so it can't backtrack its way into trouble.
+        return Optional.of(new ScanningJavaParser());
+    }
+
+    @Override
+    public int getVersion()
+    {
+        return 3; // Anonymous classes in deeply-nested arguments are no longer lost.
     }
 
     @Override
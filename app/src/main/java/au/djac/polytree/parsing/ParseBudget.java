@@ -0,0 +1,98 @@
+package au.djac.polytree.parsing;
+
+/**
+ * Limits the work that a regex-based parser may do on a single file, so that catastrophic
+ * backtracking in one file can't stall an entire run.
+ *
+ * Work is measured in "steps": the number of characters read (via charAt()) by regex matching
+ * against a CensoredString that has been given this budget. Once the budget is exceeded, the next
+ * step throws ExceededException, abandoning the parse. A budget belongs to a single file, and so
+ * to a single thread.
+ */
+public class ParseBudget
+{
+    public static class ExceededException extends RuntimeException
+    {
+        private ExceededException(long maxSteps)
+        {
+            super("Parse budget of " + maxSteps + " steps exceeded");
+        }
+    }
+
+    private static final ParseBudget UNLIMITED = new ParseBudget(Long.MAX_VALUE);
+
+    public static ParseBudget unlimited()
+    {
+        return UNLIMITED;
+    }
+
+    private final long maxSteps;
+    private long steps = 0;
+
+    public ParseBudget(long maxSteps)
+    {
+        this.maxSteps = maxSteps;
+    }
+
+    public boolean isUnlimited()
+    {
+        return maxSteps == Long.MAX_VALUE;
+    }
+
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    private void step()
+    {
+        if(++steps > maxSteps)
+        {
+            throw new ExceededException(maxSteps);
+        }
+    }
+
+    /**
+     * Returns a view of 's' that charges each charAt() call to this budget, or 's' itself if the
+     * budget is unlimited.
+     */
+    CharSequence wrap(CharSequence s)
+    {
+        return isUnlimited() ? s : new Counting(s);
+    }
+
+    private class Counting implements CharSequence
+    {
+        private final CharSequence s;
+
+        Counting(CharSequence s)
+        {
+            this.s = s;
+        }
+
+        @Override
+        public int length()
+        {
+            return s.length();
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            step();
+            return s.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end)
+        {
+            return new Counting(s.subSequence(start, end));
+        }
+
+        @Override
+        public String toString()
+        {
+            return s.toString();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.definitions.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Stores the definitions parsed from each source file in a cache directory, so that later runs
+ * can restore them instead of re-parsing files that haven't changed.
+ *
+ * Each entry is named after a hash of the parser (class and version), the file's path and the
+ * file's content. Hence, any change simply results in a cache miss. (Old entries are never
+ * removed; the cache directory can safely be deleted at any time.)
+ *
+ * On a miss, the file is parsed into a ScratchProject, whose definitions are then recorded, and
+ * restored into the real Project exactly as they would be on a hit. This keeps one file's
+ * definitions apart from those of any other file being parsed at the same time, and means that
+ * hits and misses produce identical definitions. (Definitions that can't be recorded are instead
+ * merged directly from the ScratchProject, and not cached.)
+ */
+public class ParseCache
+{
+    private static final int MAGIC = 0x50545043; // "PTPC"
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path directory;
+
+    public ParseCache(Path directory) throws IOException
+    {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Adds the definitions in 'file' to 'project', either from the cache or by invoking 'parser'
+     * (and then caching the result).
+     */
+    public void parse(Parser parser, Project project, SourceFile file) throws IOException
+    {
+        parse(parser, project, file, ParseBudget.unlimited());
+    }
+
+    /**
+     * As above, but limiting any actual parsing to 'budget'. If the budget is exceeded, nothing is
+     * added to 'project' or the cache.
+     */
+    public void parse(Parser parser, Project project, SourceFile file, ParseBudget budget)
+        throws IOException
+    {
+        var entry = directory.resolve(key(parser, file));
+        var bytes = readEntry(entry);
+        if(bytes.isEmpty())
+        {
+            var scratch = new ScratchProject(project);
+            parser.parse(scratch, file, budget);
+            try
+            {
+                bytes = Optional.of(new Writer(file).write(scratch));
+            }
+            catch(NotSerializableException e)
+            {
+                // Something the cache doesn't know how to record, so don't cache this file, but
+                // keep what was parsed.
+                scratch.merge();
+                return;
+            }
+            writeEntry(entry, bytes.get());
+        }
+
+        try
+        {
+            new Reader(project, file, ByteBuffer.wrap(bytes.get())).read(project);
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+              | NegativeArraySizeException e)
+        {
+            throw new StreamCorruptedException("Damaged cache entry " + entry);
+        }
+    }
+
+    private static String key(Parser parser, SourceFile file)
+    {
+        try
+        {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for(var part : List.of(String.valueOf(FORMAT_VERSION),
+                                   parser.getClass().getName(),
+                                   String.valueOf(parser.getVersion()),
+                                   file.getPath().toString(),
+                                   file.getContent()))
+            {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte)0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new AssertionError(e); // Every JVM must support SHA-256.
+        }
+    }
+
+    /**
+     * Returns the body of a cache entry, or nothing if the entry doesn't exist or is damaged.
+     */
+    private static Optional<byte[]> readEntry(Path entry) throws IOException
+    {
+        byte[] data;
+        try
+        {
+            data = Files.readAllBytes(entry);
+        }
+        catch(NoSuchFileException e)
+        {
+            return Optional.empty();
+        }
+
+        if(data.length < 16) { return Optional.empty(); }
+
+        var header = new DataInputStream(new ByteArrayInputStream(data));
+        var magic = header.readInt();
+        var version = header.readInt();
+        var checksum = header.readLong();
+        var crc = new CRC32();
+        crc.update(data, 16, data.length - 16);
+
+        if(magic != MAGIC || version != FORMAT_VERSION || checksum != crc.getValue())
+        {
+            return Optional.empty();
+        }
+        return Optional.of(Arrays.copyOfRange(data, 16, data.length));
+    }
+
+    private void writeEntry(Path entry, byte[] body) throws IOException
+    {
+        var crc = new CRC32();
+        crc.update(body);
+
+        // Write to a temporary file first, so that other processes never see a partial entry.
+        var temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try
+        {
+            try(var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(crc.getValue());
+                out.write(body);
+            }
+            try
+            {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Records the definitions (from a single file) nested within a Project. */
+    private static class Writer extends DefinitionCodec.Encoder
+    {
+        private final SourceFile file;
+        private final ByteArrayOutputStream bytes;
+
+        Writer(SourceFile file)
+        {
+            this(file, new ByteArrayOutputStream());
+        }
+
+        private Writer(SourceFile file, ByteArrayOutputStream bytes)
+        {
+            super(new DataOutputStream(bytes));
+            this.file = file;
+            this.bytes = bytes;
+        }
+
+        byte[] write(Project project) throws IOException
+        {
+            writeNested(project);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private void writeNested(ScopedDefinition defn) throws IOException
+        {
+            var nested = defn.getNested().toList();
+            out.writeInt(nested.size());
+            for(var n : nested)
+            {
+                writeDefinition(n);
+                writeNested(n);
+            }
+        }
+
+        @Override
+        void writeString(String s) throws IOException
+        {
+            // (Not writeUTF(), which is limited to 64K.)
+            var b = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+
+        @Override
+        void writeFile(Optional<SourceFile> defnFile) throws IOException
+        {
+            if(defnFile.isPresent() && defnFile.get() != file)
+            {
+                throw new NotSerializableException("Definition from another file");
+            }
+            out.writeBoolean(defnFile.isPresent());
+        }
+
+        @Override
+        void writeTypeName(DefinitionCodec.TypeName typeName) throws IOException
+        {
+            writeNames(typeName.names());
+            writeString(typeName.displayName());
+            writeString(typeName.categoryHint().name());
+            writeString(typeName.constructHint());
+        }
+    }
+
+    /** Restores recorded definitions into a Project. */
+    private static class Reader extends DefinitionCodec.Decoder
+    {
+        private final SourceFile file;
+
+        Reader(Project project, SourceFile file, ByteBuffer in)
+        {
+            super(project, in);
+            this.file = file;
+        }
+
+        void read(ScopedDefinition containing) throws IOException
+        {
+            var count = in.getInt();
+            for(int i = 0; i < count; i++)
+            {
+                var defn = readDefinition(containing);
+                read(defn);
+                if(!(defn instanceof PackageDefinition))
+                {
+                    containing.addNested(defn);
+                }
+            }
+        }
+
+        @Override
+        String readString()
+        {
+            var b = new byte[in.getInt()];
+            in.get(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        SourceFile readFile()
+        {
+            return readBoolean() ? file : null;
+        }
+
+        @Override
+        DefinitionCodec.TypeName readTypeName()
+        {
+            return new DefinitionCodec.TypeName(readNames(),
+                                                readString(),
+                                                TypeCategory.valueOf(readString()),
+                                                readString());
+        }
+
+        /** Packages are shared between files, and may already exist. */
+        @Override
+        ScopedDefinition getPackage(ScopedDefinition containing, String name, String construct,
+                                    boolean descendable, boolean ascendable)
+        {
+            return containing.getOrAddNested(
+                name, () -> super.getPackage(containing, name, construct, descendable, ascendable));
+        }
+
+        @Override
+        void locatePackage(ScopedDefinition pkg, SourceFile pkgFile, int start, int end)
+        {
+            if(pkgFile != null)
+            {
+                pkg.setLocation(pkgFile, start, end);
+            }
+        }
+    }
+}
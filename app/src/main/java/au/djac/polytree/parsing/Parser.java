@@ -6,14 +6,193 @@ import java.util.regex.*;
 
 public abstract class Parser
 {
-    public static final int REGEX_RECURSE_DEPTH = 16;
+    /**
+     * The number of levels of nested brackets matched by bracketExprRegex(). Brackets nested any
+     * deeper must first be flattened with collapseBrackets().
+     */
+    public static final int REGEX_RECURSE_DEPTH = 2;
 
     protected static String bracketExprRegex(String open, String close)
     {
         return
-            (open + "(" + "[^" + open + close + "]|").repeat(REGEX_RECURSE_DEPTH)
+            (open + "(" + "[^" + open + close + "]|").repeat(REGEX_RECURSE_DEPTH - 1)
             + open + "[^" + open + close + "]*+" + close
-            + (")*+" + close).repeat(REGEX_RECURSE_DEPTH);
+            + (")*+" + close).repeat(REGEX_RECURSE_DEPTH - 1);
+    }
+
+    /**
+     * Returns the index of the bracket matching the one at 'openIndex', or -1 if there isn't one.
+     * Works to any depth, in time proportional to the distance between the brackets.
+     */
+    protected static int matchBracket(CharSequence s, int openIndex)
+    {
+        var open = s.charAt(openIndex);
+        var close = closingBracket(open);
+        int depth = 0;
+        for(int i = openIndex; i < s.length(); i++)
+        {
+            var ch = s.charAt(i);
+            if(ch == open)
+            {
+                depth++;
+            }
+            else if(ch == close && --depth == 0)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static char closingBracket(char open)
+    {
+        switch(open)
+        {
+            case '(': return ')';
+            case '[': return ']';
+            case '{': return '}';
+            case '<': return '>';
+            default: throw new IllegalArgumentException("'" + open + "' is not a bracket");
+        }
+    }
+
+    /**
+     * Censors every 'open'...'close' bracket group nested more than REGEX_RECURSE_DEPTH levels
+     * deep, so that the (finite) regex built by bracketExprRegex() can match groups of any depth.
+     * Only the censored text changes; group positions and uncensored text are unaffected.
+     *
+     * Nesting depth is counted afresh within each '{'...'}' and '('...')' block, according to
+     * 'scopeChars' (which may contain '{' and/or '('). Any of the 'resetChars' discards all
+     * unclosed brackets, for symbols like '<' that are not always brackets. This is a single pass
+     * over the string.
+     *
+     * If 'scopeChars' contains '{', a group containing or followed by a '{'...'}' block is never
+     * censored, since the block may hold declarations (e.g., an anonymous class passed as an
+     * argument), which the regex must see along with the group (e.g., the anonymous class's
+     * arguments). Any groups too deep within it, outside the block, are censored instead.
+     */
+    protected static void collapseBrackets(CensoredString content, char open, char close,
+                                           String scopeChars, String resetChars)
+    {
+        var text = content.censored();
+        var keepBlocks = scopeChars.indexOf('{') != -1;
+        var lastBlock = -1;
+
+        var openings = new int[16];
+        int nOpen = 0;
+        var bases = new int[16];
+        int nBases = 0;
+        int base = 0;
+
+        // Closed groups too deep to keep, whose enclosing group may yet turn out to hold a block
+        // (in which case they must be censored individually). 'pendingStart' marks, for each open
+        // group, where its own pending groups start.
+        var pending = new int[16];
+        int nPending = 0;
+        var pendingStart = new int[16];
+
+        for(int i = 0; i < text.length(); i++)
+        {
+            var ch = text.charAt(i);
+            if(ch == open)
+            {
+                if(nOpen == openings.length)
+                {
+                    openings = Arrays.copyOf(openings, nOpen * 2);
+                    pendingStart = Arrays.copyOf(pendingStart, nOpen * 2);
+                }
+                pendingStart[nOpen] = nPending;
+                openings[nOpen++] = i;
+            }
+            else if(ch == close)
+            {
+                if(nOpen > base)
+                {
+                    nOpen--;
+                    var start = openings[nOpen];
+                    var tooDeep = nOpen - base >= REGEX_RECURSE_DEPTH;
+                    var hasBlock = lastBlock > start || (keepBlocks && blockFollows(text, i + 1));
+                    if(tooDeep && !hasBlock)
+                    {
+                        // Censor this group later (or as part of an enclosing one), rather than
+                        // any groups nested within it.
+                        nPending = pendingStart[nOpen];
+                        if(nPending + 2 > pending.length)
+                        {
+                            pending = Arrays.copyOf(pending, pending.length * 2);
+                        }
+                        pending[nPending++] = start;
+                        pending[nPending++] = i + 1;
+                    }
+                    else
+                    {
+                        nPending = censorPending(content, pending, pendingStart[nOpen], nPending);
+                    }
+                }
+            }
+            else if(scopeChars.indexOf(ch) != -1)
+            {
+                if(keepBlocks && ch == '{')
+                {
+                    lastBlock = i;
+                }
+                if(nBases == bases.length) { bases = Arrays.copyOf(bases, nBases * 2); }
+                bases[nBases++] = base;
+                base = nOpen;
+            }
+            else if(nBases > 0 && closesScope(ch, scopeChars))
+            {
+                nPending = discardOpen(content, pending, pendingStart, nOpen, base, nPending);
+                nOpen = base;
+                base = bases[--nBases];
+            }
+            else if(resetChars.indexOf(ch) != -1)
+            {
+                nPending = discardOpen(content, pending, pendingStart, nOpen, base, nPending);
+                nOpen = base;
+            }
+        }
+        censorPending(content, pending, 0, nPending);
+    }
+
+    /** Returns true if the next character from 'i' onwards, other than whitespace, is '{'. */
+    private static boolean blockFollows(CharSequence text, int i)
+    {
+        while(i < text.length() && Character.isWhitespace(text.charAt(i)))
+        {
+            i++;
+        }
+        return i < text.length() && text.charAt(i) == '{';
+    }
+
+    /**
+     * Censors the pending groups of the unclosed groups from 'base' to 'nOpen', which are being
+     * discarded, and returns the new number of pending entries.
+     */
+    private static int discardOpen(CensoredString content, int[] pending, int[] pendingStart,
+                                   int nOpen, int base, int nPending)
+    {
+        return (nOpen > base) ? censorPending(content, pending, pendingStart[base], nPending)
+                              : nPending;
+    }
+
+    /** Censors the pending groups from entry 'from' onwards, and returns 'from'. */
+    private static int censorPending(CensoredString content, int[] pending, int from, int to)
+    {
+        for(int j = from; j < to; j += 2)
+        {
+            content.censor(pending[j], pending[j + 1]);
+        }
+        return from;
+    }
+
+    private static boolean closesScope(char ch, String scopeChars)
+    {
+        for(int i = 0; i < scopeChars.length(); i++)
+        {
+            if(closingBracket(scopeChars.charAt(i)) == ch) { return true; }
+        }
+        return false;
     }
 
     private static final Pattern NAME_LIST_DELETION = Pattern.compile("[\\[(<].*");
@@ -34,5 +213,26 @@ public abstract class Parser
     }
 
     public abstract void parse(Project project, SourceFile file);
+
+    /**
+     * Parses 'file' within the given budget, throwing ParseBudget.ExceededException if it runs
+     * out. Parsers whose running time is not prone to blowing up simply ignore the budget.
+     */
+    public void parse(Project project, SourceFile file, ParseBudget budget)
+    {
+        parse(project, file);
+    }
+
+    /**
+     * A cheaper parser to use instead, for a file on which this one has exceeded its budget.
+     */
+    public Optional<Parser> getFallback() { return Optional.empty(); }
+
+    /**
+     * Identifies the behaviour of this parser, for the purposes of ParseCache. Must be increased
+     * whenever a change to the parser would produce different definitions from the same input.
+     */
+    public int getVersion() { return 2; }
+
     public void postParse(Project project) {}
 }
@@ -0,0 +1,259 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+import au.djac.polytree.stats.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Walks a directory tree, and reads and parses each recognised source file into the Project for
+ * its language.
+ *
+ * The directory walk (and the assignment of files to languages/projects) happens on the calling
+ * thread. Reading and parsing are then spread across a pool of worker threads. Each file's
+ * definitions are then added to the shared Project, which is safe because ScopedDefinition
+ * serialises changes to its set of nested definitions.
+ *
+ * Once loaded, projects can be kept up to date with update(), which re-parses only the files that
+ * have changed (as reported by DirectoryWatcher, for instance).
+ *
+ * Each file is parsed within a ParseBudget, into a ScratchProject that is merged into the real
+ * one only if parsing succeeds. A file that exceeds its budget is parsed again with the parser's
+ * (cheaper) fallback, and reported by getOverBudget().
+ */
+public class ProjectLoader
+{
+    /**
+     * Typically a few seconds' work. The regex parsers take up to around 50 million steps for a
+     * 10 KB file, and more than proportionally longer for larger ones.
+     */
+    public static final long DEFAULT_PARSE_BUDGET = 250_000_000L;
+
+    private final LanguageSet languageSet;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Optional<ParseCache> cache = Optional.empty();
+    private Stats stats = Stats.disabled();
+    private long parseBudget = DEFAULT_PARSE_BUDGET;
+    private final List<Path> overBudget = Collections.synchronizedList(new ArrayList<>());
+
+    public ProjectLoader(LanguageSet languageSet)
+    {
+        this.languageSet = languageSet;
+    }
+
+    public ProjectLoader threads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    public ProjectLoader cache(ParseCache cache)
+    {
+        this.cache = Optional.of(cache);
+        return this;
+    }
+
+    public ProjectLoader stats(Stats stats)
+    {
+        this.stats = stats;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of steps (see ParseBudget) to spend parsing any one file, or 0 for
+     * no limit.
+     */
+    public ProjectLoader parseBudget(long maxSteps)
+    {
+        this.parseBudget = maxSteps;
+        return this;
+    }
+
+    /**
+     * Returns the files, from the last call to load() or update(), that exceeded the parse budget
+     * and were parsed by a fallback parser instead.
+     */
+    public List<Path> getOverBudget()
+    {
+        synchronized(overBudget)
+        {
+            return List.copyOf(overBudget);
+        }
+    }
+
+    public Map<Language,Project> load(Path directory) throws IOException
+    {
+        var start = stats.start();
+        overBudget.clear();
+        var projects = new HashMap<Language,Project>();
+        List<Path> paths;
+        try(var walk = Files.walk(directory))
+        {
+            paths = walk.filter(Files::isRegularFile).toList();
+        }
+        stats.record("walk", start);
+
+        parseAll(projects, directory, paths);
+        stats.record("load (wall-clock)", start);
+        return projects;
+    }
+
+    /**
+     * Brings previously-loaded projects up to date with changes to the given paths, which may be
+     * files or directories that have been created, modified or deleted. Definitions from these
+     * paths are removed, and any files that (still) exist are parsed again.
+     */
+    public void update(Map<Language,Project> projects, Path directory, Collection<Path> changed)
+        throws IOException
+    {
+        var start = stats.start();
+        overBudget.clear();
+        for(var path : changed)
+        {
+            projects.values().forEach(project -> project.removeFrom(path));
+        }
+
+        var files = new ArrayList<Path>();
+        for(var path : changed)
+        {
+            if(Files.isDirectory(path))
+            {
+                try(var paths = Files.walk(path))
+                {
+                    paths.filter(Files::isRegularFile).forEach(files::add);
+                }
+            }
+            else if(Files.isRegularFile(path))
+            {
+                files.add(path);
+            }
+        }
+        parseAll(projects, directory, files);
+
+        // Imports in unchanged files may refer to definitions that have now been replaced.
+        for(var project : projects.values())
+        {
+            project.walk().forEach(ScopedDefinition::clearImports);
+        }
+        stats.record("update (wall-clock)", start);
+    }
+
+    private void parseAll(Map<Language,Project> projects, Path directory, List<Path> paths)
+        throws IOException
+    {
+        var tasks = new ArrayList<Callable<Void>>();
+        paths.stream()
+             .filter(path -> !path.toFile().getName().startsWith("._"))
+             .forEach(path ->
+             {
+                 languageSet.getByPath(path).ifPresent(language ->
+                 {
+                     var project = projects.computeIfAbsent(
+                         language,
+                         _l -> new Project(directory.toString(), language));
+
+                     tasks.add(() ->
+                     {
+                         var parser = language.getParser();
+                         var readStart = stats.start();
+                         var file = SourceFile.read(project, path);
+                         stats.record("read", readStart);
+                         stats.count("files", 1);
+                         stats.count("bytes", Files.size(path));
+
+                         var parseStart = stats.start();
+                         var budget = (parseBudget > 0) ? new ParseBudget(parseBudget)
+                                                        : ParseBudget.unlimited();
+                         try
+                         {
+                             parse(parser, project, file, budget);
+                         }
+                         catch(ParseBudget.ExceededException e)
+                         {
+                             var fallback = parser.getFallback().orElseThrow(() -> e);
+                             parse(fallback, project, file, ParseBudget.unlimited());
+                             overBudget.add(path);
+                             stats.count("files over parse budget", 1);
+                         }
+                         stats.record("parse " + language.getName(), parseStart);
+                         stats.fileParsed(path, parseStart);
+                         return null;
+                     });
+                 });
+             });
+
+        runAll(tasks);
+    }
+
+    private void parse(Parser parser, Project project, SourceFile file, ParseBudget budget)
+        throws IOException
+    {
+        if(cache.isPresent())
+        {
+            cache.get().parse(parser, project, file, budget);
+        }
+        else
+        {
+            var scratch = new ScratchProject(project);
+            parser.parse(scratch, file, budget);
+            scratch.merge();
+        }
+    }
+
+    private void runAll(List<Callable<Void>> tasks) throws IOException
+    {
+        if(threads == 1)
+        {
+            for(var task : tasks)
+            {
+                call(task);
+            }
+            return;
+        }
+
+        var executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            for(var future : executor.invokeAll(tasks))
+            {
+                future.get();
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+        }
+        catch(ExecutionException e)
+        {
+            rethrow(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void call(Callable<Void> task) throws IOException
+    {
+        try
+        {
+            task.call();
+        }
+        catch(Exception e)
+        {
+            rethrow(e);
+        }
+    }
+
+    private static void rethrow(Throwable cause) throws IOException
+    {
+        if(cause instanceof IOException)      { throw (IOException)cause; }
+        if(cause instanceof RuntimeException) { throw (RuntimeException)cause; }
+        if(cause instanceof Error)            { throw (Error)cause; }
+        throw new IllegalStateException(cause);
+    }
+}
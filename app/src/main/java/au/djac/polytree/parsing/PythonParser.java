@@ -36,14 +36,15 @@ import java.util.regex.*;
  */
 public class PythonParser extends Parser
 {
-    private static final Pattern MAIN_CENSOR_PATTERN;
+    static final Pattern MAIN_CENSOR_PATTERN;
     static {
-        var string = "('''|'|\"\"\"|\")(\\\\.|(?!\\1).)*+\1";
+        var longString = "('''|\"\"\")(\\\\(?s:.)|(?!\\1)[^\\\\])*+\\1";
+        var shortString = "('|\")(\\\\(?s:.)|(?!\\3)[^\\\\\n])*+\\3";
         var comment = "#[^\n]*+";
-        MAIN_CENSOR_PATTERN = Pattern.compile(comment + '|' + string);
+        MAIN_CENSOR_PATTERN = Pattern.compile(comment + '|' + longString + '|' + shortString);
     }
 
-    private static final Pattern NEWLINE_ESCAPE_CENSOR_PATTERN = Pattern.compile(
+    static final Pattern NEWLINE_ESCAPE_CENSOR_PATTERN = Pattern.compile(
         "\\\\\\n");
 
     private static final String NAME = "\\b[A-Za-z_][A-Za-z0-9_]*+\\b";
@@ -101,12 +102,19 @@ public class PythonParser extends Parser
 
     @Override
     public void parse(Project project, SourceFile file)
+    {
+        parse(project, file, ParseBudget.unlimited());
+    }
+
+    @Override
+    public void parse(Project project, SourceFile file, ParseBudget budget)
     {
         // file.setScopeType(ScopeType.NAMESPACE);
 
-        var content = new CensoredString(file.getContent());
+        var content = new CensoredString(file.getContent()).budget(budget);
         content.censor(MAIN_CENSOR_PATTERN);
         content.censor(NEWLINE_ESCAPE_CENSOR_PATTERN, ' ');
+        collapseBrackets(content, '(', ')', "", "");
 
         var defnList = new LinkedList<ScopedDefinition>();
         defnList.add(findPackage(project, file));
@@ -128,15 +136,23 @@ public class PythonParser extends Parser
             }
             var containing = defnList.getLast();
 
+            var end = matcher.end();
+            var name = matcher.uncensoredGroup("name").get();
+            var decorators = matcher.uncensoredGroup("decorators").get();
+            var params = matcher.censoredGroup("params");
+
             ScopedDefinition defn;
             switch(matcher.uncensoredGroup("kind").get())
             {
                 case "class":
-                    defn = makeTypeDefinition(file, containing, matcher);
+                    defn = makeTypeDefinition(file, start, end, name, decorators, params);
                     break;
 
                 case "def":
-                    defn = makeMethodDefinition(file, containing, matcher);
+                    defn = makeMethodDefinition(file, containing instanceof TypeDefinition,
+                                                start, end, name, decorators,
+                                                params, matcher.start("params"),
+                                                matcher.uncensoredGroup("returnType"));
                     break;
 
                 default:
@@ -178,7 +194,7 @@ public class PythonParser extends Parser
     //     return scope;
     // }
 
-    private static ScopedDefinition findPackage(Project project, SourceFile file)
+    static ScopedDefinition findPackage(Project project, SourceFile file)
     {
         ScopedDefinition scope = project;
 
@@ -203,22 +219,15 @@ public class PythonParser extends Parser
         return scope;
     }
 
-    private static TypeDefinition makeTypeDefinition(SourceFile file,
-                                                     ScopedDefinition containing,
-                                                     CensoredString.Matcher matcher)
+    static TypeDefinition makeTypeDefinition(SourceFile file, int start, int end, String name,
+                                             String decorators,
+                                             Optional<CensoredString> params)
     {
-        var defn = new TypeDefinition(
-            file,
-            matcher.start(),
-            matcher.end(),
-            matcher.uncensoredGroup("name").get(),
-            TypeCategory.CLASS,
-            "class"
-        );
-
-        addModifiers(defn, matcher);
-
-        matcher.censoredGroup("params").ifPresent(paramStr ->
+        var defn = new TypeDefinition(file, start, end, name, TypeCategory.CLASS, "class");
+
+        addModifiers(defn, decorators);
+
+        params.ifPresent(paramStr ->
         {
             paramStr.censorIteratively(PARAM_CENSOR_PATTERN);
             var superTypeMatcher = paramStr.matcher(SUPERTYPE_PATTERN);
@@ -247,6 +256,10 @@ public class PythonParser extends Parser
                 //         .constructHint("class");
                 // }
                 var superTypeDisplay = superTypeMatcher.uncensoredGroup("main").get().strip();
+                if(superTypeDisplay.isEmpty())
+                {
+                    continue; // Whitespace after a trailing comma.
+                }
                 var superType = nameList(superTypeDisplay, "\\.");
                 var abc = ABSTRACT_SUPERTYPES.contains(superType);
                 if(abc)
@@ -272,22 +285,22 @@ public class PythonParser extends Parser
         return defn;
     }
 
-    private static MethodDefinition makeMethodDefinition(SourceFile file,
-                                                         ScopedDefinition containing,
-                                                         CensoredString.Matcher matcher)
+    static MethodDefinition makeMethodDefinition(SourceFile file, boolean inType,
+                                                 int start, int end, String name,
+                                                 String decorators,
+                                                 Optional<CensoredString> params, int paramsStart,
+                                                 Optional<String> returnType)
     {
-        var start = matcher.start();
-        var name = matcher.uncensoredGroup("name").get();
-        var defn = new MethodDefinition(file, start, matcher.end(), name);
+        var defn = new MethodDefinition(file, start, end, name);
 
-        if(containing instanceof TypeDefinition && "__init__".equals(name))
+        if(inType && "__init__".equals(name))
         {
             defn.setConstructor(true);
         }
 
-        addModifiers(defn, matcher);
+        addModifiers(defn, decorators);
 
-        var paramStr = matcher.censoredGroup("params").get();
+        var paramStr = params.orElseGet(() -> new CensoredString(""));
         paramStr.censorIteratively(PARAM_CENSOR_PATTERN);
         var paramMatcher = paramStr.matcher(PARAMETER_PATTERN);
 
@@ -296,14 +309,14 @@ public class PythonParser extends Parser
         {
             var paramDefn = new ParameterDefinition(
                 file,
-                start + paramMatcher.start(),
-                start + paramMatcher.end(),
+                paramsStart + paramMatcher.start(),
+                paramsStart + paramMatcher.end(),
                 paramMatcher.uncensoredGroup("name").get()
             );
             if(first)
             {
                 first = false;
-                if(containing instanceof TypeDefinition && !defn.hasModifier(Modifier.STATIC))
+                if(inType && !defn.hasModifier(Modifier.STATIC))
                 {
                     // The first parameter (self) of non-static methods (and class methods) is
                     // regarded as 'implicit'. We record it, but (typically) its display will be
@@ -326,7 +339,7 @@ public class PythonParser extends Parser
                 paramDefn.setDefaultValue(v.strip()));
         }
 
-        matcher.uncensoredGroup("returnType").ifPresent(t ->
+        returnType.ifPresent(t ->
         {
             var typeStr = decodeType(t);
             defn.setReturnType(nameList(typeStr, "\\."), typeStr)
@@ -356,9 +369,8 @@ public class PythonParser extends Parser
     }
 
 
-    private static void addModifiers(Definition defn, CensoredString.Matcher matcher)
+    private static void addModifiers(Definition defn, String allDecorators)
     {
-        var allDecorators = matcher.uncensoredGroup("decorators").get();
         if(allDecorators.isEmpty()) { return; }
 
         for(var decoratorStr : allDecorators.split("\n"))
@@ -402,6 +414,13 @@ public class PythonParser extends Parser
     //     }
     // }
 
+    @Override
+    public Optional<Parser> getFallback()
+    {
+        // Single-pass, so it can't backtrack its way into trouble.
+        return Optional.of(new ScanningPythonParser());
+    }
+
     @Override
     public void postParse(Project project)
     {
@@ -0,0 +1,762 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.definitions.*;
+
+import java.util.*;
+
+/**
+ * An alternative to JavaParser that produces the same definition tree in a single left-to-right
+ * pass, rather than by repeatedly re-applying DECLARATION_PATTERN to the whole file.
+ *
+ * ScanningJavaParser uses the following approach:
+ *
+ * 1. Censor string literals and comments, exactly as JavaParser does.
+ * 2. Split the remaining text into tokens (names, single punctuation characters and "other").
+ * 3. Walk the tokens once, keeping a stack of open brace scopes {...}. Each scope remembers where
+ *    its current "segment" began: just after the last ';', '{' or '}' at its own parenthesis depth.
+ * 4. On '{', decide whether the segment (or, for anonymous classes, the tokens just before the
+ *    '{') is the header of a type, method or anonymous class declaration, or just a block, and push
+ *    a new scope. On ';', check whether the segment is a bodiless method, a package declaration or
+ *    an import.
+ * 5. On '}', pop the scope. Definitions are only created at this point, once their extent is
+ *    known, and everything declared inside them is nested within them.
+ *
+ * Matching parentheses are recorded as they are seen, so a header can skip over an argument list
+ * (which may contain whole anonymous classes) without rescanning it. Every token is examined a
+ * bounded number of times, so parsing is linear in the size of the file.
+ *
+ * As with JavaParser, nothing is validated; what is not recognised is simply ignored.
+ */
+public class ScanningJavaParser extends Parser
+{
+    // Token kinds. Punctuation tokens use the punctuation character itself as their kind.
+    private static final int NAME = 1;
+    private static final int OTHER = 2;
+    private static final int ELLIPSIS = 3;
+    private static final String PUNCTUATION = "{}()<>[];,.@?-";
+
+    private static final Set<String> STD_MODIFIERS = Set.of(
+        "abstract", "default", "final", "native", "open", "private", "protected", "public",
+        "static", "sealed", "strictfp", "synchronized", "transient", "volatile");
+
+    private static final Set<String> CONSTRUCTS = Set.of("class", "interface", "record", "enum");
+    private static final Set<String> RESERVED = Set.copyOf(JavaParser.RESERVED);
+    private static final Set<String> RESERVED_NON_TYPES = Set.copyOf(JavaParser.RESERVED_NON_TYPES);
+
+    private enum Kind { TYPE, ANONYMOUS, METHOD }
+
+    private record Parameter(int start, int end, List<String> modifiers, String type, String name) {}
+
+    private static class Declaration
+    {
+        Kind kind;
+        int start;
+        List<String> modifiers = List.of();
+        String construct = "";
+        String name;
+        Optional<String> typeParams = Optional.empty();
+        List<String> extendsTypes = new ArrayList<>();
+        List<String> implementsTypes = new ArrayList<>();
+        String superType;
+        String returnType;
+        List<Parameter> parameters = new ArrayList<>();
+        List<String> throwsTypes = new ArrayList<>();
+    }
+
+    private static class Scope
+    {
+        final Declaration decl; // Null for the top level and for plain blocks.
+        final int parenBase;
+        final List<ScopedDefinition> nested = new ArrayList<>();
+        int segmentStart;
+
+        Scope(Declaration decl, int parenBase, int segmentStart)
+        {
+            this.decl = decl;
+            this.parenBase = parenBase;
+            this.segmentStart = segmentStart;
+        }
+
+        boolean acceptsMembers()
+        {
+            return decl == null ? parenBase == -1 : decl.kind != Kind.METHOD;
+        }
+    }
+
+    public ScanningJavaParser() {}
+
+    @Override
+    public void parse(Project project, SourceFile file)
+    {
+        var content = new CensoredString(file.getContent());
+        content.censor(JavaParser.MAIN_CENSOR_PATTERN);
+        new Scan(project, file, new Tokens(file.getContent(), content.censored())).run();
+    }
+
+    /**
+     * The token stream of one file. Tokens are stored column-wise in int arrays, rather than as
+     * objects, since there are a great many of them.
+     */
+    private static class Tokens
+    {
+        final String text;
+        int size = 0;
+        int[] kinds = new int[256];
+        int[] starts = new int[256];
+        int[] ends = new int[256];
+        int[] partners; // Index of the matching parenthesis, or -1.
+
+        Tokens(String text, CharSequence censored)
+        {
+            this.text = text;
+            int len = censored.length();
+            int i = 0;
+            while(i < len)
+            {
+                char ch = censored.charAt(i);
+                int start = i++;
+                if(Character.isWhitespace(ch) || ch == CensoredString.DEFAULT_CENSOR_CHAR)
+                {
+                    continue;
+                }
+
+                if(isNameChar(ch))
+                {
+                    while(i < len && isNameChar(censored.charAt(i))) { i++; }
+                    add(Character.isDigit(ch) ? OTHER : NAME, start, i);
+                }
+                else if(ch == '\'')
+                {
+                    // Character literals aren't censored, but may contain braces, etc.
+                    while(i < len && censored.charAt(i) != '\'' && censored.charAt(i) != '\n')
+                    {
+                        i += (censored.charAt(i) == '\\') ? 2 : 1;
+                    }
+                    i = Math.min(len, i + 1);
+                    add(OTHER, start, i);
+                }
+                else if(ch == '.' && i + 1 < len && censored.charAt(i) == '.' && censored.charAt(i + 1) == '.')
+                {
+                    i += 2;
+                    add(ELLIPSIS, start, i);
+                }
+                else
+                {
+                    add(PUNCTUATION.indexOf(ch) == -1 ? OTHER : ch, start, i);
+                }
+            }
+
+            partners = new int[size];
+            Arrays.fill(partners, -1);
+        }
+
+        private static boolean isNameChar(char ch)
+        {
+            return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$';
+        }
+
+        private void add(int kind, int start, int end)
+        {
+            if(size == kinds.length)
+            {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            kinds[size] = kind;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        boolean isName(int i, String name)
+        {
+            return kinds[i] == NAME
+                && ends[i] - starts[i] == name.length()
+                && text.startsWith(name, starts[i]);
+        }
+
+        String name(int i)
+        {
+            return text.substring(starts[i], ends[i]);
+        }
+
+        /** The original text spanning tokens 'from' (inclusive) to 'to' (exclusive). */
+        String text(int from, int to)
+        {
+            return text.substring(starts[from], ends[to - 1]);
+        }
+    }
+
+    /**
+     * The state of a single parse: the main token loop and the scope stack.
+     */
+    private static class Scan
+    {
+        private final Project project;
+        private final SourceFile file;
+        private final Tokens tokens;
+        private final int[] kinds;
+
+        private final Deque<Scope> scopes = new ArrayDeque<>();
+        private int[] parens;
+        private int nParens = 0;
+
+        private List<String> packageNames = List.of();
+        private final List<Import.Supplier> imports = new ArrayList<>();
+
+        Scan(Project project, SourceFile file, Tokens tokens)
+        {
+            this.project = project;
+            this.file = file;
+            this.tokens = tokens;
+            this.kinds = tokens.kinds;
+            this.parens = new int[16];
+        }
+
+        void run()
+        {
+            var top = new Scope(null, -1, 0);
+            scopes.push(top);
+
+            for(int i = 0; i < tokens.size; i++)
+            {
+                var scope = scopes.peek();
+                switch(kinds[i])
+                {
+                    case '(':
+                        if(nParens == parens.length) { parens = Arrays.copyOf(parens, nParens * 2); }
+                        parens[nParens++] = i;
+                        break;
+
+                    case ')':
+                        if(nParens > Math.max(0, scope.parenBase))
+                        {
+                            var open = parens[--nParens];
+                            tokens.partners[open] = i;
+                            tokens.partners[i] = open;
+                        }
+                        break;
+
+                    case ';':
+                        if(atSegmentLevel(scope))
+                        {
+                            endStatement(scope, i);
+                            scope.segmentStart = i + 1;
+                        }
+                        break;
+
+                    case '{':
+                        Declaration decl = null;
+                        if(atSegmentLevel(scope))
+                        {
+                            decl = declaration(scope.segmentStart, i, true);
+                        }
+                        if(decl == null)
+                        {
+                            decl = anonymousClass(scope, i);
+                        }
+                        scopes.push(new Scope(decl, nParens, i + 1));
+                        break;
+
+                    case '}':
+                        if(scopes.size() > 1)
+                        {
+                            closeScope(tokens.ends[i]);
+                            var outer = scopes.peek();
+                            if(atSegmentLevel(outer))
+                            {
+                                outer.segmentStart = i + 1;
+                            }
+                        }
+                        break;
+
+                    default:
+                }
+            }
+
+            while(scopes.size() > 1)
+            {
+                // Unclosed braces; treat the remaining scopes as plain blocks.
+                var scope = scopes.pop();
+                scopes.peek().nested.addAll(scope.nested);
+            }
+
+            var unit = JavaParser.compilationUnit(project, file, packageNames);
+            imports.add(JavaParser.packageImportSupplier(project));
+            unit.addImportSuppliers(imports);
+            top.nested.forEach(unit::addNested);
+        }
+
+        private boolean atSegmentLevel(Scope scope)
+        {
+            return nParens == Math.max(0, scope.parenBase);
+        }
+
+        private void closeScope(int end)
+        {
+            var scope = scopes.pop();
+            nParens = Math.min(nParens, Math.max(0, scope.parenBase));
+
+            var outer = scopes.peek();
+            if(scope.decl == null)
+            {
+                outer.nested.addAll(scope.nested);
+            }
+            else
+            {
+                outer.nested.add(build(scope.decl, end, scope.nested));
+            }
+        }
+
+        private void endStatement(Scope scope, int semicolon)
+        {
+            var start = scope.segmentStart;
+            if(start >= semicolon) { return; }
+
+            if(scope.parenBase == -1 && scope.decl == null)
+            {
+                if(tokens.isName(start, "package"))
+                {
+                    var c = new Cursor(start + 1, semicolon);
+                    if(c.qualifiedName() && c.atEnd())
+                    {
+                        packageNames = nameList(tokens.text(start + 1, semicolon), "\\.");
+                    }
+                    return;
+                }
+                if(tokens.isName(start, "import"))
+                {
+                    importDeclaration(start + 1, semicolon);
+                    return;
+                }
+            }
+
+            if(scope.acceptsMembers())
+            {
+                var decl = declaration(start, semicolon, false);
+                if(decl != null)
+                {
+                    scope.nested.add(build(decl, tokens.ends[semicolon], List.of()));
+                }
+            }
+        }
+
+        private void importDeclaration(int from, int to)
+        {
+            var c = new Cursor(from, to);
+            if(tokens.isName(from, "static")) { c.pos++; }
+
+            var nameStart = c.pos;
+            if(!c.qualifiedName()) { return; }
+            var nameEnd = c.pos;
+
+            var star = false;
+            if(c.kind() == '.' && c.pos + 1 < to && kinds[c.pos + 1] == OTHER
+                && tokens.name(c.pos + 1).equals("*"))
+            {
+                star = true;
+                c.pos += 2;
+            }
+
+            if(c.atEnd())
+            {
+                imports.add(JavaParser.importSupplier(
+                    project, nameList(tokens.text(nameStart, nameEnd), "\\."), star));
+            }
+        }
+
+        /**
+         * Interprets tokens 'from' to 'to' as a named type declaration (if 'braced') or a method
+         * declaration, returning null if they are neither.
+         */
+        private Declaration declaration(int from, int to, boolean braced)
+        {
+            if(from >= to) { return null; }
+
+            var c = new Cursor(from, to);
+            var decl = new Declaration();
+            decl.start = tokens.starts[from];
+            decl.modifiers = c.modifiers();
+
+            if(braced && c.kind() == '@' && c.pos + 1 < to && tokens.isName(c.pos + 1, "interface"))
+            {
+                c.pos++; // Annotation type declaration.
+            }
+
+            if(braced && c.kind() == NAME && CONSTRUCTS.contains(tokens.name(c.pos)))
+            {
+                decl.kind = Kind.TYPE;
+                decl.construct = tokens.name(c.pos++);
+                if(!c.name(RESERVED)) { return null; }
+                decl.name = tokens.name(c.pos - 1);
+                decl.typeParams = c.typeArgs();
+
+                if(c.kind() == '(' && !c.skipParens()) { return null; } // Record header
+                if(c.acceptName("extends")     && !c.typeList(decl.extendsTypes))    { return null; }
+                if(c.acceptName("implements")  && !c.typeList(decl.implementsTypes)) { return null; }
+                if(c.acceptName("permits")     && !c.typeList(new ArrayList<>()))   { return null; }
+                return c.atEnd() ? decl : null;
+            }
+
+            decl.kind = Kind.METHOD;
+            decl.typeParams = c.typeArgs();
+
+            var typeStart = c.pos;
+            if(c.kind() != NAME || RESERVED_NON_TYPES.contains(tokens.name(c.pos)) || !c.typeUse())
+            {
+                return null;
+            }
+            decl.returnType = tokens.text(typeStart, c.pos);
+
+            if(!c.name(RESERVED)) { return null; }
+            decl.name = tokens.name(c.pos - 1);
+
+            if(c.kind() != '(') { return null; }
+            var open = c.pos;
+            if(!c.skipParens() || !parameters(open + 1, c.pos - 1, decl.parameters)) { return null; }
+
+            if(c.acceptName("throws") && !c.typeList(decl.throwsTypes)) { return null; }
+            return c.atEnd() ? decl : null;
+        }
+
+        private boolean parameters(int from, int to, List<Parameter> parameters)
+        {
+            int pieceStart = from;
+            int angles = 0;
+            for(int i = from; i <= to; i++)
+            {
+                var kind = (i == to) ? ',' : kinds[i];
+                if(kind == '{' || kind == '}' || kind == ';') { return false; }
+                if(kind == '(' && tokens.partners[i] != -1) { i = tokens.partners[i]; }
+                else if(kind == '<') { angles++; }
+                else if(kind == '>') { angles--; }
+                else if(kind == ',' && (angles <= 0 || i == to))
+                {
+                    if(pieceStart < i) { parameter(pieceStart, i, parameters); }
+                    pieceStart = i + 1;
+                    angles = 0;
+                }
+            }
+            return true;
+        }
+
+        private void parameter(int from, int to, List<Parameter> parameters)
+        {
+            var c = new Cursor(from, to);
+            var modifiers = c.modifiers();
+
+            var typeStart = c.pos;
+            if(c.kind() != NAME || RESERVED_NON_TYPES.contains(tokens.name(c.pos)) || !c.typeUse())
+            {
+                return;
+            }
+            var type = tokens.text(typeStart, c.pos);
+
+            var beforeVararg = c.pos;
+            while(c.annotation()) {}
+            if(!c.accept(ELLIPSIS)) { c.pos = beforeVararg; }
+
+            if(c.name(RESERVED))
+            {
+                parameters.add(new Parameter(tokens.starts[from], tokens.ends[c.pos - 1],
+                                             modifiers, type, tokens.name(c.pos - 1)));
+            }
+        }
+
+        /**
+         * Checks whether the '{' at index 'brace' opens the body of an anonymous class; i.e.,
+         * whether it is preceded by "new Type(...)".
+         */
+        private Declaration anonymousClass(Scope scope, int brace)
+        {
+            if(brace == 0 || kinds[brace - 1] != ')') { return null; }
+            var open = tokens.partners[brace - 1];
+            if(open < 1) { return null; }
+
+            // Step backwards over anything that could be part of the type, looking for 'new'.
+            int i = open - 1;
+            while(i >= scope.segmentStart && !tokens.isName(i, "new"))
+            {
+                var kind = kinds[i];
+                if(kind == NAME)
+                {
+                    if(i > 0 && kinds[i - 1] == NAME && !tokens.isName(i - 1, "new")) { return null; }
+                }
+                else if(kind != '.' && kind != '<' && kind != '>' && kind != ',' && kind != '?'
+                    && kind != '[' && kind != ']' && kind != '@')
+                {
+                    return null;
+                }
+                i--;
+            }
+            if(i < scope.segmentStart) { return null; }
+
+            var c = new Cursor(i + 1, open);
+            while(c.annotation()) {}
+            var typeStart = c.pos;
+            if(!c.typeUse()) { return null; }
+            var typeEnd = c.pos;
+            c.typeArgs();
+            if(!c.atEnd()) { return null; }
+
+            var decl = new Declaration();
+            decl.kind = Kind.ANONYMOUS;
+            decl.start = tokens.starts[i];
+            decl.superType = tokens.text(typeStart, typeEnd);
+            return decl;
+        }
+
+        private ScopedDefinition build(Declaration decl, int end, List<ScopedDefinition> nested)
+        {
+            ScopedDefinition defn;
+            switch(decl.kind)
+            {
+                case TYPE:      defn = buildType(decl, end);      break;
+                case ANONYMOUS: defn = buildAnonymous(decl, end); break;
+                case METHOD:    defn = buildMethod(decl, end);    break;
+                default:        throw new AssertionError();
+            }
+            decl.modifiers.forEach(m -> JavaParser.addModifier(defn, m));
+            nested.forEach(member -> JavaParser.addMember(defn, decl.construct, member));
+            return defn;
+        }
+
+        private TypeDefinition buildType(Declaration decl, int end)
+        {
+            var category = decl.construct.equals("interface") ? TypeCategory.INTERFACE
+                                                               : TypeCategory.CLASS;
+            var defn = new TypeDefinition(file, decl.start, end, decl.name, category, decl.construct);
+            defn.setAscendable(true);
+            defn.setDescendable(true);
+            decl.typeParams.ifPresent(defn::setTypeParams);
+
+            for(var s : decl.extendsTypes)
+            {
+                defn.addSuperType(nameList(s, "\\."), s)
+                    .categoryHint(category)
+                    .constructHint((category == TypeCategory.INTERFACE) ? "interface" : "class");
+            }
+            for(var s : decl.implementsTypes)
+            {
+                defn.addSuperType(nameList(s, "\\."), s)
+                    .categoryHint(TypeCategory.INTERFACE)
+                    .constructHint("interface");
+            }
+            return defn;
+        }
+
+        private TypeDefinition buildAnonymous(Declaration decl, int end)
+        {
+            var defn = new TypeDefinition(
+                file,
+                decl.start,
+                end,
+                String.format("[anonymous class at %s:%s]", file.getPath(), decl.start),
+                TypeCategory.CLASS,
+                "class"
+            );
+            defn.setAscendable(true);
+            defn.setDescendable(false);
+            defn.addSuperType(nameList(decl.superType, "\\."), decl.superType);
+            return defn;
+        }
+
+        private MethodDefinition buildMethod(Declaration decl, int end)
+        {
+            var defn = new MethodDefinition(file, decl.start, end, decl.name);
+            defn.setAscendable(true);
+            defn.setDescendable(false);
+            decl.typeParams.ifPresent(defn::setTypeParams);
+            defn.setReturnType(nameList(decl.returnType, "\\."), decl.returnType);
+
+            for(var param : decl.parameters)
+            {
+                var paramDefn = new ParameterDefinition(file, param.start(), param.end(), param.name());
+                paramDefn.setType(
+                    new QualifiedTypeName(defn, nameList(param.type(), "\\."), param.type(), false));
+                param.modifiers().forEach(m -> JavaParser.addModifier(paramDefn, m));
+                defn.addParameter(paramDefn);
+            }
+
+            for(var s : decl.throwsTypes)
+            {
+                defn.addCheckedException(nameList(s, "\\."), s)
+                    .categoryHint(TypeCategory.CLASS)
+                    .constructHint("class");
+            }
+            return defn;
+        }
+
+        /**
+         * Recognises parts of a declaration header within a limited range of tokens. Each method
+         * either consumes what it recognises and returns true, or leaves 'pos' alone and returns
+         * false.
+         */
+        private class Cursor
+        {
+            int pos;
+            final int end;
+
+            Cursor(int pos, int end)
+            {
+                this.pos = pos;
+                this.end = end;
+            }
+
+            boolean atEnd() { return pos >= end; }
+            int kind()      { return (pos < end) ? kinds[pos] : -1; }
+
+            boolean accept(int kind)
+            {
+                if(kind() != kind) { return false; }
+                pos++;
+                return true;
+            }
+
+            boolean acceptName(String name)
+            {
+                if(pos >= end || !tokens.isName(pos, name)) { return false; }
+                pos++;
+                return true;
+            }
+
+            boolean name(Set<String> reserved)
+            {
+                if(kind() != NAME || reserved.contains(tokens.name(pos))) { return false; }
+                pos++;
+                return true;
+            }
+
+            boolean qualifiedName()
+            {
+                if(!accept(NAME)) { return false; }
+                while(kind() == '.' && pos + 1 < end && kinds[pos + 1] == NAME)
+                {
+                    pos += 2;
+                }
+                return true;
+            }
+
+            boolean skipParens()
+            {
+                if(kind() != '(') { return false; }
+                var close = tokens.partners[pos];
+                if(close == -1 || close >= end) { return false; }
+                pos = close + 1;
+                return true;
+            }
+
+            Optional<String> typeArgs()
+            {
+                if(kind() != '<') { return Optional.empty(); }
+                var start = pos;
+                var depth = 0;
+                for(int i = pos; i < end; i++)
+                {
+                    switch(kinds[i])
+                    {
+                        case '<':
+                            depth++;
+                            break;
+
+                        case '>':
+                            if(--depth == 0)
+                            {
+                                pos = i + 1;
+                                return Optional.of(tokens.text(start, pos));
+                            }
+                            break;
+
+                        case '(':
+                            if(tokens.partners[i] != -1) { i = tokens.partners[i]; }
+                            break;
+
+                        case '{': case '}': case ';':
+                            return Optional.empty();
+
+                        default:
+                    }
+                }
+                return Optional.empty();
+            }
+
+            boolean annotation()
+            {
+                if(kind() != '@' || pos + 1 >= end || tokens.isName(pos + 1, "interface"))
+                {
+                    return false;
+                }
+                var start = pos++;
+                if(!qualifiedName())
+                {
+                    pos = start;
+                    return false;
+                }
+                if(kind() == '(') { skipParens(); }
+                return true;
+            }
+
+            List<String> modifiers()
+            {
+                var modifiers = new ArrayList<String>();
+                while(true)
+                {
+                    var start = pos;
+                    if(annotation())
+                    {
+                        modifiers.add(tokens.text(start, pos));
+                    }
+                    else if(kind() == NAME && STD_MODIFIERS.contains(tokens.name(pos)))
+                    {
+                        modifiers.add(tokens.name(pos++));
+                    }
+                    else if(kind() == NAME && tokens.isName(pos, "non") && pos + 2 < end
+                        && kinds[pos + 1] == '-' && tokens.isName(pos + 2, "sealed"))
+                    {
+                        modifiers.add("non-sealed");
+                        pos += 3;
+                    }
+                    else
+                    {
+                        return modifiers;
+                    }
+                }
+            }
+
+            boolean typeUse()
+            {
+                var start = pos;
+                if(!qualifiedName()) { return false; }
+                typeArgs();
+                while(true)
+                {
+                    var dimStart = pos;
+                    while(annotation()) {}
+                    if(kind() == '[' && pos + 1 < end && kinds[pos + 1] == ']')
+                    {
+                        pos += 2;
+                    }
+                    else
+                    {
+                        pos = dimStart;
+                        return pos > start;
+                    }
+                }
+            }
+
+            /** Parses a comma-separated list of (annotated) types, recording each type. */
+            boolean typeList(List<String> types)
+            {
+                do
+                {
+                    while(annotation()) {}
+                    var start = pos;
+                    if(!typeUse()) { return false; }
+                    types.add(tokens.text(start, pos));
+                }
+                while(accept(','));
+                return true;
+            }
+        }
+    }
+}
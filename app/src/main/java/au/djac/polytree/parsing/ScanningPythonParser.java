@@ -0,0 +1,351 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.definitions.*;
+
+import java.util.*;
+
+/**
+ * An alternative to PythonParser that finds declarations in a single top-to-bottom pass over the
+ * lines of a file, rather than by re-applying DECLARATION_PATTERN to the whole file after each one.
+ *
+ * ScanningPythonParser uses the following approach:
+ *
+ * 1. Censor string literals and comments, exactly as PythonParser does.
+ * 2. Go through the file line-by-line, keeping a stack of open 'def'/'class' scopes, each with the
+ *    indentation of its header line.
+ * 3. When a (non-blank) line is indented no further than the innermost open scope, that scope has
+ *    ended, so pop it. Its definition is created at this point, now that its extent is known.
+ * 4. If the line is a 'def' or 'class' header, parse it (including any parameter list spanning
+ *    several lines) and push a new scope, attaching any decorator lines just above it.
+ *
+ * Lines that continue a bracketed expression or a backslash-escaped newline, and lines that are
+ * blank once strings and comments are censored, are not taken into account for indentation.
+ *
+ * Each character is examined a bounded number of times, so parsing is linear in the size of the
+ * file. (In particular, the search for the end of a parameter list stops at the next 'def' or
+ * 'class' line, so malformed headers can't each send it to the end of the file.) The definitions themselves are built by the same code that PythonParser uses.
+ */
+public class ScanningPythonParser extends Parser
+{
+    private static class Scope
+    {
+        final int indent;
+        final boolean isClass;
+        final int start;
+        final String name;
+        final String decorators;
+        final Optional<CensoredString> params;
+        final int paramsStart;
+        final Optional<String> returnType;
+        final boolean inType;
+        final List<ScopedDefinition> nested = new ArrayList<>();
+
+        Scope(int indent, boolean isClass, int start, String name, String decorators,
+              Optional<CensoredString> params, int paramsStart, Optional<String> returnType,
+              boolean inType)
+        {
+            this.indent = indent;
+            this.isClass = isClass;
+            this.start = start;
+            this.name = name;
+            this.decorators = decorators;
+            this.params = params;
+            this.paramsStart = paramsStart;
+            this.returnType = returnType;
+            this.inType = inType;
+        }
+    }
+
+    public ScanningPythonParser() {}
+
+    @Override
+    public void parse(Project project, SourceFile file)
+    {
+        var content = new CensoredString(file.getContent());
+        content.censor(PythonParser.MAIN_CENSOR_PATTERN);
+        content.censor(PythonParser.NEWLINE_ESCAPE_CENSOR_PATTERN, ' ');
+
+        var module = PythonParser.findPackage(project, file);
+        new Scan(file, content, module).run();
+    }
+
+    private static class Scan
+    {
+        private final SourceFile file;
+        private final CensoredString content;
+        private final String text;
+        private final CharSequence censored;
+        private final int len;
+        private final ScopedDefinition module;
+
+        private final Deque<Scope> scopes = new ArrayDeque<>();
+        private final List<ScopedDefinition> topLevel = new ArrayList<>();
+
+        private int brackets = 0;       // Depth of (...), [...] and {...} at the current point.
+        private int lastContentEnd = 0; // End of the last line that counts towards a scope body.
+        private int decoratorStart = -1;
+
+        Scan(SourceFile file, CensoredString content, ScopedDefinition module)
+        {
+            this.file = file;
+            this.content = content;
+            this.text = content.uncensored();
+            this.censored = content.censored();
+            this.len = censored.length();
+            this.module = module;
+        }
+
+        void run()
+        {
+            int lineStart = 0;
+            while(lineStart < len)
+            {
+                lineStart = line(lineStart);
+            }
+            closeScopes(-1);
+            topLevel.forEach(module::addNested);
+        }
+
+        /**
+         * Processes the line starting at 'lineStart' (along with any lines that continue it), and
+         * returns the start of the next line.
+         */
+        private int line(int lineStart)
+        {
+            var lineEnd = lineEnd(lineStart);
+            if(brackets > 0 || isEscapedNewline(lineStart - 1))
+            {
+                // Continuation of the previous line.
+                return countBrackets(lineStart, lineEnd, true);
+            }
+
+            int first = lineStart;
+            while(first < lineEnd && isIndentChar(censored.charAt(first))) { first++; }
+
+            if(first == lineEnd || censored.charAt(first) == CensoredString.DEFAULT_CENSOR_CHAR
+                || censored.charAt(first) == '\r')
+            {
+                // Blank, or starting with a censored string/comment. The latter still counts as part
+                // of the innermost scope's body if it is indented further.
+                decoratorStart = -1;
+                var indented = first < lineEnd && censored.charAt(first) != '\r'
+                    && (scopes.isEmpty() || first - lineStart > scopes.peek().indent);
+                return countBrackets(lineStart, lineEnd, indented);
+            }
+
+            var indent = first - lineStart;
+            closeScopes(indent);
+
+            if(censored.charAt(first) == '@')
+            {
+                if(decoratorStart == -1) { decoratorStart = lineStart; }
+                return countBrackets(lineStart, lineEnd, true);
+            }
+
+            var next = header(lineStart, first, indent);
+            if(next == -1)
+            {
+                next = countBrackets(lineStart, lineEnd, true);
+            }
+            decoratorStart = -1;
+            return next;
+        }
+
+        /**
+         * Tries to parse a 'def' or 'class' header starting at 'first'. If successful, returns the
+         * start of the next line; otherwise returns -1.
+         */
+        private int header(int lineStart, int first, int indent)
+        {
+            boolean isClass;
+            int i;
+            if(keywordAt(first, "class"))    { isClass = true;  i = first + 5; }
+            else if(keywordAt(first, "def")) { isClass = false; i = first + 3; }
+            else                             { return -1; }
+
+            int nameStart = skipBlanks(i);
+            if(nameStart == i || nameStart >= len || !isNameStart(censored.charAt(nameStart)))
+            {
+                return -1;
+            }
+            i = nameStart;
+            while(i < len && isNamePart(censored.charAt(i))) { i++; }
+            var name = text.substring(nameStart, i);
+
+            i = skipBlanks(i);
+            Optional<CensoredString> params = Optional.empty();
+            int paramsStart = -1;
+            if(i < len && censored.charAt(i) == '(')
+            {
+                var close = matchParams(i);
+                if(close == -1) { return -1; }
+                paramsStart = i + 1;
+                params = Optional.of(content.view(paramsStart, close));
+                i = skipBlanks(close + 1);
+            }
+
+            Optional<String> returnType = Optional.empty();
+            if(i + 1 < len && censored.charAt(i) == '-' && censored.charAt(i + 1) == '>')
+            {
+                var typeStart = i + 2;
+                var colon = typeStart;
+                while(colon < len && censored.charAt(colon) != ':' && censored.charAt(colon) != '\n')
+                {
+                    colon++;
+                }
+                if(colon >= len || censored.charAt(colon) != ':') { return -1; }
+                var type = text.substring(typeStart, colon).strip();
+                if(type.isEmpty()) { return -1; }
+                returnType = Optional.of(type);
+                i = colon;
+            }
+
+            if(i >= len || censored.charAt(i) != ':') { return -1; }
+
+            var start = (decoratorStart == -1) ? lineStart : decoratorStart;
+            var decorators = (decoratorStart == -1) ? "" : text.substring(decoratorStart, lineStart);
+            var inType = !scopes.isEmpty() && scopes.peek().isClass;
+            var scope = new Scope(indent, isClass, start, name, decorators,
+                                  params, paramsStart, returnType, inType);
+
+            var lineEnd = lineEnd(i);
+            var bodyStart = skipBlanks(i + 1);
+            var next = countBrackets(i + 1, lineEnd, true);
+            if(bodyStart < lineEnd && censored.charAt(bodyStart) != '\r'
+                && censored.charAt(bodyStart) != CensoredString.DEFAULT_CENSOR_CHAR)
+            {
+                // The body is on the same line as the header.
+                lastContentEnd = lineEnd;
+                siblings().add(build(scope, lineEnd));
+            }
+            else
+            {
+                lastContentEnd = bodyStart;
+                scopes.push(scope);
+            }
+            return next;
+        }
+
+        /**
+         * Returns the position of the ')' matching the '(' at 'open', or -1 if there is none before
+         * the next line starting with 'def' or 'class' (which can't be part of a parameter list).
+         * Stopping there keeps the scan linear, even with many unclosed headers, each of which
+         * would otherwise search to the end of the file.
+         */
+        private int matchParams(int open)
+        {
+            int depth = 0;
+            for(int i = open; i < len; i++)
+            {
+                switch(censored.charAt(i))
+                {
+                    case '(':
+                        depth++;
+                        break;
+
+                    case ')':
+                        if(--depth == 0) { return i; }
+                        break;
+
+                    case '\n':
+                    {
+                        var first = skipBlanks(i + 1);
+                        if(keywordAt(first, "def") || keywordAt(first, "class")) { return -1; }
+                        break;
+                    }
+
+                    default:
+                }
+            }
+            return -1;
+        }
+
+        private List<ScopedDefinition> siblings()
+        {
+            return scopes.isEmpty() ? topLevel : scopes.peek().nested;
+        }
+
+        /** Closes all scopes whose headers are indented by at least 'indent' characters. */
+        private void closeScopes(int indent)
+        {
+            while(!scopes.isEmpty() && scopes.peek().indent >= indent)
+            {
+                var scope = scopes.pop();
+                siblings().add(build(scope, lastContentEnd));
+            }
+        }
+
+        private ScopedDefinition build(Scope scope, int end)
+        {
+            ScopedDefinition defn;
+            if(scope.isClass)
+            {
+                defn = PythonParser.makeTypeDefinition(file, scope.start, end, scope.name,
+                                                       scope.decorators, scope.params);
+            }
+            else
+            {
+                defn = PythonParser.makeMethodDefinition(file, scope.inType,
+                                                         scope.start, end, scope.name,
+                                                         scope.decorators,
+                                                         scope.params, scope.paramsStart,
+                                                         scope.returnType);
+            }
+            scope.nested.forEach(defn::addNested);
+            return defn;
+        }
+
+        /**
+         * Updates the bracket depth over the given range and returns the start of the next line.
+         * If 'content' is true, the line also extends the body of any enclosing scope. If a bracket
+         * remains open at the end of the line, or the line ends with an escaped newline, then the
+         * following line(s) are continuations, handled by subsequent calls.
+         */
+        private int countBrackets(int from, int lineEnd, boolean content)
+        {
+            for(int i = from; i < lineEnd; i++)
+            {
+                switch(censored.charAt(i))
+                {
+                    case '(': case '[': case '{': brackets++; break;
+                    case ')': case ']': case '}': if(brackets > 0) { brackets--; } break;
+                    default:
+                }
+            }
+            if(content && brackets == 0 && !isEscapedNewline(lineEnd))
+            {
+                lastContentEnd = Math.max(lastContentEnd, lineEnd);
+            }
+            return lineEnd + 1;
+        }
+
+        private boolean isEscapedNewline(int newline)
+        {
+            // NEWLINE_ESCAPE_CENSOR_PATTERN replaces the backslash with a space.
+            return newline > 0 && newline < len
+                && text.charAt(newline - 1) == '\\' && censored.charAt(newline - 1) == ' ';
+        }
+
+        private int lineEnd(int from)
+        {
+            int i = from;
+            while(i < len && censored.charAt(i) != '\n') { i++; }
+            return i;
+        }
+
+        private int skipBlanks(int i)
+        {
+            while(i < len && isIndentChar(censored.charAt(i))) { i++; }
+            return i;
+        }
+
+        private boolean keywordAt(int i, String keyword)
+        {
+            var end = i + keyword.length();
+            return text.startsWith(keyword, i) && end < len && isIndentChar(censored.charAt(end));
+        }
+
+        private static boolean isIndentChar(char ch) { return ch == ' ' || ch == '\t'; }
+        private static boolean isNameStart(char ch)  { return Character.isLetter(ch) || ch == '_'; }
+        private static boolean isNamePart(char ch)   { return Character.isLetterOrDigit(ch) || ch == '_'; }
+    }
+}
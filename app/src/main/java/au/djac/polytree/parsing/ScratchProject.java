@@ -0,0 +1,29 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.definitions.*;
+
+/**
+ * A separate, empty Project into which a single file is parsed, so that its definitions reach the
+ * real Project (the 'target') only once parsing has succeeded, and all in one step. Imports are
+ * resolved against the target, since that's where the definitions end up.
+ */
+class ScratchProject extends Project
+{
+    private final Project target;
+
+    ScratchProject(Project target)
+    {
+        super(target.getName(), target.getLanguage());
+        this.target = target;
+    }
+
+    Project getTarget()
+    {
+        return target;
+    }
+
+    /** Moves everything parsed so far into the target. */
+    void merge()
+    {
+        moveNestedTo(target);
+    }
+}
@@ -0,0 +1,382 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A binary file holding all the definitions parsed from a directory tree (for each language), so
+ * that they can be displayed and queried elsewhere, without the source code or re-parsing.
+ *
+ * The file consists of a header, listing the projects, then a section for each project, then a
+ * table of all the strings (names, modifiers, etc.), which everything else refers to by index.
+ * A project section has tables of its source file paths and type names (QualifiedTypeNames,
+ * minus their scopes), and then its definitions, in walk order. Each definition is the index of
+ * its containing definition, followed by its DefinitionCodec encoding, which refers to strings,
+ * files and type names by index.
+ *
+ * Snapshots are read by memory-mapping the file. Each project is decoded only when first asked
+ * for, and each string only when first used. Source file contents are not stored.
+ */
+public class Snapshot
+{
+    private static final int MAGIC = 0x5054534E; // "PTSN"
+    private static final int FORMAT_VERSION = 3;
+
+    private static final int NONE = -1;
+
+    /** Writes a snapshot of the given projects to 'path'. */
+    public static void write(Path path, Map<Language,Project> projects) throws IOException
+    {
+        var strings = new StringTable();
+        var sections = new ArrayList<byte[]>();
+        for(var project : projects.values())
+        {
+            sections.add(new Writer(strings).write(project));
+        }
+
+        var headerSize = 4 * (4 + 3 * projects.size());
+        var offset = headerSize;
+        try(var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(headerSize + sections.stream().mapToInt(s -> s.length).sum());
+            out.writeInt(projects.size());
+            var i = 0;
+            for(var entry : projects.entrySet())
+            {
+                out.writeInt(strings.index(entry.getKey().getName()));
+                out.writeInt(strings.index(entry.getValue().getName()));
+                out.writeInt(offset);
+                offset += sections.get(i++).length;
+            }
+            for(var section : sections)
+            {
+                out.write(section);
+            }
+            strings.write(out);
+        }
+    }
+
+    /** Assigns each distinct string an index, in order of first use. */
+    private static class StringTable
+    {
+        private final Map<String,Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int index(String s)
+        {
+            return indexes.computeIfAbsent(s, _s ->
+            {
+                strings.add(s);
+                return strings.size() - 1;
+            });
+        }
+
+        /** Writes the count, then the offset of each string (and of the end), then the strings. */
+        void write(DataOutputStream out) throws IOException
+        {
+            var encoded = strings.stream().map(s -> s.getBytes(StandardCharsets.UTF_8)).toList();
+            out.writeInt(encoded.size());
+            var offset = 0;
+            for(var bytes : encoded)
+            {
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for(var bytes : encoded)
+            {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /** Records the definitions of one project. */
+    private static class Writer extends DefinitionCodec.Encoder
+    {
+        private final StringTable strings;
+        private final ByteArrayOutputStream bytes;
+        private final Map<SourceFile,Integer> files = new LinkedHashMap<>();
+        private final Map<DefinitionCodec.TypeName,Integer> typeNames = new LinkedHashMap<>();
+        private final Map<ScopedDefinition,Integer> defnIndexes = new HashMap<>();
+        private int nDefns = 0;
+
+        Writer(StringTable strings)
+        {
+            this(strings, new ByteArrayOutputStream());
+        }
+
+        private Writer(StringTable strings, ByteArrayOutputStream bytes)
+        {
+            super(new DataOutputStream(bytes));
+            this.strings = strings;
+            this.bytes = bytes;
+        }
+
+        byte[] write(Project project) throws IOException
+        {
+            defnIndexes.put(project, NONE);
+            writeNested(project);
+            out.flush();
+
+            var section = new ByteArrayOutputStream();
+            var sectionOut = new DataOutputStream(section);
+            sectionOut.writeInt(files.size());
+            for(var file : files.keySet())
+            {
+                sectionOut.writeInt(strings.index(file.getPath().toString()));
+            }
+
+            sectionOut.writeInt(typeNames.size());
+            for(var typeName : typeNames.keySet())
+            {
+                sectionOut.writeInt(typeName.names().size());
+                for(var name : typeName.names())
+                {
+                    sectionOut.writeInt(strings.index(name));
+                }
+                sectionOut.writeInt(strings.index(typeName.displayName()));
+                sectionOut.writeInt(strings.index(typeName.categoryHint().name()));
+                sectionOut.writeInt(strings.index(typeName.constructHint()));
+            }
+
+            sectionOut.writeInt(nDefns);
+            bytes.writeTo(sectionOut);
+            sectionOut.flush();
+            return section.toByteArray();
+        }
+
+        private void writeNested(ScopedDefinition defn) throws IOException
+        {
+            for(var nested : defn.getNested().toList())
+            {
+                out.writeInt(defnIndexes.get(nested.getContaining().get()));
+                writeDefinition(nested);
+                defnIndexes.put(nested, nDefns++);
+                writeNested(nested);
+            }
+        }
+
+        @Override
+        void writeString(String s) throws IOException
+        {
+            out.writeInt(strings.index(s));
+        }
+
+        @Override
+        void writeFile(Optional<SourceFile> file) throws IOException
+        {
+            out.writeInt(file.isPresent()
+                         ? files.computeIfAbsent(file.get(), _f -> files.size())
+                         : NONE);
+        }
+
+        /** Writes the index of a type name in the project's table of them (adding it if needed). */
+        @Override
+        void writeTypeName(DefinitionCodec.TypeName typeName) throws IOException
+        {
+            out.writeInt(typeNames.computeIfAbsent(typeName, _t -> typeNames.size()));
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int stringTableOffset;
+    private final int nStrings;
+    private final String[] strings;
+    private final Map<String,Integer> projectOffsets = new LinkedHashMap<>();
+    private final Map<String,String> projectNames = new HashMap<>();
+    private final Map<String,Project> projects = new HashMap<>();
+
+    /** Opens (by memory-mapping) a snapshot written by write(). */
+    public static Snapshot read(Path path) throws IOException
+    {
+        try(var channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            return new Snapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private Snapshot(ByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+        try
+        {
+            if(buffer.getInt(0) != MAGIC)
+            {
+                throw new StreamCorruptedException("Not a snapshot file");
+            }
+            var version = buffer.getInt(4);
+            if(version != FORMAT_VERSION)
+            {
+                throw new StreamCorruptedException("Unsupported snapshot version " + version
+                                                   + " (expected " + FORMAT_VERSION + ")");
+            }
+            stringTableOffset = buffer.getInt(8);
+            nStrings = buffer.getInt(stringTableOffset);
+            strings = new String[nStrings];
+
+            var nProjects = buffer.getInt(12);
+            for(int i = 0; i < nProjects; i++)
+            {
+                var language = string(buffer.getInt(16 + 12 * i));
+                projectNames.put(language, string(buffer.getInt(20 + 12 * i)));
+                projectOffsets.put(language, buffer.getInt(24 + 12 * i));
+            }
+        }
+        catch(IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e)
+        {
+            throw new StreamCorruptedException("Truncated or damaged snapshot");
+        }
+    }
+
+    /** Returns the names of the languages for which the snapshot has projects. */
+    public Set<String> getLanguageNames()
+    {
+        return Collections.unmodifiableSet(projectOffsets.keySet());
+    }
+
+    /** Returns the project for the given language (decoding it on first use), if present. */
+    public Optional<Project> getProject(Language language) throws IOException
+    {
+        var name = language.getName();
+        var offset = projectOffsets.get(name);
+        if(offset == null)
+        {
+            return Optional.empty();
+        }
+
+        var project = projects.get(name);
+        if(project == null)
+        {
+            project = new Project(projectNames.get(name), language);
+            try
+            {
+                new Reader(project, buffer.duplicate().position(offset)).read();
+            }
+            catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                  | NegativeArraySizeException e)
+            {
+                throw new StreamCorruptedException("Truncated or damaged snapshot");
+            }
+            projects.put(name, project);
+        }
+        return Optional.of(project);
+    }
+
+    /** Returns all the projects, with languages taken from 'languageSet'. */
+    public Map<Language,Project> getProjects(LanguageSet languageSet) throws IOException
+    {
+        var result = new HashMap<Language,Project>();
+        for(var name : projectOffsets.keySet())
+        {
+            var language = languageSet.getByName(name).orElseThrow(
+                () -> new StreamCorruptedException("Unknown language " + name));
+            result.put(language, getProject(language).get());
+        }
+        return result;
+    }
+
+    private String string(int index)
+    {
+        if(index == NONE)
+        {
+            return null;
+        }
+        var s = strings[index];
+        if(s == null)
+        {
+            var table = stringTableOffset + 4;
+            var dataStart = table + 4 * (nStrings + 1);
+            var start = buffer.getInt(table + 4 * index);
+            var bytes = new byte[buffer.getInt(table + 4 * (index + 1)) - start];
+            buffer.get(dataStart + start, bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            strings[index] = s;
+        }
+        return s;
+    }
+
+    /** Restores the definitions of one project, from a buffer positioned at its section. */
+    private class Reader extends DefinitionCodec.Decoder
+    {
+        private final List<SourceFile> files = new ArrayList<>();
+        private final List<DefinitionCodec.TypeName> typeNames = new ArrayList<>();
+        private final List<ScopedDefinition> defns = new ArrayList<>();
+
+        // Packages are given their locations only once their contents are in place, since those
+        // may come from several files.
+        private final List<Runnable> packageLocations = new ArrayList<>();
+
+        Reader(Project project, ByteBuffer in)
+        {
+            super(project, in);
+        }
+
+        void read() throws IOException
+        {
+            var nFiles = in.getInt();
+            for(int i = 0; i < nFiles; i++)
+            {
+                var file = new SourceFile(project, Path.of(readString()), "");
+                files.add(file);
+                project.addSourceFile(file);
+            }
+
+            var nTypeNames = in.getInt();
+            for(int i = 0; i < nTypeNames; i++)
+            {
+                var names = readNames();
+                typeNames.add(new DefinitionCodec.TypeName(names,
+                                                           readString(),
+                                                           TypeCategory.valueOf(readString()),
+                                                           readString()));
+            }
+
+            var nDefns = in.getInt();
+            for(int i = 0; i < nDefns; i++)
+            {
+                var containingIndex = in.getInt();
+                var containing = (containingIndex == NONE) ? project : defns.get(containingIndex);
+                var defn = readDefinition(containing);
+                containing.addNested(defn);
+                defns.add(defn);
+            }
+            packageLocations.forEach(Runnable::run);
+        }
+
+        @Override
+        String readString()
+        {
+            return string(in.getInt());
+        }
+
+        @Override
+        SourceFile readFile()
+        {
+            var index = in.getInt();
+            return (index == NONE) ? null : files.get(index);
+        }
+
+        @Override
+        DefinitionCodec.TypeName readTypeName()
+        {
+            return typeNames.get(in.getInt());
+        }
+
+        @Override
+        void locatePackage(ScopedDefinition pkg, SourceFile file, int start, int end)
+        {
+            if(file != null)
+            {
+                packageLocations.add(() -> pkg.setLocation(file, start, end));
+            }
+        }
+    }
+}
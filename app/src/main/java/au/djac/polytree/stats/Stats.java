@@ -0,0 +1,207 @@
+package au.djac.polytree.stats;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Collects the time taken by each phase of a run, along with various counters, for --stats.
+ *
+ * Phases may be recorded many times and from several threads at once (e.g., reading and parsing
+ * each file), in which case their times are summed. Such totals can exceed the wall-clock time
+ * of the enclosing phase.
+ *
+ * Components that record stats default to Stats.disabled(), which discards everything.
+ */
+public class Stats
+{
+    private static class Phase
+    {
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong calls = new AtomicLong();
+    }
+
+    private static class FileTime
+    {
+        private final Path path;
+        private final long nanos;
+
+        private FileTime(Path path, long nanos)
+        {
+            this.path = path;
+            this.nanos = nanos;
+        }
+    }
+
+    private static final Stats DISABLED = new Stats(false);
+
+    public static Stats disabled()
+    {
+        return DISABLED;
+    }
+
+    private final boolean enabled;
+    private final Map<String,Phase> phases = new LinkedHashMap<>();
+    private final Map<String,AtomicLong> counters = new LinkedHashMap<>();
+    private final List<FileTime> fileTimes = new ArrayList<>();
+
+    public Stats()
+    {
+        this(true);
+    }
+
+    private Stats(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /** Returns a start time, to be passed to record() at the end of a phase. */
+    public long start()
+    {
+        return System.nanoTime();
+    }
+
+    /** Adds the time since 'startNanos' (from start()) to the given phase. */
+    public void record(String phase, long startNanos)
+    {
+        if(!enabled) { return; }
+
+        var elapsed = System.nanoTime() - startNanos;
+        Phase p;
+        synchronized(phases)
+        {
+            p = phases.computeIfAbsent(phase, _k -> new Phase());
+        }
+        p.nanos.addAndGet(elapsed);
+        p.calls.incrementAndGet();
+    }
+
+    public void time(String phase, Runnable task)
+    {
+        var start = start();
+        task.run();
+        record(phase, start);
+    }
+
+    public <T> T time(String phase, Supplier<T> task)
+    {
+        var start = start();
+        var result = task.get();
+        record(phase, start);
+        return result;
+    }
+
+    public void count(String counter, long n)
+    {
+        if(!enabled) { return; }
+
+        AtomicLong c;
+        synchronized(counters)
+        {
+            c = counters.computeIfAbsent(counter, _k -> new AtomicLong());
+        }
+        c.addAndGet(n);
+    }
+
+    /** Records the time taken to parse a particular file, to find the slowest ones. */
+    public void fileParsed(Path path, long startNanos)
+    {
+        if(!enabled) { return; }
+
+        var elapsed = System.nanoTime() - startNanos;
+        synchronized(fileTimes)
+        {
+            fileTimes.add(new FileTime(path, elapsed));
+        }
+    }
+
+    private List<FileTime> slowestFiles(int n)
+    {
+        synchronized(fileTimes)
+        {
+            return fileTimes.stream()
+                            .sorted(Comparator.comparingLong((FileTime f) -> f.nanos).reversed())
+                            .limit(n)
+                            .toList();
+        }
+    }
+
+    private static <V> Map<String,V> snapshot(Map<String,V> map)
+    {
+        synchronized(map)
+        {
+            return new LinkedHashMap<>(map);
+        }
+    }
+
+    private static String millis(long nanos)
+    {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    public void printTable(PrintStream out, int nSlowest)
+    {
+        out.println();
+        out.printf("%-40s %12s %8s%n", "Phase", "Time (ms)", "Calls");
+        snapshot(phases).forEach((name, p) ->
+            out.printf("%-40s %12s %8d%n", name, millis(p.nanos.get()), p.calls.get()));
+        out.println("(Times for phases called more than once are summed across all calls and threads.)");
+
+        out.println();
+        out.printf("%-40s %12s%n", "Counter", "Value");
+        snapshot(counters).forEach((name, c) -> out.printf("%-40s %12d%n", name, c.get()));
+
+        var slowest = slowestFiles(nSlowest);
+        if(!slowest.isEmpty())
+        {
+            out.println();
+            out.printf("%12s  %s%n", "Parse (ms)", "Slowest files");
+            slowest.forEach(f -> out.printf("%12s  %s%n", millis(f.nanos), f.path));
+        }
+        out.flush();
+    }
+
+    public void printJson(PrintStream out, int nSlowest)
+    {
+        var phaseJson = new StringJoiner(",", "[", "]");
+        snapshot(phases).forEach((name, p) -> phaseJson.add(
+            "{\"name\":" + jsonString(name) + ",\"ms\":" + millis(p.nanos.get()) + ",\"calls\":" + p.calls.get() + "}"));
+
+        var counterJson = new StringJoiner(",", "{", "}");
+        snapshot(counters).forEach((name, c) -> counterJson.add(jsonString(name) + ":" + c.get()));
+
+        var fileJson = new StringJoiner(",", "[", "]");
+        slowestFiles(nSlowest).forEach(f -> fileJson.add(
+            "{\"path\":" + jsonString(f.path.toString()) + ",\"ms\":" + millis(f.nanos) + "}"));
+
+        out.println("{\"phases\":" + phaseJson + ",\"counters\":" + counterJson + ",\"slowestFiles\":" + fileJson + "}");
+        out.flush();
+    }
+
+    static String jsonString(String s)
+    {
+        var json = new StringBuilder("\"");
+        for(var ch : s.toCharArray())
+        {
+            switch(ch)
+            {
+                case '"':  json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if(ch < ' ') { json.append(String.format("\\u%04x", (int)ch)); }
+                    else         { json.append(ch); }
+            }
+        }
+        return json.append('"').toString();
+    }
+}
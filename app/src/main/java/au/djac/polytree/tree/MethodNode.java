@@ -44,6 +44,11 @@ public class MethodNode implements Comparable<MethodNode>
         this.overriddenBy.add(overriddenBy);
     }
 
+    public void removeOverriddenBy(MethodNode overriddenBy)
+    {
+        this.overriddenBy.remove(overriddenBy);
+    }
+
     public String getName()                    { return name; }
     public TypeNode getType()                  { return type; }
     public List<ParameterNode> getParameters() { return Collections.unmodifiableList(parameters); }
@@ -51,6 +56,15 @@ public class MethodNode implements Comparable<MethodNode>
     public MethodNode getOverrides()           { return overrides; }
     public Set<MethodNode> getOverriddenBy()   { return Collections.unmodifiableSet(overriddenBy); }
 
+    /**
+     * Replaces this method's signature with the equal one (if any) already in 'table'. This should
+     * only happen once all the parameters (and their types) are known.
+     */
+    void internSignature(Signature.Table table)
+    {
+        signature = table.intern(getSignature());
+    }
+
     public Signature getSignature()
     {
         if(signature == null)
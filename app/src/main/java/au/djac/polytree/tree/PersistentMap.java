@@ -0,0 +1,347 @@
+package au.djac.polytree.tree;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * An immutable hash map (a hash array mapped trie), where adding an entry copies only the path
+ * from the root to that entry, and shares everything else with the original map.
+ *
+ * TreeBuilder uses this for the tables of methods that each type inherits, so that a subtype's
+ * table costs only as much as the methods it adds, rather than a copy of everything above it.
+ * Null keys and values are not supported.
+ */
+final class PersistentMap<K,V>
+{
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentMap<?,?> EMPTY = new PersistentMap<>(null);
+
+    @SuppressWarnings("unchecked")
+    static <K,V> PersistentMap<K,V> empty()
+    {
+        return (PersistentMap<K,V>)EMPTY;
+    }
+
+    private static class Entry
+    {
+        private final int hash;
+        private final Object key;
+        private final Object value;
+
+        private Entry(int hash, Object key, Object value)
+        {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private abstract static class Node {}
+
+    /**
+     * An array of entries and child nodes, one for each set bit in 'bitmap', which covers the
+     * next BITS bits of the hash.
+     */
+    private static class BitmapNode extends Node
+    {
+        private final int bitmap;
+        private final Object[] slots;
+
+        private BitmapNode(int bitmap, Object[] slots)
+        {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int index(int bit)
+        {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private Object slot(int bit)
+        {
+            return ((bitmap & bit) == 0) ? null : slots[index(bit)];
+        }
+
+        private BitmapNode withSlot(int bit, Object slot)
+        {
+            var i = index(bit);
+            if((bitmap & bit) != 0)
+            {
+                var newSlots = slots.clone();
+                newSlots[i] = slot;
+                return new BitmapNode(bitmap, newSlots);
+            }
+            var newSlots = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, newSlots, 0, i);
+            newSlots[i] = slot;
+            System.arraycopy(slots, i, newSlots, i + 1, slots.length - i);
+            return new BitmapNode(bitmap | bit, newSlots);
+        }
+    }
+
+    /** Entries whose hashes are identical, once all the bits have been used up. */
+    private static class CollisionNode extends Node
+    {
+        private final Entry[] entries;
+
+        private CollisionNode(Entry[] entries)
+        {
+            this.entries = entries;
+        }
+    }
+
+    private final Node root;
+
+    private PersistentMap(Node root)
+    {
+        this.root = root;
+    }
+
+    private static int hash(Object key)
+    {
+        var h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift)
+    {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    public boolean isEmpty()
+    {
+        return root == null;
+    }
+
+    public V get(K key)
+    {
+        var hash = hash(key);
+        var node = root;
+        var shift = 0;
+        while(node != null)
+        {
+            if(node instanceof CollisionNode)
+            {
+                for(var entry : ((CollisionNode)node).entries)
+                {
+                    if(entry.key.equals(key)) { return value(entry); }
+                }
+                return null;
+            }
+
+            var slot = ((BitmapNode)node).slot(bit(hash, shift));
+            if(slot instanceof Entry)
+            {
+                var entry = (Entry)slot;
+                return (entry.hash == hash && entry.key.equals(key)) ? value(entry) : null;
+            }
+            node = (Node)slot;
+            shift += BITS;
+        }
+        return null;
+    }
+
+    /** Returns a map with the given entry added (or replaced). */
+    public PersistentMap<K,V> plus(K key, V value)
+    {
+        return plus(key, value, (oldValue, newValue) -> newValue);
+    }
+
+    /**
+     * Returns a map with the given entry added or, if the key is already present, with the value
+     * chosen by 'resolve' (given the old and new values).
+     */
+    public PersistentMap<K,V> plus(K key, V value, BinaryOperator<V> resolve)
+    {
+        var entry = new Entry(hash(key), key, value);
+        if(root == null)
+        {
+            return new PersistentMap<>(new BitmapNode(bit(entry.hash, 0), new Object[] {entry}));
+        }
+        var newRoot = put(root, 0, entry, resolve);
+        return (newRoot == root) ? this : new PersistentMap<>(newRoot);
+    }
+
+    /**
+     * Returns a map with all the entries of both maps, using 'resolve' (given this map's value,
+     * then the other's) for keys present in both. Subtrees that the two maps share are skipped,
+     * so merging maps derived from a common ancestor costs only as much as their differences.
+     * (Entries that they share are kept without consulting 'resolve'.)
+     */
+    public PersistentMap<K,V> plusAll(PersistentMap<K,V> other, BinaryOperator<V> resolve)
+    {
+        if(root == null) { return other; }
+        if(other.root == null) { return this; }
+        var newRoot = merge(root, other.root, 0, resolve);
+        return (newRoot == root) ? this : new PersistentMap<>(newRoot);
+    }
+
+    public void forEach(BiConsumer<? super K,? super V> action)
+    {
+        if(root != null)
+        {
+            forEachEntry(root, entry -> action.accept(key(entry), value(entry)));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(Entry entry)
+    {
+        return (K)entry.key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(Entry entry)
+    {
+        return (V)entry.value;
+    }
+
+    private Node put(Node node, int shift, Entry entry, BinaryOperator<V> resolve)
+    {
+        if(node instanceof CollisionNode)
+        {
+            var entries = ((CollisionNode)node).entries;
+            for(int i = 0; i < entries.length; i++)
+            {
+                if(entries[i].key.equals(entry.key))
+                {
+                    var resolved = resolve(entries[i], entry, resolve);
+                    if(resolved == entries[i]) { return node; }
+                    var newEntries = entries.clone();
+                    newEntries[i] = resolved;
+                    return new CollisionNode(newEntries);
+                }
+            }
+            var newEntries = Arrays.copyOf(entries, entries.length + 1);
+            newEntries[entries.length] = entry;
+            return new CollisionNode(newEntries);
+        }
+
+        var bitmapNode = (BitmapNode)node;
+        var bit = bit(entry.hash, shift);
+        var slot = bitmapNode.slot(bit);
+        Object newSlot;
+        if(slot == null)
+        {
+            newSlot = entry;
+        }
+        else if(slot instanceof Entry)
+        {
+            var existing = (Entry)slot;
+            newSlot = (existing.hash == entry.hash && existing.key.equals(entry.key))
+                ? resolve(existing, entry, resolve)
+                : pair(shift + BITS, existing, entry);
+        }
+        else
+        {
+            newSlot = put((Node)slot, shift + BITS, entry, resolve);
+        }
+        return (newSlot == slot) ? node : bitmapNode.withSlot(bit, newSlot);
+    }
+
+    private Entry resolve(Entry existing, Entry entry, BinaryOperator<V> resolve)
+    {
+        if(existing == entry) { return existing; }
+
+        var value = resolve.apply(value(existing), value(entry));
+        return (value == existing.value) ? existing
+             : (value == entry.value)    ? entry
+             : new Entry(existing.hash, existing.key, value);
+    }
+
+    private static Node pair(int shift, Entry entry1, Entry entry2)
+    {
+        if(shift >= Integer.SIZE)
+        {
+            return new CollisionNode(new Entry[] {entry1, entry2});
+        }
+
+        var bit1 = bit(entry1.hash, shift);
+        var bit2 = bit(entry2.hash, shift);
+        if(bit1 == bit2)
+        {
+            return new BitmapNode(bit1, new Object[] {pair(shift + BITS, entry1, entry2)});
+        }
+        return new BitmapNode(bit1 | bit2, (Integer.compareUnsigned(bit1, bit2) < 0)
+                                           ? new Object[] {entry1, entry2}
+                                           : new Object[] {entry2, entry1});
+    }
+
+    private Node merge(Node node, Node other, int shift, BinaryOperator<V> resolve)
+    {
+        if(node == other) { return node; }
+
+        if(node instanceof BitmapNode && other instanceof BitmapNode)
+        {
+            var result = (BitmapNode)node;
+            var otherNode = (BitmapNode)other;
+            for(int bits = otherNode.bitmap; bits != 0; bits &= bits - 1)
+            {
+                var bit = Integer.lowestOneBit(bits);
+                var slot = result.slot(bit);
+                var otherSlot = otherNode.slot(bit);
+                if(slot == otherSlot)
+                {
+                    continue;
+                }
+
+                if(slot == null)
+                {
+                    // Nothing here yet, so we can adopt the other map's entry or subtree as is.
+                    result = result.withSlot(bit, otherSlot);
+                }
+                else if(slot instanceof Node && otherSlot instanceof Node)
+                {
+                    var merged = merge((Node)slot, (Node)otherSlot, shift + BITS, resolve);
+                    if(merged != slot)
+                    {
+                        result = result.withSlot(bit, merged);
+                    }
+                }
+                else if(otherSlot instanceof Entry)
+                {
+                    result = (BitmapNode)put(result, shift, (Entry)otherSlot, resolve);
+                }
+                else
+                {
+                    var accumulator = new Node[] {result};
+                    forEachEntry((Node)otherSlot,
+                                 entry -> accumulator[0] = put(accumulator[0], shift, entry, resolve));
+                    result = (BitmapNode)accumulator[0];
+                }
+            }
+            return result;
+        }
+
+        var accumulator = new Node[] {node};
+        forEachEntry(other, entry -> accumulator[0] = put(accumulator[0], shift, entry, resolve));
+        return accumulator[0];
+    }
+
+    private static void forEachEntry(Node node, Consumer<Entry> action)
+    {
+        if(node instanceof CollisionNode)
+        {
+            for(var entry : ((CollisionNode)node).entries)
+            {
+                action.accept(entry);
+            }
+            return;
+        }
+
+        for(var slot : ((BitmapNode)node).slots)
+        {
+            if(slot instanceof Entry)
+            {
+                action.accept((Entry)slot);
+            }
+            else
+            {
+                forEachEntry((Node)slot, action);
+            }
+        }
+    }
+}
@@ -4,13 +4,60 @@ import java.util.*;
 
 public class Signature
 {
+    /**
+     * Canonicalises signatures, so that equal signatures are represented by the same instance, and
+     * comparing them (in the override analysis) is mostly a matter of comparing references.
+     *
+     * Each signature is counted once per intern() call, and dropped when as many release() calls
+     * have been made, so that a long-lived table doesn't keep removed types (the parameter types)
+     * alive.
+     */
+    public static class Table
+    {
+        private static class Entry
+        {
+            private final Signature signature;
+            private int refs = 0;
+
+            private Entry(Signature signature)
+            {
+                this.signature = signature;
+            }
+        }
+
+        private final Map<Signature,Entry> signatures = new HashMap<>();
+
+        public Signature intern(Signature signature)
+        {
+            var entry = signatures.computeIfAbsent(signature, Entry::new);
+            entry.refs++;
+            return entry.signature;
+        }
+
+        public void release(Signature signature)
+        {
+            var entry = signatures.get(signature);
+            if(entry != null && --entry.refs == 0)
+            {
+                signatures.remove(signature);
+            }
+        }
+
+        public int size()
+        {
+            return signatures.size();
+        }
+    }
+
     private final String name;
     private final List<TypeNode> parameters;
+    private final int hash;
 
     public Signature(String name, List<TypeNode> parameters)
     {
         this.name = name;
         this.parameters = parameters;
+        this.hash = name.hashCode() * 31 + parameters.hashCode();
     }
 
     public String getName() { return name; }
@@ -19,15 +66,16 @@ public class Signature
     @Override
     public boolean equals(Object other)
     {
+        if(this == other) { return true; }
         if(!(other instanceof Signature)) { return false; }
 
         var otherSig = (Signature)other;
-        return name.equals(otherSig.name) && Objects.equals(parameters, otherSig.parameters);
+        return hash == otherSig.hash && name.equals(otherSig.name) && parameters.equals(otherSig.parameters);
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(name, parameters);
+        return hash;
     }
 }
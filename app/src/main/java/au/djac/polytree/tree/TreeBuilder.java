@@ -1,126 +1,670 @@
 package au.djac.polytree.tree;
 import au.djac.polytree.definitions.*;
+import au.djac.polytree.stats.*;
 
 import java.util.*;
 
+/**
+ * Builds the graph of TypeNodes (with their MethodNodes and ParameterNodes) from a set of type
+ * definitions.
+ *
+ * A TreeBuilder can be kept across changes to a project (e.g., in watch mode). Definitions can be
+ * added and removed (or update() given the new set), and build() called again, which reconnects
+ * only the affected types: those added, those referring (via their supertypes or parameter types)
+ * to a removed type, and those referring to a name that an added type might now match. Override
+ * links are then recomputed for these types and their subtypes.
+ *
+ * Malformed code can make types inherit from themselves (e.g., 'class A extends B' and 'class B
+ * extends A'). Such cycles are found after linking (see getCycles()), and all traversals here
+ * tolerate them.
+ */
 public class TreeBuilder
 {
     private Map<TypeDefinition,TypeNode> typeMap = new HashMap<>();
     private Map<String,TypeNode> externalTypeMap = new HashMap<>();
+    private Signature.Table signatures = new Signature.Table();
+    private Stats stats = Stats.disabled();
+
+    // Changes not yet applied by build().
+    private Set<TypeNode> dirty = new LinkedHashSet<>();
+    private Map<TypeDefinition,TypeNode> removed = new LinkedHashMap<>();
+
+    // The project types that refer to each type node, and to each name (by its last component).
+    private Map<TypeNode,Set<TypeNode>> referrers = new HashMap<>();
+    private Map<String,Set<TypeNode>> nameReferrers = new HashMap<>();
+
+    // Per-type results of the override analysis, kept for subsequent builds.
+    private Map<TypeNode,PersistentMap<Signature,MethodNode>> tables = new HashMap<>();
+    private Map<TypeNode,List<TypeNode>> linearisations = new HashMap<>();
+    private Map<TypeNode,Integer> depths = new HashMap<>();
+
+    // Groups of types that (directly or indirectly) inherit from themselves.
+    private List<List<TypeNode>> cycles = new ArrayList<>();
 
     public TreeBuilder() {}
 
+    public TreeBuilder stats(Stats stats)
+    {
+        this.stats = stats;
+        return this;
+    }
+
     public void addDefinition(TypeDefinition defn)
     {
         if(typeMap.containsKey(defn))
         {
             throw new IllegalArgumentException("Definition already added");
         }
-        typeMap.put(defn, new ProjectTypeNode(defn));
+
+        // If the definition was removed since the last build, just reconnect its existing node.
+        var node = removed.remove(defn);
+        if(node == null)
+        {
+            node = new ProjectTypeNode(defn);
+        }
+        typeMap.put(defn, node);
+        dirty.add(node);
+        dirty.addAll(nameReferrers.getOrDefault(defn.getName(), Set.of()));
     }
 
+    public void removeDefinition(TypeDefinition defn)
+    {
+        var node = typeMap.remove(defn);
+        if(node == null)
+        {
+            throw new IllegalArgumentException("Definition not added");
+        }
+        dirty.remove(node);
+        removed.put(defn, node);
+    }
+
+    /**
+     * Adds and removes definitions as needed, so that the next build() reflects exactly the given
+     * set.
+     */
+    public void update(Collection<TypeDefinition> definitions)
+    {
+        var current = new HashSet<>(definitions);
+        for(var defn : new ArrayList<>(typeMap.keySet()))
+        {
+            if(!current.contains(defn))
+            {
+                removeDefinition(defn);
+            }
+        }
+        for(var defn : definitions)
+        {
+            if(!typeMap.containsKey(defn))
+            {
+                addDefinition(defn);
+            }
+        }
+    }
+
+    /**
+     * Applies all definitions added or removed since the last call, and returns all the type
+     * nodes.
+     */
     public Collection<TypeNode> build()
     {
-        // Connect type nodes by inheritance.
-        for(var node : new ArrayList<>(typeMap.values()))
+        // Detach removed types, and mark the types that referred to them for reconnection.
+        var start = stats.start();
+        var orphans = new HashSet<TypeNode>();
+        var detached = new HashSet<TypeNode>(removed.values());
+        for(var node : removed.values())
+        {
+            disconnect(node, orphans);
+            dirty.addAll(referrers.getOrDefault(node, Set.of()));
+            referrers.remove(node);
+            tables.remove(node);
+            linearisations.remove(node);
+            depths.remove(node);
+        }
+        dirty.removeAll(removed.values());
+        removed.clear();
+
+        // (Re)connect type nodes by inheritance, and create their methods and parameters.
+        // Connecting one type can create nodes for others (definitions that weren't added
+        // explicitly), which are then connected in turn.
+        var reconnected = new LinkedHashSet<TypeNode>();
+        while(!dirty.isEmpty())
+        {
+            var iterator = dirty.iterator();
+            var node = iterator.next();
+            iterator.remove();
+            disconnect(node, orphans);
+            connect(node);
+            reconnected.add(node);
+        }
+
+        // Discard external types that nothing refers to any more.
+        for(var orphan : orphans)
+        {
+            if(referrers.getOrDefault(orphan, Set.of()).isEmpty())
+            {
+                referrers.remove(orphan);
+                externalTypeMap.remove(orphan.getName(), orphan);
+            }
+        }
+
+        stats.record("TreeBuilder: types and methods", start);
+        stats.count("types (re)connected", reconnected.size());
+        stats.count("distinct method signatures", signatures.size());
+
+        // Find method overrides
+        start = stats.start();
+        var affected = withDescendants(reconnected);
+        for(var type : affected)
+        {
+            type.getMethods().forEach(TreeBuilder::unlinkOverrides);
+        }
+        findMethodOverrides(affected);
+        stats.record("TreeBuilder: overrides", start);
+        stats.count("types with overrides (re)computed", affected.size());
+
+        // Any new cycle must pass through a reconnected type, and hence lie entirely within the
+        // affected set. Cycles found previously stand, unless they touch that set (or a removed
+        // type).
+        start = stats.start();
+        cycles.removeIf(cycle -> cycle.stream().anyMatch(
+            t -> affected.contains(t) || detached.contains(t)));
+        cycles.addAll(findCycles(affected));
+        cycles.sort(Comparator.comparing(cycle -> cycle.get(0)));
+        stats.record("TreeBuilder: cycles", start);
+        stats.count("inheritance cycles", cycles.size());
+
+        var allTypeNodes = new ArrayList<>(typeMap.values());
+        allTypeNodes.addAll(externalTypeMap.values());
+        return allTypeNodes;
+    }
+
+    /**
+     * Returns the groups of types (strongly-connected components) that inherit from themselves,
+     * as of the last build. Each group is sorted by name, and the groups by their first type.
+     */
+    public List<List<TypeNode>> getCycles()
+    {
+        return Collections.unmodifiableList(cycles);
+    }
+
+    private void connect(TypeNode node)
+    {
+        node.getDefinition().ifPresent(defn ->
         {
-            node.getDefinition()
-                .stream()
-                .flatMap(TypeDefinition::getSuperTypes)
-                .map(this::getTypeNode)
+            defn.getSuperTypes()
+                .map(name -> getTypeNode(name, node))
                 .forEach(superNode ->
                 {
                     node.addParent(superNode);
                     superNode.addChild(node);
                 });
-        }
 
-        // Connect methods and parameters. (Start a new loop here, because we want all the types
-        // added to typeMap in the above loop (if any) to be present.)
-        for(var node : new ArrayList<>(typeMap.values()))
-        {
-            node.getDefinition().ifPresent(defn ->
+            defn.getMethods()
+                .filter(d -> !d.isConstructor())
+                .forEach(methodDefn ->
             {
-                defn.getMethods()
-                    .filter(d -> !d.isConstructor())
-                    .forEach(methodDefn ->
+                var method = new MethodNode(methodDefn, node);
+                node.addMethod(method);
+                methodDefn.getParameters()
+                          .filter(d -> !d.isImplicit())
+                          .forEach(parameterDefn ->
                 {
-                    var method = new MethodNode(methodDefn, node);
-                    node.addMethod(method);
-                    methodDefn.getParameters()
-                              .filter(d -> !d.isImplicit())
-                              .forEach(parameterDefn ->
-                    {
-                        var paramNode = new ParameterNode(parameterDefn, method);
-                        parameterDefn.getType().ifPresent(
-                            name -> paramNode.setType(getTypeNode(name)));
-                        method.addParameter(paramNode);
-                    });
+                    var paramNode = new ParameterNode(parameterDefn, method);
+                    parameterDefn.getType().ifPresent(
+                        name -> paramNode.setType(getTypeNode(name, node)));
+                    method.addParameter(paramNode);
                 });
+                method.internSignature(signatures);
             });
+        });
+    }
+
+    /**
+     * Undoes connect(), noting any external types that lose a referrer (and so may no longer be
+     * needed).
+     */
+    private void disconnect(TypeNode node, Set<TypeNode> orphans)
+    {
+        var names = new ArrayList<QualifiedTypeName>();
+        node.getDefinition().ifPresent(defn -> defn.getSuperTypes().forEach(names::add));
+
+        for(var parent : node.getParents())
+        {
+            parent.removeChild(node);
+            removeReferrer(parent, node, orphans);
         }
+        node.clearParents();
 
-        // Find method overrides
-        for(var type : typeMap.values())
+        for(var method : node.getMethods())
         {
-            if(type.getParents().size() == 0 && type.getChildren().size() > 0)
+            unlinkOverrides(method);
+            signatures.release(method.getSignature());
+            for(var param : method.getParameters())
             {
-                findMethodOverrides(type, Map.of());
+                param.getType().ifPresent(type -> removeReferrer(type, node, orphans));
+                param.getDefinition().getType().ifPresent(names::add);
             }
         }
+        node.clearMethods();
 
-        var allTypeNodes = new ArrayList<>(typeMap.values());
-        allTypeNodes.addAll(externalTypeMap.values());
+        for(var name : names)
+        {
+            var key = lastName(name);
+            var nodes = nameReferrers.get(key);
+            if(nodes != null)
+            {
+                nodes.remove(node);
+                if(nodes.isEmpty())
+                {
+                    nameReferrers.remove(key);
+                }
+            }
+        }
+    }
 
-        return allTypeNodes;
+    private void removeReferrer(TypeNode type, TypeNode referrer, Set<TypeNode> orphans)
+    {
+        var nodes = referrers.get(type);
+        if(nodes != null)
+        {
+            nodes.remove(referrer);
+        }
+        if(type instanceof ExternalTypeNode)
+        {
+            orphans.add(type);
+        }
+    }
+
+    private static void unlinkOverrides(MethodNode method)
+    {
+        var superMethod = method.getOverrides();
+        if(superMethod != null)
+        {
+            superMethod.removeOverriddenBy(method);
+            method.setOverrides(null);
+        }
+    }
+
+    private static String lastName(QualifiedTypeName name)
+    {
+        var names = name.getNames();
+        return names.isEmpty() ? name.toString() : names.get(names.size() - 1);
+    }
+
+    private Set<TypeNode> withDescendants(Collection<TypeNode> types)
+    {
+        var result = new HashSet<TypeNode>(types);
+        var queue = new ArrayDeque<TypeNode>(types);
+        while(!queue.isEmpty())
+        {
+            for(var child : queue.remove().getChildren())
+            {
+                if(result.add(child))
+                {
+                    queue.add(child);
+                }
+            }
+        }
+        return result;
     }
 
-    private TypeNode getTypeNode(QualifiedTypeName name)
+    private TypeNode getTypeNode(QualifiedTypeName name, TypeNode referrer)
     {
-        return name
-            .resolve(TypeDefinition.class)
-            .findFirst()
-            .map(superDefn -> typeMap.computeIfAbsent(superDefn, ProjectTypeNode::new))
+        var node = name
+            .resolve()
+            .map(superDefn -> typeMap.computeIfAbsent(superDefn, defn ->
+            {
+                var newNode = new ProjectTypeNode(defn);
+                dirty.add(newNode);
+                return newNode;
+            }))
             .orElseGet(() ->
-                externalTypeMap.computeIfAbsent(
+            {
+                stats.count("unresolved names", 1);
+                return externalTypeMap.computeIfAbsent(
                     name.toString(),
-                    nameStr -> new ExternalTypeNode(nameStr,
+                    nameStr ->
+                    {
+                        stats.count("ExternalTypeNodes", 1);
+                        return new ExternalTypeNode(nameStr,
                                                     name.getCategoryHint(),
-                                                    name.getConstructHint())
-                )
-            );
+                                                    name.getConstructHint());
+                    }
+                );
+            });
+
+        referrers.computeIfAbsent(node, _k -> new HashSet<>()).add(referrer);
+        nameReferrers.computeIfAbsent(lastName(name), _k -> new HashSet<>()).add(referrer);
+        return node;
     }
 
-    private static void findMethodOverrides(TypeNode type, Map<Signature,MethodNode> superMethods)
+    /**
+     * Links each method to the method it overrides (if any).
+     *
+     * Each type is visited once, after all its supertypes, and given a table of the methods it
+     * offers to its own subtypes: those it inherits, overlaid with its own. The tables are
+     * persistent maps, so each shares most of its structure with its parents' tables. A type with
+     * a single parent starts from its parent's table, while one with several parents merges
+     * theirs. Where parents offer different methods with the same signature, the winner is the one
+     * from the type that comes first in the C3 linearisation (Python's MRO), or, if the hierarchy
+     * has no such linearisation, from the deepest type (the furthest from any root).
+     *
+     * Only the given types are visited, and their methods must not already have override links.
+     * The tables of any other types come from previous builds.
+     */
+    private void findMethodOverrides(Set<TypeNode> types)
     {
-        // FIXME: does not account for multiple inheritance.
+        var order = new ArrayList<TypeNode>(types.size());
+        var nAcyclic = topologicalOrder(types, order);
 
-        var newSuperMethods = new HashMap<>(superMethods);
+        // Forget the previous tables, so that a parent visited later (in a cycle) contributes
+        // nothing, rather than out-of-date methods.
+        for(var type : types)
+        {
+            tables.remove(type);
+            linearisations.remove(type);
+        }
 
-        for(var method : type.getMethods())
+        var nVisited = 0;
+        for(var type : order)
         {
-            var defn = method.getDefinition();
-            if(!defn.hasAnyModifier(Modifier.PRIVATE, Modifier.STATIC))
+            nVisited++;
+            var parents = type.getParents();
+            depths.put(type,
+                       1 + parents.stream().mapToInt(p -> depths.getOrDefault(p, 0)).max().orElse(-1));
+
+            PersistentMap<Signature,MethodNode> superMethods;
+            if(parents.size() == 1)
+            {
+                superMethods = tables.getOrDefault(parents.get(0), PersistentMap.empty());
+            }
+            else if(parents.size() > 1)
+            {
+                // Types in cycles (after the acyclic prefix) can't be linearised.
+                var linearisation = (nVisited <= nAcyclic)
+                    ? linearise(type, linearisations)
+                    : Optional.<List<TypeNode>>empty();
+                linearisation.ifPresent(l -> linearisations.put(type, l));
+                superMethods = mergeTables(parents, tables, precedence(linearisation, depths));
+            }
+            else
             {
-                var signature = method.getSignature();
-                var superMethod = superMethods.get(signature);
-                if(superMethod != null)
+                superMethods = PersistentMap.empty();
+            }
+
+            var table = superMethods;
+            for(var method : type.getMethods())
+            {
+                var defn = method.getDefinition();
+                if(!defn.hasAnyModifier(Modifier.PRIVATE, Modifier.STATIC))
                 {
-                    method.setOverrides(superMethod);
-                    superMethod.addOverriddenBy(method);
+                    var signature = method.getSignature();
+                    var superMethod = superMethods.get(signature);
+                    if(superMethod != null)
+                    {
+                        method.setOverrides(superMethod);
+                        superMethod.addOverriddenBy(method);
+                    }
+
+                    if(!defn.hasModifier(Modifier.FINAL))
+                    {
+                        table = table.plus(signature, method);
+                    }
                 }
+            }
+            tables.put(type, table);
+        }
+    }
+
+    /**
+     * Fills 'order' with all the given types, parents before children (Kahn's algorithm, counting
+     * only parents within the set), and returns the number of types so ordered. Any types in (or
+     * below) inheritance cycles follow these, in their original order.
+     */
+    private static int topologicalOrder(Set<TypeNode> types, List<TypeNode> order)
+    {
+        var nParentsLeft = new HashMap<TypeNode,Integer>();
+        var ready = new ArrayDeque<TypeNode>();
+        for(var type : types)
+        {
+            var nParents = (int)type.getParents().stream().filter(types::contains).count();
+            if(nParents == 0)
+            {
+                ready.add(type);
+            }
+            else
+            {
+                nParentsLeft.put(type, nParents);
+            }
+        }
 
-                if(!defn.hasModifier(Modifier.FINAL))
+        while(!ready.isEmpty())
+        {
+            var type = ready.remove();
+            order.add(type);
+            for(var child : type.getChildren())
+            {
+                var n = nParentsLeft.get(child);
+                if(n == null)
+                {
+                    continue; // Not in the set (or already ordered).
+                }
+                if(n == 1)
                 {
-                    newSuperMethods.put(signature, method);
+                    nParentsLeft.remove(child);
+                    ready.add(child);
+                }
+                else
+                {
+                    nParentsLeft.put(child, n - 1);
                 }
             }
         }
 
-        for(var child : type.getChildren())
+        var nAcyclic = order.size();
+        for(var type : types)
         {
-            findMethodOverrides(child, newSuperMethods);
+            if(nParentsLeft.containsKey(type))
+            {
+                order.add(type);
+            }
         }
+        return nAcyclic;
     }
 
+    /**
+     * Finds the strongly-connected components of the inheritance graph, among the given types,
+     * that form cycles: those with more than one type, or a type that is its own parent. This is
+     * Tarjan's algorithm, with an explicit stack, so that deep hierarchies don't overflow the
+     * call stack.
+     */
+    private static List<List<TypeNode>> findCycles(Set<TypeNode> types)
+    {
+        var cycles = new ArrayList<List<TypeNode>>();
+        var index = new HashMap<TypeNode,Integer>();
+        var lowLink = new HashMap<TypeNode,Integer>();
+        var component = new ArrayDeque<TypeNode>();
+        var onComponentStack = new HashSet<TypeNode>();
+
+        // The types being visited, and how far through its children each has got.
+        var path = new ArrayDeque<TypeNode>();
+        var nextChild = new ArrayDeque<Integer>();
+
+        for(var root : types)
+        {
+            if(index.containsKey(root)) { continue; }
+
+            index.put(root, index.size());
+            lowLink.put(root, index.get(root));
+            component.push(root);
+            onComponentStack.add(root);
+            path.push(root);
+            nextChild.push(0);
+
+            while(!path.isEmpty())
+            {
+                var type = path.peek();
+                var children = type.getChildren();
+                var i = nextChild.pop();
+                if(i < children.size())
+                {
+                    nextChild.push(i + 1);
+                    var child = children.get(i);
+                    if(!types.contains(child)) { continue; }
+
+                    if(!index.containsKey(child))
+                    {
+                        index.put(child, index.size());
+                        lowLink.put(child, index.get(child));
+                        component.push(child);
+                        onComponentStack.add(child);
+                        path.push(child);
+                        nextChild.push(0);
+                    }
+                    else if(onComponentStack.contains(child))
+                    {
+                        lowLink.put(type, Math.min(lowLink.get(type), index.get(child)));
+                    }
+                    continue;
+                }
+
+                // All children done; 'type' is finished.
+                path.pop();
+                if(!path.isEmpty())
+                {
+                    var parent = path.peek();
+                    lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(type)));
+                }
+
+                if(lowLink.get(type).equals(index.get(type)))
+                {
+                    var members = new ArrayList<TypeNode>();
+                    TypeNode member;
+                    do
+                    {
+                        member = component.pop();
+                        onComponentStack.remove(member);
+                        members.add(member);
+                    }
+                    while(member != type);
+
+                    if(members.size() > 1 || type.getParents().contains(type))
+                    {
+                        members.sort(null);
+                        cycles.add(members);
+                    }
+                }
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * Computes the C3 linearisation of a type with several parents, given the linearisations
+     * already computed for its multiply-inheriting ancestors.
+     */
+    private static Optional<List<TypeNode>> linearise(TypeNode type,
+                                                      Map<TypeNode,List<TypeNode>> linearisations)
+    {
+        var sequences = new ArrayList<LinkedList<TypeNode>>();
+        for(var parent : type.getParents())
+        {
+            // Follow the chain of single inheritance, until we reach a root, or a type that has
+            // already been linearised (or, failing either, a cycle).
+            var sequence = new LinkedList<TypeNode>();
+            var seen = new HashSet<TypeNode>();
+            var ancestor = parent;
+            while(ancestor.getParents().size() == 1)
+            {
+                if(!seen.add(ancestor))
+                {
+                    return Optional.empty();
+                }
+                sequence.add(ancestor);
+                ancestor = ancestor.getParents().get(0);
+            }
+            if(ancestor.getParents().isEmpty())
+            {
+                sequence.add(ancestor);
+            }
+            else
+            {
+                var ancestorLinearisation = linearisations.get(ancestor);
+                if(ancestorLinearisation == null)
+                {
+                    return Optional.empty();
+                }
+                sequence.addAll(ancestorLinearisation);
+            }
+            sequences.add(sequence);
+        }
+        sequences.add(new LinkedList<>(type.getParents()));
+
+        var result = new ArrayList<TypeNode>();
+        result.add(type);
+        while(true)
+        {
+            sequences.removeIf(List::isEmpty);
+            if(sequences.isEmpty())
+            {
+                return Optional.of(result);
+            }
+
+            // Take the first head that doesn't appear in the tail of any sequence.
+            var next = sequences.stream()
+                .map(LinkedList::getFirst)
+                .filter(head -> sequences.stream().noneMatch(
+                    seq -> seq.lastIndexOf(head) > 0))
+                .findFirst();
+
+            if(next.isEmpty())
+            {
+                return Optional.empty(); // Inconsistent hierarchy
+            }
+
+            var head = next.get();
+            result.add(head);
+            for(var seq : sequences)
+            {
+                if(seq.getFirst() == head)
+                {
+                    seq.removeFirst();
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders types so that those whose methods take precedence come first: by position in the
+     * linearisation, if there is one, or else the deepest first.
+     */
+    private static Comparator<TypeNode> precedence(Optional<List<TypeNode>> linearisation,
+                                                   Map<TypeNode,Integer> depths)
+    {
+        if(linearisation.isPresent())
+        {
+            var index = new HashMap<TypeNode,Integer>();
+            for(var type : linearisation.get())
+            {
+                index.putIfAbsent(type, index.size());
+            }
+            return Comparator.comparingInt(t -> index.getOrDefault(t, Integer.MAX_VALUE));
+        }
+        return Comparator.comparingInt((TypeNode t) -> depths.getOrDefault(t, 0)).reversed();
+    }
+
+    private static PersistentMap<Signature,MethodNode> mergeTables(
+        List<TypeNode> parents,
+        Map<TypeNode,PersistentMap<Signature,MethodNode>> tables,
+        Comparator<TypeNode> precedence)
+    {
+        var merged = PersistentMap.<Signature,MethodNode>empty();
+        for(var parent : parents)
+        {
+            merged = merged.plusAll(
+                tables.getOrDefault(parent, PersistentMap.empty()),
+                (m1, m2) -> (precedence.compare(m1.getType(), m2.getType()) <= 0) ? m1 : m2);
+        }
+        return merged;
+    }
 }
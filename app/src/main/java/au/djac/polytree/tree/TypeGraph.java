@@ -0,0 +1,260 @@
+package au.djac.polytree.tree;
+
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * A compact, read-only copy of the inheritance graph formed by a set of TypeNodes, for answering
+ * ancestor/descendant queries on very large projects.
+ *
+ * Each type gets an int ID, and the parent and child edges are stored in compressed sparse row
+ * form: the parents of type 'i' are parents[parentStart[i]] to parents[parentStart[i + 1] - 1],
+ * and likewise for children.
+ *
+ * IDs are assigned so that types with subtypes ("supertypes") come first, and within those,
+ * parents come before children (except within or below inheritance cycles). The transitive
+ * closure (the ancestors of each type) is stored as a BitSet for each supertype only, and each of
+ * those only needs bits for the supertypes before it. Leaf types, generally the majority, are
+ * never anyone's ancestor, and their own ancestors are found by combining their parents' sets.
+ */
+public class TypeGraph
+{
+    private final TypeNode[] types;
+    private final Map<TypeNode,Integer> ids;
+    private final int nSuperTypes;
+    private final int[] parentStart;
+    private final int[] parents;
+    private final int[] childStart;
+    private final int[] children;
+    private BitSet[] closure = null;
+
+    public TypeGraph(Collection<TypeNode> typeNodes)
+    {
+        var order = order(typeNodes);
+        var n = order.size();
+        types = order.toArray(new TypeNode[n]);
+        ids = new HashMap<>(n * 2);
+        for(int i = 0; i < n; i++)
+        {
+            ids.put(types[i], i);
+        }
+        nSuperTypes = (int)order.stream().filter(t -> !t.getChildren().isEmpty()).count();
+
+        parentStart = new int[n + 1];
+        childStart = new int[n + 1];
+        for(int i = 0; i < n; i++)
+        {
+            parentStart[i + 1] = parentStart[i] + countKnown(types[i].getParents());
+            childStart[i + 1] = childStart[i] + countKnown(types[i].getChildren());
+        }
+
+        parents = new int[parentStart[n]];
+        children = new int[childStart[n]];
+        for(int i = 0; i < n; i++)
+        {
+            fill(types[i].getParents(), parents, parentStart[i]);
+            fill(types[i].getChildren(), children, childStart[i]);
+        }
+    }
+
+    /**
+     * Orders the types for ID assignment: supertypes first, in topological order (Kahn's
+     * algorithm), followed by any in cycles, followed by leaf types.
+     */
+    private static List<TypeNode> order(Collection<TypeNode> typeNodes)
+    {
+        var known = new HashSet<>(typeNodes);
+        var nParentsLeft = new HashMap<TypeNode,Integer>();
+        var ready = new ArrayDeque<TypeNode>();
+        for(var type : typeNodes)
+        {
+            var nParents = (int)type.getParents().stream().filter(known::contains).count();
+            if(nParents == 0)
+            {
+                ready.add(type);
+            }
+            else
+            {
+                nParentsLeft.put(type, nParents);
+            }
+        }
+
+        var superTypes = new ArrayList<TypeNode>();
+        var leaves = new ArrayList<TypeNode>();
+        while(!ready.isEmpty())
+        {
+            var type = ready.remove();
+            (type.getChildren().isEmpty() ? leaves : superTypes).add(type);
+            for(var child : type.getChildren())
+            {
+                var n = nParentsLeft.get(child);
+                if(n == null) { continue; }
+                if(n == 1)
+                {
+                    nParentsLeft.remove(child);
+                    ready.add(child);
+                }
+                else
+                {
+                    nParentsLeft.put(child, n - 1);
+                }
+            }
+        }
+
+        // Anything left is in (or below) a cycle.
+        for(var type : typeNodes)
+        {
+            if(nParentsLeft.containsKey(type))
+            {
+                (type.getChildren().isEmpty() ? leaves : superTypes).add(type);
+            }
+        }
+
+        superTypes.addAll(leaves);
+        return superTypes;
+    }
+
+    private int countKnown(List<TypeNode> nodes)
+    {
+        return (int)nodes.stream().filter(ids::containsKey).count();
+    }
+
+    private void fill(List<TypeNode> nodes, int[] array, int start)
+    {
+        for(var node : nodes)
+        {
+            var id = ids.get(node);
+            if(id != null)
+            {
+                array[start++] = id;
+            }
+        }
+    }
+
+    public int size()                 { return types.length; }
+    public int getSuperTypeCount()    { return nSuperTypes; }
+    public TypeNode getType(int id)   { return types[id]; }
+
+    public OptionalInt getId(TypeNode type)
+    {
+        var id = ids.get(type);
+        return (id == null) ? OptionalInt.empty() : OptionalInt.of(id);
+    }
+
+    public IntStream getParents(int id)
+    {
+        return Arrays.stream(parents, parentStart[id], parentStart[id + 1]);
+    }
+
+    public IntStream getChildren(int id)
+    {
+        return Arrays.stream(children, childStart[id], childStart[id + 1]);
+    }
+
+    /** Returns the IDs of all (direct and indirect) supertypes of the given type. */
+    public BitSet getAncestors(int id)
+    {
+        var closure = getClosure();
+        if(id < nSuperTypes)
+        {
+            return (BitSet)closure[id].clone();
+        }
+
+        var ancestors = new BitSet(nSuperTypes);
+        for(int i = parentStart[id]; i < parentStart[id + 1]; i++)
+        {
+            ancestors.set(parents[i]);
+            ancestors.or(closure[parents[i]]);
+        }
+        return ancestors;
+    }
+
+    /** Returns the IDs of all (direct and indirect) subtypes of the given type. */
+    public BitSet getDescendants(int id)
+    {
+        return reachable(id, childStart, children);
+    }
+
+    /** Returns true if 'ancestor' is a (direct or indirect) supertype of 'id'. */
+    public boolean isAncestor(int ancestor, int id)
+    {
+        if(ancestor >= nSuperTypes)
+        {
+            return false; // Leaf types have no subtypes.
+        }
+
+        var closure = getClosure();
+        if(id < nSuperTypes)
+        {
+            return closure[id].get(ancestor);
+        }
+        for(int i = parentStart[id]; i < parentStart[id + 1]; i++)
+        {
+            if(parents[i] == ancestor || closure[parents[i]].get(ancestor))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the ancestors of each supertype (on first use). Each type's set is the union of its
+     * parents' sets, plus the parents themselves, except in inheritance cycles, where a parent may
+     * not have been done yet, and so we traverse the graph instead.
+     */
+    private BitSet[] getClosure()
+    {
+        if(closure == null)
+        {
+            var newClosure = new BitSet[nSuperTypes];
+            for(int id = 0; id < nSuperTypes; id++)
+            {
+                var ancestors = new BitSet(id);
+                for(int i = parentStart[id]; i < parentStart[id + 1] && ancestors != null; i++)
+                {
+                    var parent = parents[i];
+                    if(parent < id)
+                    {
+                        ancestors.set(parent);
+                        ancestors.or(newClosure[parent]);
+                    }
+                    else
+                    {
+                        ancestors = null;
+                    }
+                }
+                newClosure[id] = (ancestors != null) ? ancestors : reachable(id, parentStart, parents);
+            }
+            closure = newClosure;
+        }
+        return closure;
+    }
+
+    /** Iterative depth-first search along one set of edges, excluding the start unless in a cycle. */
+    private BitSet reachable(int id, int[] start, int[] edges)
+    {
+        var visited = new BitSet();
+        var stack = new int[16];
+        var top = 0;
+        stack[top++] = id;
+        while(top > 0)
+        {
+            var current = stack[--top];
+            for(int i = start[current]; i < start[current + 1]; i++)
+            {
+                var next = edges[i];
+                if(!visited.get(next))
+                {
+                    visited.set(next);
+                    if(top == stack.length)
+                    {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = next;
+                }
+            }
+        }
+        return visited;
+    }
+}
@@ -24,6 +24,21 @@ public abstract class TypeNode implements Comparable<TypeNode>
         methods.add(method);
     }
 
+    public void removeChild(TypeNode child)
+    {
+        children.remove(child);
+    }
+
+    public void clearParents()
+    {
+        parents.clear();
+    }
+
+    public void clearMethods()
+    {
+        methods.clear();
+    }
+
     public abstract Optional<SourceFile> getSourceFile();
     public abstract String getName();
     public abstract Optional<TypeDefinition> getDefinition();
@@ -0,0 +1,75 @@
+package au.djac.polytree.view;
+import au.djac.polytree.definitions.*;
+
+/**
+ * Writes the inheritance graph in Graphviz DOT format. Classes are boxes, interfaces are ellipses,
+ * and external types (not defined in the project) are dashed and grey.
+ */
+public class DotExporter extends GraphExporter
+{
+    public DotExporter(Output out)
+    {
+        super(out);
+    }
+
+    @Override
+    protected void startGraph(String title)
+    {
+        out.println("digraph " + quote(title) + " {");
+        out.println("    label=" + quote(title) + ";");
+        out.println("    rankdir=BT;");
+        out.println("    node [shape=box, fontname=\"sans-serif\"];");
+        out.println("    edge [arrowhead=empty];");
+    }
+
+    @Override
+    protected void startCluster(String id, String label)
+    {
+        out.println("    subgraph " + id + " {");
+        out.println("        label=" + quote(label) + ";");
+    }
+
+    @Override
+    protected void endCluster()
+    {
+        out.println("    }");
+    }
+
+    @Override
+    protected void node(String id, String label, TypeCategory category, boolean external)
+    {
+        var attrs = "label=" + quote(label);
+        if(category == TypeCategory.INTERFACE)
+        {
+            attrs += ", shape=ellipse";
+        }
+        if(external)
+        {
+            attrs += ", style=dashed, color=grey50, fontcolor=grey50";
+        }
+        out.println(indent + id + " [" + attrs + "];");
+    }
+
+    @Override
+    protected void summaryNode(String id, String label)
+    {
+        out.println(indent + id + " [label=" + quote(label) + ", shape=note, style=dotted];");
+    }
+
+    @Override
+    protected void edge(String fromId, String toId)
+    {
+        out.println("    " + fromId + " -> " + toId + ";");
+    }
+
+    @Override
+    protected void endGraph()
+    {
+        out.println("}");
+    }
+
+    private static String quote(String s)
+    {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,252 @@
+package au.djac.polytree.view;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.tree.*;
+
+import java.util.*;
+
+/**
+ * Writes the inheritance graph in a format for graph-drawing tools (see the subclasses). Unlike
+ * TreeViewer, each type appears exactly once, however many parents it has, and each edge is
+ * written as soon as it is found.
+ *
+ * Types are grouped into clusters by package (or, for Python, module): the chain of
+ * PackageDefinitions containing them. External types are left outside any cluster.
+ *
+ * To keep very large graphs renderable, subtrees can be collapsed. With a threshold of N, any
+ * type with more than N subtypes (direct or indirect), but none of whose own subtypes has more
+ * than N, is drawn with a single summary node in place of all those subtypes. Where some of its
+ * children do have more than N subtypes, those children are kept, but if its other children and
+ * their subtypes number more than N in all, they are replaced by a summary node in the same way.
+ */
+public abstract class GraphExporter
+{
+    protected final Output out;
+    private int collapseThreshold = 0;
+
+    /** The indentation for lines within the current cluster (if any). */
+    protected String indent = "    ";
+
+    protected GraphExporter(Output out)
+    {
+        this.out = out;
+    }
+
+    /** Sets the subtree size above which subtrees are collapsed, or 0 (the default) for never. */
+    public GraphExporter collapse(int threshold)
+    {
+        this.collapseThreshold = threshold;
+        return this;
+    }
+
+    /** Writes one graph, with the given title, for all the given types. */
+    public void export(String title, Collection<TypeNode> types)
+    {
+        var graph = new TypeGraph(types);
+        var n = graph.size();
+
+        // For each hidden type, the collapsed type standing in for it; otherwise -1.
+        var collapsedInto = new int[n];
+        Arrays.fill(collapsedInto, -1);
+        var nHidden = new HashMap<Integer,Integer>();
+        if(collapseThreshold > 0)
+        {
+            findCollapsed(graph, collapsedInto, nHidden);
+        }
+
+        var clusters = new TreeMap<String,List<Integer>>();
+        var unclustered = new ArrayList<Integer>();
+        for(int id = 0; id < n; id++)
+        {
+            if(collapsedInto[id] == -1)
+            {
+                var pkg = packageName(graph.getType(id));
+                if(pkg.isEmpty())
+                {
+                    unclustered.add(id);
+                }
+                else
+                {
+                    clusters.computeIfAbsent(pkg.get(), _k -> new ArrayList<>()).add(id);
+                }
+            }
+        }
+
+        startGraph(title);
+        var clusterIndex = 0;
+        for(var entry : clusters.entrySet())
+        {
+            startCluster("cluster_" + clusterIndex++, entry.getKey());
+            indent = "        ";
+            for(var id : entry.getValue())
+            {
+                writeNode(graph, id, nHidden);
+            }
+            indent = "    ";
+            endCluster();
+        }
+        for(var id : unclustered)
+        {
+            writeNode(graph, id, nHidden);
+        }
+
+        // Edges go from subtype to supertype. Edges into hidden types are redirected to the
+        // summary node replacing them (once for each parent).
+        var redirected = new HashSet<Integer>();
+        for(int id = 0; id < n; id++)
+        {
+            if(collapsedInto[id] != -1) { continue; }
+
+            var parentId = id;
+            redirected.clear();
+            graph.getChildren(id).forEach(child ->
+            {
+                var into = collapsedInto[child];
+                if(into == -1)
+                {
+                    edge(nodeId(child), nodeId(parentId));
+                }
+                else if(redirected.add(into))
+                {
+                    edge(summaryId(into), nodeId(parentId));
+                }
+            });
+            if(nHidden.containsKey(id) && !redirected.contains(id))
+            {
+                edge(summaryId(id), nodeId(id));
+            }
+        }
+        endGraph();
+        out.flush();
+    }
+
+    private void writeNode(TypeGraph graph, int id, Map<Integer,Integer> nHidden)
+    {
+        var type = graph.getType(id);
+        node(nodeId(id), type.getName(), type.getCategory(), type instanceof ExternalTypeNode);
+        var hidden = nHidden.get(id);
+        if(hidden != null)
+        {
+            summaryNode(summaryId(id), hidden + " subtype" + ((hidden == 1) ? "" : "s"));
+        }
+    }
+
+    /**
+     * Finds the types to collapse, counting how many types each one hides, and marking each
+     * hidden type with the (first) collapsed type above it.
+     */
+    private void findCollapsed(TypeGraph graph, int[] collapsedInto, Map<Integer,Integer> nHidden)
+    {
+        // Only supertypes (IDs below getSuperTypeCount()) have subtypes to collapse.
+        var nSuperTypes = graph.getSuperTypeCount();
+        var large = new BitSet(nSuperTypes);
+        for(int id = 0; id < nSuperTypes; id++)
+        {
+            if(hasMoreDescendants(graph, id, collapseThreshold))
+            {
+                large.set(id);
+            }
+        }
+
+        for(var id = large.nextSetBit(0); id >= 0; id = large.nextSetBit(id + 1))
+        {
+            BitSet hidden;
+            if(graph.getChildren(id).anyMatch(large::get))
+            {
+                // A large type with a large child will have that child (or one further down)
+                // collapsed, so we only hide the rest, and only if they're too many.
+                hidden = smallSubtrees(graph, id, large);
+                if(hidden.cardinality() <= collapseThreshold) { continue; }
+            }
+            else
+            {
+                hidden = graph.getDescendants(id);
+                hidden.clear(id); // In case of a cycle.
+            }
+
+            nHidden.put(id, hidden.cardinality());
+            for(var d = hidden.nextSetBit(0); d >= 0; d = hidden.nextSetBit(d + 1))
+            {
+                if(collapsedInto[d] == -1)
+                {
+                    collapsedInto[d] = id;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the children of a type that aren't large, along with their descendants (none of
+     * which can be large either).
+     */
+    private static BitSet smallSubtrees(TypeGraph graph, int id, BitSet large)
+    {
+        var subtrees = new BitSet();
+        graph.getChildren(id).filter(child -> !large.get(child)).forEach(child ->
+        {
+            subtrees.set(child);
+            subtrees.or(graph.getDescendants(child));
+        });
+        return subtrees;
+    }
+
+    /**
+     * Returns true if the type has more than 'limit' descendants, stopping the search as soon as
+     * that many are found, so that checking every type costs at most O(types * limit).
+     */
+    private static boolean hasMoreDescendants(TypeGraph graph, int id, int limit)
+    {
+        var visited = new BitSet();
+        var stack = new ArrayDeque<Integer>();
+        stack.push(id);
+        var count = 0;
+        while(!stack.isEmpty())
+        {
+            var children = graph.getChildren(stack.pop()).toArray();
+            for(var child : children)
+            {
+                if(child != id && !visited.get(child))
+                {
+                    visited.set(child);
+                    if(++count > limit)
+                    {
+                        return true;
+                    }
+                    stack.push(child);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the dotted name of the packages (or modules) containing a type, if any. */
+    private static Optional<String> packageName(TypeNode type)
+    {
+        var names = new ArrayList<String>();
+        var scope = type.getDefinition().flatMap(ScopedDefinition::getContaining);
+        while(scope.isPresent())
+        {
+            if(scope.get() instanceof PackageDefinition)
+            {
+                names.add(scope.get().getName());
+            }
+            scope = scope.get().getContaining();
+        }
+        if(names.isEmpty())
+        {
+            return Optional.empty();
+        }
+        Collections.reverse(names);
+        return Optional.of(String.join(".", names));
+    }
+
+    private static String nodeId(int id)    { return "n" + id; }
+    private static String summaryId(int id) { return "n" + id + "_subtypes"; }
+
+    protected abstract void startGraph(String title);
+    protected abstract void startCluster(String id, String label);
+    protected abstract void endCluster();
+    protected abstract void node(String id, String label, TypeCategory category, boolean external);
+    protected abstract void summaryNode(String id, String label);
+    protected abstract void edge(String fromId, String toId);
+    protected abstract void endGraph();
+}
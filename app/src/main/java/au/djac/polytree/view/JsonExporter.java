@@ -0,0 +1,289 @@
+package au.djac.polytree.view;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+import au.djac.polytree.tree.*;
+
+import java.util.*;
+
+/**
+ * Writes the type graph as JSON, for other tools to consume. Each type is written as one record,
+ * straight to the output, with its methods (and their parameters) nested inside.
+ *
+ * Types are referred to by an integer ID, unique within a language, and assigned so that
+ * supertypes come before their subtypes (barring inheritance cycles). Methods are referred to by
+ * their type's ID and their index in that type's "methods" array. Source locations are character
+ * offsets into the file.
+ *
+ * In JSON mode, the output is one document: {"projects": [{"language": ..., "types": [...]}, ...]}.
+ * In NDJSON mode, each type record is written on a line of its own, with a "language" field, so
+ * that consumers can process it one type at a time.
+ */
+public class JsonExporter
+{
+    private final Output out;
+    private boolean ndjson = false;
+    private boolean firstProject = true;
+    private final StringBuilder json = new StringBuilder();
+
+    public JsonExporter(Output out)
+    {
+        this.out = out;
+    }
+
+    public JsonExporter ndjson(boolean ndjson)
+    {
+        this.ndjson = ndjson;
+        return this;
+    }
+
+    /** Writes whatever must precede the first project. */
+    public void start()
+    {
+        if(!ndjson)
+        {
+            out.print("{\"projects\":[");
+        }
+    }
+
+    public void export(Language language, Collection<TypeNode> types)
+    {
+        var graph = new TypeGraph(types);
+        if(!ndjson)
+        {
+            json.setLength(0);
+            json.append(firstProject ? "\n" : ",\n").append("{\"language\":");
+            appendString(language.getName());
+            json.append(",\"types\":[");
+            out.print(json.toString());
+        }
+        firstProject = false;
+
+        for(int id = 0; id < graph.size(); id++)
+        {
+            json.setLength(0);
+            if(ndjson)
+            {
+                json.append("{\"language\":");
+                appendString(language.getName());
+                json.append(',');
+            }
+            else
+            {
+                json.append((id == 0) ? "\n" : ",\n").append('{');
+            }
+            appendType(graph, id);
+            json.append('}');
+            out.print(json.toString());
+            if(ndjson)
+            {
+                out.newLine();
+            }
+        }
+
+        if(!ndjson)
+        {
+            out.print("]}");
+        }
+    }
+
+    /** Writes whatever must follow the last project, and flushes the output. */
+    public void finish()
+    {
+        if(!ndjson)
+        {
+            out.println("]}");
+        }
+        out.flush();
+    }
+
+    private void appendType(TypeGraph graph, int id)
+    {
+        var type = graph.getType(id);
+        json.append("\"id\":").append(id).append(",\"name\":");
+        appendString(type.getName());
+        json.append(",\"construct\":");
+        appendString(type.getConstruct());
+        json.append(",\"category\":");
+        appendString(type.getCategory().genericName);
+        json.append(",\"external\":").append(type instanceof ExternalTypeNode);
+
+        var defn = type.getDefinition();
+        if(defn.isPresent())
+        {
+            appendDefinition(defn.get());
+            defn.get().getTypeParams().ifPresent(tp ->
+            {
+                json.append(",\"typeParams\":");
+                appendString(tp);
+            });
+        }
+
+        json.append(",\"parents\":");
+        appendIds(graph.getParents(id).toArray());
+        json.append(",\"children\":");
+        appendIds(graph.getChildren(id).toArray());
+
+        json.append(",\"methods\":[");
+        var first = true;
+        for(var method : type.getMethods())
+        {
+            if(!first) { json.append(','); }
+            first = false;
+            json.append('{');
+            appendMethod(graph, method);
+            json.append('}');
+        }
+        json.append(']');
+    }
+
+    private void appendMethod(TypeGraph graph, MethodNode method)
+    {
+        var defn = method.getDefinition();
+        json.append("\"name\":");
+        appendString(method.getName());
+        if(defn != null)
+        {
+            appendDefinition(defn);
+            defn.getTypeParams().ifPresent(tp ->
+            {
+                json.append(",\"typeParams\":");
+                appendString(tp);
+            });
+            defn.getReturnType().ifPresent(rt ->
+            {
+                json.append(",\"returnType\":");
+                appendString(rt.toString());
+            });
+        }
+
+        json.append(",\"parameters\":[");
+        var first = true;
+        for(var param : method.getParameters())
+        {
+            if(!first) { json.append(','); }
+            first = false;
+            json.append("{\"name\":");
+            appendString(param.getName());
+            var type = param.getType();
+            if(type.isPresent())
+            {
+                json.append(",\"type\":");
+                appendId(graph, type.get());
+            }
+            json.append('}');
+        }
+        json.append(']');
+
+        var overrides = method.getOverrides();
+        if(overrides != null)
+        {
+            json.append(",\"overrides\":");
+            appendMethodRef(methodRef(graph, overrides));
+        }
+
+        // Sorted, so that the output doesn't depend on the (hash set) order of overriddenBy.
+        var overriddenBy = method.getOverriddenBy();
+        if(!overriddenBy.isEmpty())
+        {
+            var refs = new ArrayList<int[]>(overriddenBy.size());
+            for(var subMethod : overriddenBy)
+            {
+                refs.add(methodRef(graph, subMethod));
+            }
+            refs.sort(Comparator.<int[]>comparingInt(ref -> ref[0]).thenComparingInt(ref -> ref[1]));
+
+            json.append(",\"overriddenBy\":[");
+            first = true;
+            for(var ref : refs)
+            {
+                if(!first) { json.append(','); }
+                first = false;
+                appendMethodRef(ref);
+            }
+            json.append(']');
+        }
+    }
+
+    /** Appends the source location and modifiers common to all definitions. */
+    private void appendDefinition(Definition defn)
+    {
+        defn.getSourceFile().ifPresent(file ->
+        {
+            json.append(",\"file\":");
+            appendString(file.getPath().toString());
+            json.append(",\"start\":").append(defn.getStartPos())
+                .append(",\"end\":").append(defn.getEndPos());
+        });
+
+        json.append(",\"modifiers\":[");
+        var first = true;
+        for(var mod : (Iterable<Modifier>)defn.getModifiers()::iterator)
+        {
+            if(!first) { json.append(','); }
+            first = false;
+            appendString(mod.toString());
+        }
+        json.append(']');
+    }
+
+    /** Returns a method's type ID (or -1 if it's not in the graph) and its index in that type. */
+    private static int[] methodRef(TypeGraph graph, MethodNode method)
+    {
+        // Find the method by identity, since MethodNode.equals() doesn't distinguish overloads
+        // whose parameter types are unknown.
+        var methods = method.getType().getMethods();
+        var index = 0;
+        while(index < methods.size() && methods.get(index) != method)
+        {
+            index++;
+        }
+        return new int[] {graph.getId(method.getType()).orElse(-1), index};
+    }
+
+    private void appendMethodRef(int[] ref)
+    {
+        json.append("{\"type\":");
+        if(ref[0] >= 0) { json.append(ref[0]); }
+        else            { json.append("null"); }
+        json.append(",\"method\":").append(ref[1]).append('}');
+    }
+
+    private void appendId(TypeGraph graph, TypeNode type)
+    {
+        var id = graph.getId(type);
+        if(id.isPresent()) { json.append(id.getAsInt()); }
+        else               { json.append("null"); }
+    }
+
+    private void appendIds(int[] ids)
+    {
+        json.append('[');
+        for(int i = 0; i < ids.length; i++)
+        {
+            if(i > 0) { json.append(','); }
+            json.append(ids[i]);
+        }
+        json.append(']');
+    }
+
+    private void appendString(String s)
+    {
+        json.append('"');
+        for(int i = 0; i < s.length(); i++)
+        {
+            var ch = s.charAt(i);
+            switch(ch)
+            {
+                case '"':  json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if(ch < ' ') { json.append(String.format("\\u%04x", (int)ch)); }
+                    else         { json.append(ch); }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,80 @@
+package au.djac.polytree.view;
+import au.djac.polytree.definitions.*;
+
+/**
+ * Writes the inheritance graph as a Mermaid flowchart, in a fenced ```mermaid block for embedding
+ * in Markdown. (Each graph has its own block, since a Mermaid diagram can't be followed by another
+ * in the same source.) Classes are rectangles, interfaces are stadium shapes, and external types
+ * (not defined in the project) are dashed and grey.
+ */
+public class MermaidExporter extends GraphExporter
+{
+    public MermaidExporter(Output out)
+    {
+        super(out);
+    }
+
+    @Override
+    protected void startGraph(String title)
+    {
+        out.println("```mermaid");
+        out.println("---");
+        out.println("title: " + yamlQuote(title));
+        out.println("---");
+        out.println("flowchart BT");
+        out.println("    classDef external stroke-dasharray: 5 5, color: grey;");
+        out.println("    classDef summary stroke-dasharray: 2 2;");
+    }
+
+    @Override
+    protected void startCluster(String id, String label)
+    {
+        out.println("    subgraph " + id + "[\"" + escape(label) + "\"]");
+    }
+
+    @Override
+    protected void endCluster()
+    {
+        out.println("    end");
+    }
+
+    @Override
+    protected void node(String id, String label, TypeCategory category, boolean external)
+    {
+        var text = "\"" + escape(label) + "\"";
+        var shape = (category == TypeCategory.INTERFACE) ? "([" + text + "])" : "[" + text + "]";
+        out.println(indent + id + shape + (external ? ":::external" : ""));
+    }
+
+    @Override
+    protected void summaryNode(String id, String label)
+    {
+        out.println(indent + id + "[/\"" + escape(label) + "\"/]:::summary");
+    }
+
+    @Override
+    protected void edge(String fromId, String toId)
+    {
+        out.println("    " + fromId + " --> " + toId);
+    }
+
+    @Override
+    protected void endGraph()
+    {
+        out.println("```");
+        out.newLine();
+    }
+
+    /** Quotes a string for the YAML front matter, where Mermaid's entity codes don't apply. */
+    private static String yamlQuote(String s)
+    {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /** Replaces the characters that Mermaid would otherwise interpret with entity codes. */
+    private static String escape(String s)
+    {
+        return s.replace("#", "#35;").replace("\"", "#quot;")
+                .replace("<", "#lt;").replace(">", "#gt;");
+    }
+}
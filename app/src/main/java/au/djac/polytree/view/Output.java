@@ -25,15 +25,23 @@ public class Output
     public static final int HORIZONTAL_CH = 3;
     public static final int VERTICAL_DOTTED_CH = 4;
 
+    // Output is collected here and written out in blocks of about this many characters.
+    private static final int BLOCK_SIZE = 32768;
+
     static {
         AnsiConsole.systemInstall();
     }
 
     private char[] charSet = UNICODE_CHARSET;
+    private boolean ansi = true;
     private int startCol = 0;
     private int column = 0;
     private int terminalWidth;
     private PrintStream out;
+    private final StringBuilder buffer = new StringBuilder(BLOCK_SIZE * 2);
+
+    // The strings returned by chars(), for up to three characters, indexed by charsKey().
+    private final String[] charsCache = new String[1 << 9];
 
     public static Output withAnsi()
     {
@@ -52,6 +60,42 @@ public class Output
         this.out = out;
     }
 
+    /**
+     * Returns an Output that writes plain text to standard output, without ANSI escape sequences
+     * (e.g., when writing to a file).
+     */
+    public static Output plain()
+    {
+        return new Output(System.out).ansi(false);
+    }
+
+    public void clearScreen()
+    {
+        column = 0;
+        buffer.append("\033[H\033[2J");
+        flush();
+    }
+
+    /** Writes out anything still buffered. This must be called once all output is done. */
+    public void flush()
+    {
+        if(buffer.length() > 0)
+        {
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+        out.flush();
+    }
+
+    private void flushBlock()
+    {
+        if(buffer.length() >= BLOCK_SIZE)
+        {
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+    }
+
     public void startCount()
     {
         startCol = column;
@@ -65,35 +109,76 @@ public class Output
     public Output ascii(boolean ascii)
     {
         charSet = ascii ? ASCII_CHARSET : UNICODE_CHARSET;
+        Arrays.fill(charsCache, null);
+        return this;
+    }
+
+    /** Sets whether to colour the output with ANSI escape sequences (the default), or not. */
+    public Output ansi(boolean ansi)
+    {
+        this.ansi = ansi;
         return this;
     }
 
     public String chars(int... indexes)
     {
+        var key = charsKey(indexes);
+        if(key >= 0 && charsCache[key] != null)
+        {
+            return charsCache[key];
+        }
+
         var chars = new char[indexes.length];
         for(int i = 0; i < indexes.length; i++)
         {
             chars[i] = charSet[indexes[i]];
         }
-        return new String(chars);
+        var str = new String(chars);
+        if(key >= 0)
+        {
+            charsCache[key] = str;
+        }
+        return str;
+    }
+
+    /** Packs up to three character indexes into 3 bits each, or returns -1 if there are more. */
+    private static int charsKey(int[] indexes)
+    {
+        if(indexes.length == 0 || indexes.length > 3) { return -1; }
+        var key = 0;
+        for(var index : indexes)
+        {
+            key = (key << 3) | (index + 1);
+        }
+        return key;
     }
 
     public void print(String s)
     {
         column += s.length();
-        out.print(s);
+        buffer.append(s);
+        flushBlock();
     }
 
     public void print(String s, String colourCode)
     {
         column += s.length();
-        out.printf("\033[%sm%s\033[m", colourCode, s);
+        if(ansi)
+        {
+            buffer.append("\033[").append(colourCode).append('m').append(s).append("\033[m");
+        }
+        else
+        {
+            buffer.append(s);
+        }
+        flushBlock();
     }
 
     public void newLine()
     {
         column = 0;
-        out.println();
+        buffer.append(System.lineSeparator());
+        flushBlock();
     }
 
     public void println(String s)
@@ -110,7 +195,10 @@ public class Output
 
     public void printRight(String s, String colourCode)
     {
-        out.print(" ".repeat(Math.max(0, terminalWidth - (column + s.length()))));
+        for(int i = column + s.length(); i < terminalWidth; i++)
+        {
+            buffer.append(' ');
+        }
         println(s, colourCode);
     }
 
@@ -23,6 +23,7 @@ public class TreeViewer
         var rootTypes           = typeList.stream().filter(t -> t.getParents().isEmpty() && !t.getChildren().isEmpty()).toList();
         var nonInheritanceTypes = typeList.stream().filter(t -> t.getParents().isEmpty() && t.getChildren().isEmpty() && t.getSourceFile().isPresent()).toList();
 
+        var visited = new HashSet<TypeNode>();
         if(rootTypes.isEmpty())
         {
             out.println("No inheritance found", BRIGHT_MAGENTA);
@@ -33,90 +34,159 @@ public class TreeViewer
             out.println("(Note: subclasses will appear multiple times if using multiple inheritance.)");
             for(var type : rootTypes)
             {
-                viewNodeTree("    ", "    ", "    ", type, null);
+                viewNodeTree(type, visited);
                 out.newLine();
             }
         }
 
+        // Types in inheritance cycles that nothing outside the cycle leads to, and so that have
+        // no root. We start from each one that is its own descendant.
+        var unreached = typeList.stream().filter(t -> !t.getChildren().isEmpty() && !visited.contains(t)).toList();
+        if(!unreached.isEmpty())
+        {
+            var graph = new TypeGraph(typeList);
+            out.println("Inheritance cycle(s)", BRIGHT_MAGENTA);
+            for(var type : unreached)
+            {
+                var id = graph.getId(type).getAsInt();
+                if(!visited.contains(type) && graph.getDescendants(id).get(id))
+                {
+                    viewNodeTree(type, visited);
+                    out.newLine();
+                }
+            }
+        }
+
         if(!nonInheritanceTypes.isEmpty())
         {
             out.println("Types without inheritance (no super/subclasses)", BRIGHT_MAGENTA);
             for(var type: nonInheritanceTypes)
             {
-                viewNodeTree("    ", "    ", "    ", type, null);
+                viewNodeTree(type, visited);
                 out.newLine();
             }
         }
     }
 
-    private void viewNodeTree(String abovePrefix, String connectingPrefix, String belowPrefix, TypeNode type, TypeNode parent)
+    /** A type waiting to be displayed, along with the path that leads to it. */
+    private static class Frame
     {
-        var typeDefn = type.getDefinition();
-
-        out.println(abovePrefix);
+        private final String abovePrefix;
+        private final String connectingPrefix;
+        private final String belowPrefix;
+        private final TypeNode type;
+        private final Frame parent;
+
+        private Frame(String abovePrefix, String connectingPrefix, String belowPrefix,
+                      TypeNode type, Frame parent)
+        {
+            this.abovePrefix = abovePrefix;
+            this.connectingPrefix = connectingPrefix;
+            this.belowPrefix = belowPrefix;
+            this.type = type;
+            this.parent = parent;
+        }
 
-        List<TypeNode> otherParents = new ArrayList<>(type.getParents());
-        otherParents.remove(parent);
-        if(otherParents.size() > 0)
+        private boolean isOnPath(TypeNode other)
         {
-            otherParents.sort(null);
-            out.println(abovePrefix);
-            for(var otherParent : otherParents)
+            for(var frame = this; frame != null; frame = frame.parent)
             {
-                out.print(abovePrefix);
-                out.print(type.getConstruct(), GREY);
-                out.print(" ");
-                out.println(otherParent.getName(), GREY);
+                if(frame.type == other) { return true; }
             }
-            out.print(abovePrefix);
-            out.println(out.chars(VERTICAL_DOTTED_CH), GREY);
+            return false;
         }
+    }
+
+    /**
+     * Displays a type and (recursively) its subtypes, using an explicit stack rather than the call
+     * stack, since hierarchies can be arbitrarily deep. A subtype that is already on the path
+     * from the root (in an inheritance cycle) is shown, but not expanded again.
+     */
+    private void viewNodeTree(TypeNode root, Set<TypeNode> visited)
+    {
+        var stack = new ArrayDeque<Frame>();
+        stack.push(new Frame("    ", "    ", "    ", root, null));
+        while(!stack.isEmpty())
+        {
+            var frame = stack.pop();
+            var type = frame.type;
+            var parent = (frame.parent == null) ? null : frame.parent.type;
+            var abovePrefix = frame.abovePrefix;
+            var belowPrefix = frame.belowPrefix;
+            var typeDefn = type.getDefinition();
+            visited.add(type);
+
+            out.println(abovePrefix);
 
-        out.print(connectingPrefix);
-        typeDefn.ifPresent(d ->
-            d.getModifiers().filter(m -> m != Modifier.PUBLIC).forEach(mod ->
+            var inCycle = frame.parent != null && frame.parent.isOnPath(type);
+            List<TypeNode> otherParents = new ArrayList<>(type.getParents());
+            otherParents.remove(parent);
+            if(otherParents.size() > 0 && !inCycle)
             {
-                out.print(modStr(mod), mod == Modifier.ABSTRACT ? MAGENTA : ORANGE);
-                out.print(" ");
-            })
-        );
-        out.print(type.getConstruct(), Common.TYPE_COLOURS.get(type.getCategory()));
-        out.print(" ");
-        out.print(type.getName(), BRIGHT_WHITE);
+                otherParents.sort(null);
+                out.println(abovePrefix);
+                for(var otherParent : otherParents)
+                {
+                    out.print(abovePrefix);
+                    out.print(type.getConstruct(), GREY);
+                    out.print(" ");
+                    out.println(otherParent.getName(), GREY);
+                }
+                out.print(abovePrefix);
+                out.println(out.chars(VERTICAL_DOTTED_CH), GREY);
+            }
 
-        typeDefn.ifPresent(d -> d.getTypeParams().ifPresent(tp -> out.print(tp, GREY)));
+            out.print(frame.connectingPrefix);
+            typeDefn.ifPresent(d ->
+                d.getModifiers().filter(m -> m != Modifier.PUBLIC).forEach(mod ->
+                {
+                    out.print(modStr(mod), mod == Modifier.ABSTRACT ? MAGENTA : ORANGE);
+                    out.print(" ");
+                })
+            );
+            out.print(type.getConstruct(), Common.TYPE_COLOURS.get(type.getCategory()));
+            out.print(" ");
+            out.print(type.getName(), BRIGHT_WHITE);
 
-        if(type instanceof ExternalTypeNode)
-        {
-            out.println(" [external]", GREY);
-        }
-        else
-        {
-            out.newLine();
-        }
+            typeDefn.ifPresent(d -> d.getTypeParams().ifPresent(tp -> out.print(tp, GREY)));
 
-        var children = type.getChildren();
-        var nChildren = children.size();
-        viewMethods(belowPrefix + ((nChildren > 0) ? (out.chars(VERTICAL_CH) + "   ") : "    "), type);
+            if(inCycle)
+            {
+                out.println(" [inheritance cycle; see above]", RED);
+                continue;
+            }
 
-        int i = 0;
-        for(var child : children)
-        {
-            if(i < nChildren - 1)
+            if(type instanceof ExternalTypeNode)
             {
-                viewNodeTree(belowPrefix + out.chars(VERTICAL_CH) + "   ",
-                             belowPrefix + out.chars(INTERSECT_CH, HORIZONTAL_CH, HORIZONTAL_CH) + " ",
-                             belowPrefix + out.chars(VERTICAL_CH) + "   ",
-                             child, type);
+                out.println(" [external]", GREY);
             }
             else
             {
-                viewNodeTree(belowPrefix + out.chars(VERTICAL_CH) + "   ",
-                             belowPrefix + out.chars(CORNER_CH, HORIZONTAL_CH, HORIZONTAL_CH) + " ",
-                             belowPrefix + "    ",
-                             child, type);
+                out.newLine();
+            }
+
+            var children = type.getChildren();
+            var nChildren = children.size();
+            viewMethods(belowPrefix + ((nChildren > 0) ? (out.chars(VERTICAL_CH) + "   ") : "    "), type);
+
+            // Pushed in reverse, so that they're popped (and displayed) in order.
+            for(int i = nChildren - 1; i >= 0; i--)
+            {
+                if(i < nChildren - 1)
+                {
+                    stack.push(new Frame(belowPrefix + out.chars(VERTICAL_CH) + "   ",
+                                         belowPrefix + out.chars(INTERSECT_CH, HORIZONTAL_CH, HORIZONTAL_CH) + " ",
+                                         belowPrefix + out.chars(VERTICAL_CH) + "   ",
+                                         children.get(i), frame));
+                }
+                else
+                {
+                    stack.push(new Frame(belowPrefix + out.chars(VERTICAL_CH) + "   ",
+                                         belowPrefix + out.chars(CORNER_CH, HORIZONTAL_CH, HORIZONTAL_CH) + " ",
+                                         belowPrefix + "    ",
+                                         children.get(i), frame));
+                }
             }
-            i++;
         }
     }
 
@@ -0,0 +1,45 @@
+package au.djac.polytree.parsing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+class CensoredStringTests
+{
+    private static final char C = CensoredString.DEFAULT_CENSOR_CHAR;
+
+    private static String censored(CensoredString s)
+    {
+        return s.censored().toString().replace(C, '#');
+    }
+
+    @Test
+    void viewsOfViews()
+    {
+        var root = new CensoredString("abcdefghij");
+        var view = root.view(2, 9);       // cdefghi
+        var viewOfView = view.view(1, 6); // defgh
+        var chars = viewOfView.censored();
+
+        // Censoring the root is seen all the way down.
+        root.censor(4, 5);
+        assertThat(censored(view)).isEqualTo("cd#fghi");
+        assertThat(censored(viewOfView)).isEqualTo("d#fgh");
+
+        // Once the middle view has its own buffer, further censoring of the root isn't seen by
+        // it, or by views of it, but the middle view's own censoring is.
+        view.censor(5, 6);
+        root.censor(0, 10);
+        assertThat(censored(root)).isEqualTo("##########");
+        assertThat(censored(view)).isEqualTo("cd#fg#i");
+        assertThat(censored(viewOfView)).isEqualTo("d#fg#");
+        assertThat(chars.charAt(4)).isEqualTo(C);
+        assertThat(chars.subSequence(1, 3).toString()).isEqualTo(C + "f");
+
+        // Censoring the innermost view affects neither of the others.
+        viewOfView.censor(0, 1);
+        assertThat(censored(viewOfView)).isEqualTo("##fg#");
+        assertThat(censored(view)).isEqualTo("cd#fg#i");
+        assertThat(viewOfView.uncensored()).isEqualTo("defgh");
+    }
+}
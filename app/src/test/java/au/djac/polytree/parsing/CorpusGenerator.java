@@ -0,0 +1,795 @@
+package au.djac.polytree.parsing;
+
+import picocli.CommandLine;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.stream.*;
+
+/**
+ * Writes a synthetic Java and/or Python project, for measuring how PolyTree scales with the size
+ * of its input. Run it with, e.g.:
+ *
+ *     ./gradlew :app:generateCorpus --args="--types 50000 /tmp/corpus"
+ *
+ * A single (language-independent) model of types and methods is generated first, and then written
+ * out in each language. The model consists of class hierarchies (bounded by --depth and --fan-out),
+ * interfaces (abstract base classes in Python) that classes implement, including diamonds, methods
+ * that override and overload one another, and references between types in different files and
+ * packages via the various kinds of import. The output also exercises the constructs covered by
+ * JavaParserTests and PythonParserTests: type parameters, annotations and decorators, parameter
+ * modifiers and default values, return types, checked exceptions, metaclasses, enums, records,
+ * and member, local and anonymous classes.
+ *
+ * Nested, local and anonymous classes are generated on top of the --types count. Python has no
+ * anonymous classes, and overloads become @overload stubs. Python packages are written without
+ * __init__.py files (i.e., as namespace packages).
+ *
+ * The output is deterministic for any given set of options.
+ */
+@CommandLine.Command(name = "generate-corpus",
+                     mixinStandardHelpOptions = true,
+                     description = "Writes a synthetic Java/Python project for scale testing.")
+public class CorpusGenerator implements Callable<Integer>
+{
+    public static void main(String[] args)
+    {
+        System.exit(new CommandLine(new CorpusGenerator()).execute(args));
+    }
+
+    @CommandLine.Parameters(index = "0", description = "Directory to write the project(s) into.")
+    private File directory;
+
+    @CommandLine.Option(names = {"-l", "--language"}, description = "java, python or both (default: ${DEFAULT-VALUE}).")
+    private String language = "both";
+
+    @CommandLine.Option(names = {"-n", "--types"}, description = "Number of top-level types (default: ${DEFAULT-VALUE}).")
+    private int nTypes = 10000;
+
+    @CommandLine.Option(names = "--depth", description = "Maximum inheritance depth (default: ${DEFAULT-VALUE}).")
+    private int maxDepth = 8;
+
+    @CommandLine.Option(names = "--fan-out", description = "Maximum number of direct subtypes per type (default: ${DEFAULT-VALUE}).")
+    private int fanOut = 6;
+
+    @CommandLine.Option(names = "--interfaces", description = "Proportion of types that are interfaces (default: ${DEFAULT-VALUE}).")
+    private double interfaceRatio = 0.2;
+
+    @CommandLine.Option(names = "--diamonds", description = "Probability of a type inheriting two siblings of a common interface (default: ${DEFAULT-VALUE}).")
+    private double diamondRatio = 0.1;
+
+    @CommandLine.Option(names = "--nested", description = "Probability of a type containing a member class and a local class (default: ${DEFAULT-VALUE}).")
+    private double nestedRatio = 0.1;
+
+    @CommandLine.Option(names = "--anonymous", description = "Probability of a type containing an anonymous class (default: ${DEFAULT-VALUE}).")
+    private double anonymousRatio = 0.1;
+
+    @CommandLine.Option(names = "--methods", description = "Methods declared per type (default: ${DEFAULT-VALUE}).")
+    private int nMethods = 6;
+
+    @CommandLine.Option(names = "--overloads", description = "Probability of a new method overloading an existing one (default: ${DEFAULT-VALUE}).")
+    private double overloadRatio = 0.1;
+
+    @CommandLine.Option(names = "--types-per-file", description = "Top-level types per file (default: ${DEFAULT-VALUE}).")
+    private int typesPerFile = 1;
+
+    @CommandLine.Option(names = "--files-per-package", description = "Files per package (default: ${DEFAULT-VALUE}).")
+    private int filesPerPackage = 20;
+
+    @CommandLine.Option(names = "--filler", description = "Extra lines (comments, strings, lambdas) per method body, to pad out file sizes (default: ${DEFAULT-VALUE}).")
+    private int fillerLines = 1;
+
+    @CommandLine.Option(names = "--seed", description = "Random seed (default: ${DEFAULT-VALUE}).")
+    private long seed = 1;
+
+    private static class Param
+    {
+        private final Optional<Type> type; // Empty for a primitive/built-in type.
+        private final int form;
+
+        private Param(Optional<Type> type, int form)
+        {
+            this.type = type;
+            this.form = form;
+        }
+    }
+
+    private static class Method
+    {
+        private final String name;
+        private final List<Param> params;
+        private final Optional<Type> returnType;
+        private final boolean isStatic;
+        private final boolean throwsChecked;
+
+        private Method(String name, List<Param> params, Optional<Type> returnType,
+                       boolean isStatic, boolean throwsChecked)
+        {
+            this.name = name;
+            this.params = params;
+            this.returnType = returnType;
+            this.isStatic = isStatic;
+            this.throwsChecked = throwsChecked;
+        }
+    }
+
+    private static class Type
+    {
+        private final int id;
+        private final boolean isInterface;
+        private Optional<Type> superClass = Optional.empty();
+        private final List<Type> interfaces = new ArrayList<>();
+        private int depth = 0;
+        private final List<Type> children = new ArrayList<>();
+
+        private final List<Method> declared = new ArrayList<>();
+        private final Set<Method> overrides = Collections.newSetFromMap(new IdentityHashMap<>());
+        private List<Method> visible;
+
+        private String construct;
+        private boolean isAbstract = false;
+        private boolean hasTypeParams = false;
+        private boolean hasNested = false;
+        private boolean hasAnonymous = false;
+
+        private Type(int id, boolean isInterface)
+        {
+            this.id = id;
+            this.isInterface = isInterface;
+            this.construct = isInterface ? "interface" : "class";
+        }
+
+        private String getName() { return "T" + id; }
+
+        private Stream<Type> getSuperTypes()
+        {
+            return Stream.concat(superClass.stream(), interfaces.stream());
+        }
+    }
+
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final List<Type> types = new ArrayList<>();
+    private int nextMethodId = 0;
+
+    @Override
+    public Integer call() throws IOException
+    {
+        generateModel(new Random(seed));
+        var root = directory.toPath();
+        if(language.equals("java") || language.equals("both"))
+        {
+            report("Java", new JavaWriter(new Random(seed)).write(root.resolve("java")));
+        }
+        if(language.equals("python") || language.equals("both"))
+        {
+            report("Python", new PythonWriter(new Random(seed)).write(root.resolve("python")));
+        }
+        return 0;
+    }
+
+    private void report(String name, long[] filesAndBytes)
+    {
+        System.out.printf("%s: %d types, %d files, %d bytes%n", name, types.size(), filesAndBytes[0], filesAndBytes[1]);
+    }
+
+    // ---- Model ----
+
+    private void generateModel(Random random)
+    {
+        // Types with room for more subtypes, kept separately for classes and interfaces.
+        var openClasses = new ArrayList<Type>();
+        var openInterfaces = new ArrayList<Type>();
+
+        for(int id = 0; id < nTypes; id++)
+        {
+            var type = new Type(id, random.nextDouble() < interfaceRatio);
+            if(type.isInterface)
+            {
+                inheritInterfaces(random, type, openInterfaces, 2);
+            }
+            else
+            {
+                if(random.nextDouble() < 0.9)
+                {
+                    type.superClass = pickOpen(random, openClasses, type);
+                    type.superClass.ifPresent(parent -> parent.children.add(type));
+                }
+                inheritInterfaces(random, type, openInterfaces, random.nextDouble() < 0.3 ? 2 : 0);
+            }
+            type.depth = type.getSuperTypes().mapToInt(t -> t.depth + 1).max().orElse(0);
+            if(isOpen(type))
+            {
+                (type.isInterface ? openInterfaces : openClasses).add(type);
+            }
+
+            generateMethods(random, type);
+            type.hasNested = random.nextDouble() < nestedRatio;
+            type.hasAnonymous = random.nextDouble() < anonymousRatio;
+            types.add(type);
+        }
+
+        for(var type : types)
+        {
+            if(!type.isInterface && !type.children.isEmpty())
+            {
+                type.isAbstract = random.nextBoolean();
+            }
+            else if(!type.isInterface && type.superClass.isEmpty())
+            {
+                // Enums and records can't extend (or be extended by) anything else.
+                double r = random.nextDouble();
+                type.construct = r < 0.1 ? "enum" : r < 0.2 ? "record" : "class";
+            }
+
+            // Only leaf types get type parameters, since subtypes would otherwise inherit from raw types.
+            type.hasTypeParams = type.children.isEmpty() && !type.construct.equals("enum")
+                && random.nextDouble() < 0.1;
+        }
+    }
+
+    private boolean isOpen(Type type)
+    {
+        return type.depth < maxDepth && type.children.size() < fanOut;
+    }
+
+    /**
+     * Whether 'type' can be referred to from the package containing 'from' (or from anywhere, if
+     * 'from' is empty). In Java, only the first type in each file is public.
+     */
+    private boolean isAccessible(Type type, Optional<Type> from)
+    {
+        return type.id % typesPerFile == 0
+            || (from.isPresent() && packageIndex(type) == packageIndex(from.get()));
+    }
+
+    /**
+     * Picks a random type, accessible from 'from', with room for another subtype. Types found to be
+     * full are discarded (in constant time).
+     */
+    private Optional<Type> pickOpen(Random random, List<Type> open, Type from)
+    {
+        int attempts = 0;
+        while(!open.isEmpty() && attempts < MAX_ATTEMPTS)
+        {
+            int i = random.nextInt(open.size());
+            var type = open.get(i);
+            if(!isOpen(type))
+            {
+                open.set(i, open.get(open.size() - 1));
+                open.remove(open.size() - 1);
+            }
+            else if(isAccessible(type, Optional.of(from)))
+            {
+                return Optional.of(type);
+            }
+            else
+            {
+                attempts++;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Makes 'type' extend/implement up to 'max' interfaces. Sometimes these will be two sub-interfaces
+     * of a common interface, forming a diamond.
+     */
+    private void inheritInterfaces(Random random, Type type, List<Type> open, int max)
+    {
+        if(random.nextDouble() < diamondRatio)
+        {
+            var top = pickOpen(random, open, type);
+            var sides = top.stream().flatMap(t -> t.children.stream())
+                                    .filter(t -> t.isInterface && isOpen(t) && isAccessible(t, Optional.of(type)))
+                                    .toList();
+            if(sides.size() >= 2)
+            {
+                int i = random.nextInt(sides.size());
+                int j = (i + 1 + random.nextInt(sides.size() - 1)) % sides.size();
+                type.interfaces.add(sides.get(i));
+                type.interfaces.add(sides.get(j));
+                sides.get(i).children.add(type);
+                sides.get(j).children.add(type);
+                return;
+            }
+        }
+
+        for(int n = random.nextInt(max + 1); n > 0; n--)
+        {
+            var iface = pickOpen(random, open, type);
+            if(iface.isPresent() && !type.interfaces.contains(iface.get()))
+            {
+                type.interfaces.add(iface.get());
+                iface.get().children.add(type);
+            }
+        }
+    }
+
+    private void generateMethods(Random random, Type type)
+    {
+        var inherited = Collections.newSetFromMap(new IdentityHashMap<Method,Boolean>());
+        type.getSuperTypes().forEach(t -> inherited.addAll(t.visible));
+
+        if(!type.isInterface)
+        {
+            // Implement everything from the interfaces that the superclass doesn't already have, and
+            // override some of the rest.
+            var fromSuperClass = type.superClass.map(t -> t.visible).orElse(List.of());
+            var implemented = Collections.newSetFromMap(new IdentityHashMap<Method,Boolean>());
+            implemented.addAll(fromSuperClass);
+            for(var method : inherited)
+            {
+                if(!method.isStatic && (!implemented.contains(method) || random.nextDouble() < 0.25))
+                {
+                    type.declared.add(method);
+                    type.overrides.add(method);
+                }
+            }
+        }
+
+        var own = new ArrayList<Method>();
+        int nNew = Math.max(1, (type.isInterface ? nMethods / 2 : nMethods) - type.declared.size());
+        for(int i = 0; i < nNew; i++)
+        {
+            String name;
+            int nParams;
+            if(!own.isEmpty() && random.nextDouble() < overloadRatio)
+            {
+                // Same name, different number of parameters.
+                var overloaded = own.get(random.nextInt(own.size()));
+                name = overloaded.name;
+                nParams = overloaded.params.size() + 1;
+            }
+            else
+            {
+                name = "m" + nextMethodId++;
+                nParams = random.nextInt(4);
+            }
+
+            var params = new ArrayList<Param>();
+            for(int p = 0; p < nParams; p++)
+            {
+                params.add(new Param(randomTypeRef(random, 0.5), random.nextInt(4)));
+            }
+            var method = new Method(name, params, randomTypeRef(random, 0.3),
+                                    !type.isInterface && random.nextDouble() < 0.1,
+                                    random.nextDouble() < 0.1);
+            own.add(method);
+            type.declared.add(method);
+        }
+
+        inherited.addAll(type.declared);
+        type.visible = new ArrayList<>(inherited);
+    }
+
+    /**
+     * Returns (with the given probability) a random existing type for use in a method signature.
+     * Overriding methods in other packages will repeat the signature, so it must be accessible
+     * from anywhere.
+     */
+    private Optional<Type> randomTypeRef(Random random, double probability)
+    {
+        if(types.isEmpty() || random.nextDouble() >= probability)
+        {
+            return Optional.empty();
+        }
+        for(int i = 0; i < MAX_ATTEMPTS; i++)
+        {
+            var type = types.get(random.nextInt(types.size()));
+            if(isAccessible(type, Optional.empty()))
+            {
+                return Optional.of(type);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private int fileIndex(Type type)      { return type.id / typesPerFile; }
+    private int packageIndex(Type type)   { return fileIndex(type) / filesPerPackage; }
+    private String packageName(Type type) { return "p" + packageIndex(type); }
+
+    /** Returns a random existing class that can be subclassed (anonymously or otherwise). */
+    private Optional<Type> randomBaseClass(Random random, Type type)
+    {
+        var candidate = types.get(random.nextInt(type.id + 1));
+        return candidate.construct.equals("class") && isAccessible(candidate, Optional.of(type))
+            ? Optional.of(candidate) : Optional.empty();
+    }
+
+    private abstract class Writer
+    {
+        protected final Random random;
+        protected StringBuilder out;
+        protected Set<String> imports;
+        protected Type currentType;
+
+        protected Writer(Random random)
+        {
+            this.random = random;
+        }
+
+        protected abstract String fileName(Type firstType);
+        protected abstract String header();
+        protected abstract void writeType(Type type);
+
+        /** Returns how 'type' should be named from within the current file, adding any import needed. */
+        protected abstract String ref(Type type);
+
+        long[] write(Path root) throws IOException
+        {
+            long nFiles = 0;
+            long nBytes = 0;
+            for(int start = 0; start < types.size(); start += typesPerFile)
+            {
+                var fileTypes = types.subList(start, Math.min(types.size(), start + typesPerFile));
+                out = new StringBuilder();
+                imports = new TreeSet<>();
+                for(var type : fileTypes)
+                {
+                    currentType = type;
+                    writeType(type);
+                }
+
+                var content = header() + String.join("", imports) + "\n" + out;
+                var path = root.resolve("corpus").resolve(packageName(fileTypes.get(0)))
+                               .resolve(fileName(fileTypes.get(0)));
+                Files.createDirectories(path.getParent());
+                Files.writeString(path, content);
+                nFiles++;
+                nBytes += content.length();
+            }
+            return new long[] {nFiles, nBytes};
+        }
+
+        protected void line(String indent, String text)
+        {
+            out.append(indent).append(text).append('\n');
+        }
+    }
+
+    // ---- Java ----
+
+    private class JavaWriter extends Writer
+    {
+        JavaWriter(Random random) { super(random); }
+
+        @Override
+        long[] write(Path root) throws IOException
+        {
+            var counts = super.write(root);
+            Files.writeString(root.resolve("corpus").resolve("Ann.java"),
+                              "package corpus;\n\nimport java.lang.annotation.*;\n\n"
+                              + "@Target(ElementType.TYPE_USE)\npublic @interface Ann {}\n");
+            return counts;
+        }
+
+        @Override
+        protected String fileName(Type firstType) { return firstType.getName() + ".java"; }
+
+        @Override
+        protected String header()
+        {
+            return "package corpus." + packageName(currentType) + ";\n\nimport corpus.Ann;\nimport java.util.*;\n";
+        }
+
+        @Override
+        protected String ref(Type type)
+        {
+            if(packageIndex(type) == packageIndex(currentType))
+            {
+                return type.getName();
+            }
+            var pkg = "corpus." + packageName(type);
+            // Pick an import style per (file, type), deterministically.
+            switch(Math.floorMod(Objects.hash(fileIndex(currentType), type.id), 5))
+            {
+                case 0:  return pkg + "." + type.getName();
+                case 1:
+                case 2:  imports.add("import " + pkg + ".*;\n");
+                         return type.getName();
+                default: imports.add("import " + pkg + "." + type.getName() + ";\n");
+                         return type.getName();
+            }
+        }
+
+        private String typeUse(Optional<Type> type, int form)
+        {
+            if(type.isEmpty())
+            {
+                return List.of("int", "String", "double[]", "Map<String,List<Integer>>").get(form);
+            }
+            var name = ref(type.get());
+            return List.of(name, name + "[]", "List<" + name + ">", "Map<String," + name + " @Ann []>").get(form);
+        }
+
+        @Override
+        protected void writeType(Type type)
+        {
+            var mods = new ArrayList<String>();
+            if(type.id % 7 == 0)            { mods.add("@SuppressWarnings(\"unused\")"); }
+            if(type.id % typesPerFile == 0) { mods.add("public"); }
+            if(type.isAbstract)             { mods.add("abstract"); }
+
+            var decl = new StringBuilder(String.join(" ", mods));
+            decl.append(mods.isEmpty() ? "" : " ").append(type.construct).append(" ").append(type.getName());
+            if(type.hasTypeParams)
+            {
+                decl.append("<E extends Comparable<? super E>, F>");
+            }
+            if(type.construct.equals("record"))
+            {
+                decl.append("(int x, String y)");
+            }
+            type.superClass.ifPresent(s -> decl.append(" extends ").append(ref(s)));
+            if(!type.interfaces.isEmpty())
+            {
+                decl.append(type.isInterface ? " extends " : " implements ")
+                    .append(type.interfaces.stream().map(this::ref).collect(Collectors.joining(", ")));
+            }
+
+            line("", "/**");
+            line("", " * Generated " + type.construct + " {" + type.getName() + "}; not a real \"class\".");
+            line("", " */");
+            line("", decl.toString());
+            line("", "{");
+            if(type.construct.equals("enum"))
+            {
+                line("    ", "A, B, C;");
+            }
+            line("    ", "static final String LABEL = \"" + type.getName() + " { class X extends Y } \\\"\";");
+            out.append('\n');
+
+            for(var method : type.declared)
+            {
+                writeMethod("    ", type, method);
+            }
+
+            if(type.hasNested)
+            {
+                var base = randomBaseClass(random, type);
+                line("    ", "public static class " + type.getName() + "Inner" + base.map(b -> " extends " + ref(b)).orElse(""));
+                line("    ", "{");
+                line("        ", "void innerMethod(final int x) {}");
+                line("    ", "}");
+                out.append('\n');
+            }
+            line("", "}");
+            out.append('\n');
+        }
+
+        private void writeMethod(String indent, Type type, Method method)
+        {
+            var decl = new StringBuilder();
+            boolean isAbstract = type.isInterface && random.nextDouble() < 0.7;
+            if(type.overrides.contains(method))     { decl.append("@Override "); }
+            if(!type.isInterface)
+            {
+                decl.append(type.overrides.contains(method) || random.nextBoolean() ? "public " : "protected ");
+            }
+            if(type.isInterface && !isAbstract)     { decl.append("default "); }
+            if(method.isStatic)                     { decl.append("static "); }
+            if(method.params.size() == 2)           { decl.append("<X extends Comparable<X>> "); }
+            decl.append(method.returnType.map(this::ref).orElse("void")).append(" ").append(method.name).append("(");
+            for(int i = 0; i < method.params.size(); i++)
+            {
+                var param = method.params.get(i);
+                decl.append(i > 0 ? ", " : "")
+                    .append(i % 3 == 1 ? "final " : i % 3 == 2 ? "@Deprecated " : "")
+                    .append(typeUse(param.type, param.form)).append(" p").append(i);
+            }
+            decl.append(")");
+            if(method.throwsChecked)
+            {
+                decl.append(" throws java.io.IOException, Exception");
+            }
+
+            if(isAbstract)
+            {
+                line(indent, decl + ";");
+                out.append('\n');
+                return;
+            }
+            line(indent, decl.toString());
+            line(indent, "{");
+            writeBody(indent + "    ", type);
+            if(method.returnType.isPresent())
+            {
+                line(indent + "    ", "return null;");
+            }
+            line(indent, "}");
+            out.append('\n');
+        }
+
+        private void writeBody(String indent, Type type)
+        {
+            for(int i = 0; i < fillerLines; i++)
+            {
+                switch(random.nextInt(4))
+                {
+                    case 0:  line(indent, "// A comment with {braces}, \"quotes\" and class Fake extends Nothing {"); break;
+                    case 1:  line(indent, "String s" + i + " = \"}{ \\\" /* not a comment */\" + '}';"); break;
+                    case 2:  line(indent, "Runnable r" + i + " = () -> { System.out.println(LABEL); };"); break;
+                    default: line(indent, "int x" + i + " = (((" + i + " + 1) * 2) - (3 * (4 + 5)));"); break;
+                }
+            }
+
+            if(type.hasNested && random.nextDouble() < 0.3)
+            {
+                line(indent, "class Local" + type.getName() + " { void localMethod() {} }");
+            }
+
+            if(type.hasAnonymous && random.nextDouble() < 0.3)
+            {
+                var base = randomBaseClass(random, type);
+                if(base.isPresent())
+                {
+                    var overridable = base.get().visible.stream()
+                        .filter(m -> !m.isStatic && m.params.isEmpty() && m.returnType.isEmpty())
+                        .findFirst();
+                    line(indent, "Object anon = new " + ref(base.get()) + "() {");
+                    overridable.ifPresent(m -> line(indent + "    ", "@Override public void " + m.name + "() {}"));
+                    line(indent, "};");
+                }
+            }
+        }
+    }
+
+    // ---- Python ----
+
+    private class PythonWriter extends Writer
+    {
+        PythonWriter(Random random) { super(random); }
+
+        @Override
+        protected String fileName(Type firstType) { return "m" + fileIndex(firstType) + ".py"; }
+
+        @Override
+        protected String header()
+        {
+            return "\"\"\"Generated module.\"\"\"\n\n"
+                + "import abc\nimport dataclasses\nfrom abc import ABC, ABCMeta, abstractmethod\n"
+                + "from typing import Dict, List, Optional, overload\n";
+        }
+
+        @Override
+        protected String ref(Type type)
+        {
+            if(fileIndex(type) == fileIndex(currentType))
+            {
+                return type.getName();
+            }
+            var module = "m" + fileIndex(type);
+            if(packageIndex(type) == packageIndex(currentType))
+            {
+                imports.add("from ." + module + " import " + type.getName() + "\n");
+                return type.getName();
+            }
+            var qualified = "corpus." + packageName(type) + "." + module;
+            if(Math.floorMod(Objects.hash(fileIndex(currentType), type.id), 4) == 0)
+            {
+                imports.add("import " + qualified + "\n");
+                return qualified + "." + type.getName();
+            }
+            imports.add("from " + qualified + " import " + type.getName() + "\n");
+            return type.getName();
+        }
+
+        private String annotation(Optional<Type> type, int form)
+        {
+            if(type.isEmpty())
+            {
+                return List.of("int", "str", "List[float]", "Dict[str, List[int]]").get(form);
+            }
+            var name = ref(type.get());
+            return List.of(name, "List[" + name + "]", "Optional[" + name + "]", "Dict[str, " + name + "]").get(form);
+        }
+
+        @Override
+        protected void writeType(Type type)
+        {
+            var bases = type.getSuperTypes().map(this::ref).collect(Collectors.toCollection(ArrayList::new));
+            if(type.isInterface && bases.isEmpty())
+            {
+                bases.add(random.nextBoolean() ? "ABC" : "abc.ABC");
+            }
+            else if(type.isAbstract)
+            {
+                bases.add("metaclass=ABCMeta");
+            }
+
+            if(type.id % 7 == 0)
+            {
+                line("", "@dataclasses.dataclass(eq=False)");
+            }
+            line("", "class " + type.getName() + (bases.isEmpty() ? "" : "(" + String.join(", ", bases) + ")") + ":");
+            line("    ", "\"\"\"Generated " + type.construct + " " + type.getName() + "; not a real 'class X(Y):'.\"\"\"");
+            line("    ", "label = '" + type.getName() + " # not a comment'");
+            out.append('\n');
+
+            // All but the last of a set of overloads are @overload stubs.
+            var remaining = type.declared.stream().collect(Collectors.groupingBy(m -> m.name, Collectors.counting()));
+            for(var method : type.declared)
+            {
+                var n = remaining.merge(method.name, -1L, Long::sum);
+                writeMethod("    ", type, method, n > 0);
+            }
+
+            if(type.hasNested)
+            {
+                var base = randomBaseClass(random, type);
+                line("    ", "class " + type.getName() + "Inner" + base.map(b -> "(" + ref(b) + ")").orElse("") + ":");
+                line("        ", "def inner_method(self, x: int = 0):");
+                line("            ", "pass");
+                out.append('\n');
+            }
+            out.append('\n');
+        }
+
+        private void writeMethod(String indent, Type type, Method method, boolean overloaded)
+        {
+            if(overloaded)                          { line(indent, "@overload"); }
+            var params = new ArrayList<String>();
+            if(!method.isStatic)
+            {
+                params.add("self");
+            }
+            else if(random.nextBoolean())
+            {
+                line(indent, "@staticmethod");
+            }
+            else
+            {
+                line(indent, "@classmethod");
+                params.add("cls");
+            }
+            if(type.isInterface)
+            {
+                line(indent, random.nextBoolean() ? "@abstractmethod" : "@abc.abstractmethod");
+            }
+            for(int i = 0; i < method.params.size(); i++)
+            {
+                var param = method.params.get(i);
+                var p = "p" + i + ": " + annotation(param.type, param.form);
+                if(i > 0)
+                {
+                    p += i % 2 == 1 ? " = None" : " = lambda a, b=(1, 2): [a, {b: ':'}]";
+                }
+                params.add(p);
+            }
+            if(method.throwsChecked)
+            {
+                params.add("*args");
+                params.add("**kwargs");
+            }
+
+            var returnType = method.returnType.map(t -> " -> " + ref(t)).orElse("");
+            line(indent, "def " + method.name + "(" + String.join(", ", params) + ")" + returnType + ":");
+            writeBody(indent + "    ", type);
+            line(indent + "    ", method.returnType.isPresent() ? "return None" : "pass");
+            out.append('\n');
+        }
+
+        private void writeBody(String indent, Type type)
+        {
+            for(int i = 0; i < fillerLines; i++)
+            {
+                switch(random.nextInt(4))
+                {
+                    case 0:  line(indent, "# A comment with (brackets), \"quotes\" and class Fake(Nothing):"); break;
+                    case 1:  line(indent, "s" + i + " = \"def fake(): \\\" # not a comment\" + '''class X:'''"); break;
+                    case 2:  line(indent, "f" + i + " = lambda x, y=" + i + ": (x, [y], {'k': y})"); break;
+                    default: line(indent, "x" + i + " = (((" + i + " + 1) * 2) -\n" + indent + "      (3 * (4 + 5)))"); break;
+                }
+            }
+
+            if(type.hasNested && random.nextDouble() < 0.3)
+            {
+                line(indent, "class Local" + type.getName() + ":");
+                line(indent + "    ", "def local_method(self): pass");
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import picocli.CommandLine;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+
+class CorpusGeneratorTests
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    void generatesLoadableProject() throws IOException
+    {
+        var exitCode = new CommandLine(new CorpusGenerator())
+            .execute("--types", "300", "--types-per-file", "3", dir.toString());
+        assertThat(exitCode).isEqualTo(0);
+
+        var projects = new ProjectLoader(new LanguageSet().scanning(true)).load(dir);
+        for(var project : projects.values())
+        {
+            assertThat(project.walk(TypeDefinition.class).filter(t -> t.getName().matches("T[0-9]+")))
+                .describedAs("top-level %s types", project.getLanguage().getName())
+                .hasSize(300);
+        }
+
+        var java = projects.values().stream().filter(p -> p.getLanguage().getName().equals("Java")).findFirst().get();
+        assertThat(java.walk(TypeDefinition.class).flatMap(TypeDefinition::getSuperTypes))
+            .describedAs("unresolved Java supertypes")
+            .allMatch(s -> s.resolve().isPresent());
+    }
+}
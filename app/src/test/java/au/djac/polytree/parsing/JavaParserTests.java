@@ -24,6 +24,11 @@ class JavaParserTests
     private Project project = new Project("test_java_project",
                                           new LanguageSet().getByExtension("java").get());
 
+    Parser newParser()
+    {
+        return new JavaParser();
+    }
+
 
     static Stream<List<String>> longThings()
     {
@@ -48,7 +53,7 @@ class JavaParserTests
 
         assertThatNoException()
             .describedAs("parsing long " + label)
-            .isThrownBy(() -> new JavaParser().parse(project, sourceFile));
+            .isThrownBy(() -> newParser().parse(project, sourceFile));
 
         assertThat(project.walk())
             .filteredOn("name", "A")
@@ -68,7 +73,7 @@ class JavaParserTests
                 "record".equals(construct) ? "(int x, String y)" : ""
             ));
 
-        new JavaParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(project.walk(TypeDefinition.class).toList())
             .extracting(
@@ -88,13 +93,31 @@ class JavaParserTests
             project, FILE,
             "Object o = new TestType(42, \"abc\") {};");
 
-        new JavaParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(project.walk(TypeDefinition.class))
             .map(d -> sset(d.getSuperTypes()))
             .containsExactly(Set.of("TestType"));
     }
 
+    @Test
+    void anonClassInDeeplyNestedArgs()
+    {
+        var sourceFile = new SourceFile(
+            project, FILE,
+            "class A { void m() { f(g(h(new Runnable() { public void run() {} }), i(j(k(1))))); } }");
+
+        newParser().parse(project, sourceFile);
+
+        assertThat(project.walk(TypeDefinition.class))
+            .map(d -> sset(d.getSuperTypes()))
+            .containsExactlyInAnyOrder(Set.of(), Set.of("Runnable"));
+
+        assertThat(project.walk(MethodDefinition.class))
+            .map(MethodDefinition::getName)
+            .containsExactlyInAnyOrder("m", "run");
+    }
+
 
     @ParameterizedTest
     @ValueSource(strings = {"<T>", "<x extends y<z>, w>", "<A<B<C<D<E,F>,G>,H>,I>,J<K<L>>>"})
@@ -104,7 +127,7 @@ class JavaParserTests
             project, FILE,
             String.format("class%s TestType {} %s void testMethod() {}", typeParams, typeParams));
 
-        new JavaParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(project.walk())
             .filteredOn("name", in("TestType", "testMethod"))
@@ -121,7 +144,7 @@ class JavaParserTests
             project, FILE,
             String.format("%s class TestType {} %s void testMethod() {}", modifiers, modifiers));
 
-        new JavaParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(project.walk())
             .filteredOn("name", in("TestType", "testMethod"))
@@ -143,7 +166,7 @@ class JavaParserTests
                 "public %s testMethod1(int x) {} %s testMethod2() {}",
                 returnType, returnType));
 
-        new JavaParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         for(var def : project.walk(MethodDefinition.class).toList())
         {
@@ -158,7 +181,7 @@ class JavaParserTests
             project, FILE,
             "void testMethod1(X y, @Ann(123) final int[] _abc, List<@Ann X>[]@Ann[] _xyz) {}");
 
-        new JavaParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(project.walk(MethodDefinition.class).toList().get(0).getParameters())
             .map(d -> sset(d.getModifiers()),
@@ -178,7 +201,7 @@ class JavaParserTests
             project, FILE,
             "void testMethod1(int x) throws X, Y<Z> {}");
 
-        new JavaParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(
             set(
@@ -205,7 +228,7 @@ class JavaParserTests
             + "interface TestInterfaceY {}"
             + "interface TestInterfaceZ extends TestInterfaceX, TestInterfaceY {}");
 
-        new JavaParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
         var typeDefs = project.walk(TypeDefinition.class).toList();
 
         assertThat(typeDefs)
@@ -230,7 +253,7 @@ class JavaParserTests
             project, FILE,
             "class A { void m1(); void m2() { class B {} int m3(int x) {} } class C {}}");
 
-        new JavaParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         var scope = project.getNested().findFirst().get();
 
@@ -259,6 +282,49 @@ class JavaParserTests
             );
     }
 
+    @Test
+    void adjacentMembers()
+    {
+        var sourceFile = new SourceFile(
+            project, FILE,
+            "interface A { default void m1() { Runnable r = () -> { x(); }; }\n"
+            + "    T m2(Map<String,T @Ann []> p); }");
+
+        newParser().parse(project, sourceFile);
+
+        assertThat(project.getNested().findFirst().get().getNested().findFirst().get().getNested())
+            .extracting("class", "name")
+            .containsOnly(
+                tuple(MethodDefinition.class, "m1"),
+                tuple(MethodDefinition.class, "m2")
+            );
+    }
+
+    @Test
+    void resolutionCache()
+    {
+        var sourceFile = new SourceFile(
+            project, FILE,
+            "package p; class X {} class A { "
+            + IntStream.range(0, 200).mapToObj(i -> "void m" + i + "(X x) {} ").collect(Collectors.joining())
+            + "}");
+
+        newParser().parse(project, sourceFile);
+
+        assertThat(project.walk(MethodDefinition.class)
+                          .flatMap(MethodDefinition::getParameters)
+                          .map(param -> param.getType().get().resolve()))
+            .hasSize(200)
+            .allMatch(Optional::isPresent);
+
+        // The first lookup misses twice (in A, and then in p, where X is found), and records both
+        // results. Every later lookup is answered by A's entry.
+        var cache = project.getResolutionCache();
+        assertThat(cache.getMisses()).as("cache misses").isEqualTo(2L);
+        assertThat(cache.getHits()).as("cache hits").isEqualTo(199L);
+        assertThat(cache.size()).as("cache entries").isEqualTo(2);
+    }
+
     @Test
     void filesAndPackages()
     {
@@ -299,7 +365,7 @@ class JavaParserTests
             )  // Unresolvable -- superclass 'B' is not public
         );
 
-        var parser = new JavaParser();
+        var parser = newParser();
         for(var file : sourceFiles)
         {
             parser.parse(project, file);
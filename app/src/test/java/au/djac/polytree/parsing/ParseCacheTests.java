@@ -0,0 +1,165 @@
+package au.djac.polytree.parsing;
+import static au.djac.polytree.parsing.TestUtil.*;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+
+class ParseCacheTests
+{
+    private static final String JAVA_CODE =
+        "package a.b;\n"
+        + "import java.util.*;\n"
+        + "import a.c.Other;\n"
+        + "public class Outer<T> extends Base implements Other, Runnable {\n"
+        + "    private static int count(final List<String> xs, int... ys) throws IOException { return 0; }\n"
+        + "    interface Inner { void run(); }\n"
+        + "    Object o = new Object() { public String toString() { return \"\"; } };\n"
+        + "}\n"
+        + "class Base {}\n";
+
+    private static final String PYTHON_CODE =
+        "class A(B, metaclass=M):\n"
+        + "    @staticmethod\n"
+        + "    def f(x: int = 5, *args) -> str:\n"
+        + "        def g(): pass\n"
+        + "        return ''\n";
+
+    @TempDir
+    Path cacheDir;
+
+    private List<String> parseWith(Optional<ParseCache> cache, String ext, String fileName, String code)
+        throws IOException
+    {
+        var language = new LanguageSet().getByExtension(ext).get();
+        var project = new Project("test_project", language);
+        var file = new SourceFile(project, Path.of(fileName), code);
+        if(cache.isPresent())
+        {
+            cache.get().parse(language.getParser(), project, file);
+        }
+        else
+        {
+            language.getParser().parse(project, file);
+        }
+        return describe(project);
+    }
+
+    private void checkRoundTrip(String ext, String fileName, String code) throws IOException
+    {
+        var expected = parseWith(Optional.empty(), ext, fileName, code);
+        var cache = new ParseCache(cacheDir);
+
+        assertThat(parseWith(Optional.of(cache), ext, fileName, code))
+            .describedAs("cache miss")
+            .isEqualTo(expected);
+
+        try(var entries = Files.list(cacheDir))
+        {
+            assertThat(entries).hasSize(1);
+        }
+
+        assertThat(parseWith(Optional.of(cache), ext, fileName, code))
+            .describedAs("cache hit")
+            .isEqualTo(expected);
+    }
+
+    @Test
+    void javaRoundTrip() throws IOException
+    {
+        checkRoundTrip("java", "a/b/Outer.java", JAVA_CODE);
+    }
+
+    @Test
+    void pythonRoundTrip() throws IOException
+    {
+        checkRoundTrip("py", "pkg/mod.py", PYTHON_CODE);
+    }
+
+    @Test
+    void changedContent() throws IOException
+    {
+        var cache = new ParseCache(cacheDir);
+        parseWith(Optional.of(cache), "py", "mod.py", PYTHON_CODE);
+        var changed = parseWith(Optional.of(cache), "py", "mod.py", PYTHON_CODE + "class Z: pass\n");
+
+        assertThat(changed).anyMatch(d -> d.startsWith("TypeDefinition Z "));
+        try(var entries = Files.list(cacheDir))
+        {
+            assertThat(entries).hasSize(2);
+        }
+    }
+
+    @Test
+    void damagedEntry() throws IOException
+    {
+        var expected = parseWith(Optional.empty(), "java", "Outer.java", JAVA_CODE);
+        var cache = new ParseCache(cacheDir);
+        parseWith(Optional.of(cache), "java", "Outer.java", JAVA_CODE);
+
+        try(var entries = Files.list(cacheDir))
+        {
+            for(var entry : entries.toList())
+            {
+                var bytes = Files.readAllBytes(entry);
+                Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+            }
+        }
+
+        assertThat(parseWith(Optional.of(cache), "java", "Outer.java", JAVA_CODE))
+            .isEqualTo(expected);
+    }
+
+    /** Adds an import supplier that the cache can't record, and counts the parses. */
+    private static class UnserializableParser extends JavaParser
+    {
+        int parses = 0;
+
+        @Override
+        public void parse(Project project, SourceFile file, ParseBudget budget)
+        {
+            parses++;
+            super.parse(project, file, budget);
+            project.getNested("a").get().addImportSupplier(Stream::empty);
+        }
+    }
+
+    @Test
+    void unserializable() throws IOException
+    {
+        var java = new LanguageSet().getByExtension("java").get();
+        var cache = new ParseCache(cacheDir);
+
+        var expected = new Project("test_project", java);
+        new UnserializableParser().parse(expected, new SourceFile(expected, Path.of("Outer.java"), JAVA_CODE));
+
+        // Parsed just once, within the budget, and not cached.
+        var parser = new UnserializableParser();
+        var project = new Project("test_project", java);
+        cache.parse(parser, project, new SourceFile(project, Path.of("Outer.java"), JAVA_CODE), new ParseBudget(1_000_000));
+        assertThat(parser.parses).isEqualTo(1);
+        assertThat(describe(project)).isEqualTo(describe(expected));
+        assertThat(project.getNested("a").get().getImportSuppliers()).hasSize(1);
+
+        // Over budget, nothing is added at all.
+        var overBudget = new Project("test_project", java);
+        var file = new SourceFile(overBudget, Path.of("Outer.java"), JAVA_CODE);
+        assertThatThrownBy(() -> cache.parse(parser, overBudget, file, new ParseBudget(100)))
+            .isInstanceOf(ParseBudget.ExceededException.class);
+        assertThat(overBudget.getNested()).isEmpty();
+
+        try(var entries = Files.list(cacheDir))
+        {
+            assertThat(entries).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package au.djac.polytree.parsing;
+import static au.djac.polytree.parsing.TestUtil.*;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+
+class ProjectLoaderTests
+{
+    @TempDir
+    Path dir;
+
+    private static Set<String> typeNames(Map<Language,Project> projects)
+    {
+        return sset(projects.values().stream()
+                            .flatMap(p -> p.walk(TypeDefinition.class))
+                            .map(t -> t.getName() + t.getSuperTypes().map(s -> ":" + s.resolve().isPresent())
+                                                                     .collect(Collectors.joining())));
+    }
+
+    @Test
+    void update() throws IOException
+    {
+        var a = dir.resolve("p/A.java");
+        var b = dir.resolve("p/B.java");
+        var c = dir.resolve("q/r/C.py");
+        Files.createDirectories(a.getParent());
+        Files.createDirectories(c.getParent());
+        Files.writeString(a, "package p; public class A extends B {}");
+        Files.writeString(b, "package p; public class B {}");
+        Files.writeString(c, "class C: pass");
+
+        var loader = new ProjectLoader(new LanguageSet()).threads(2);
+        var projects = loader.load(dir);
+        assertThat(typeNames(projects)).containsExactly("A:true", "B", "C");
+
+        // Modify one file, delete another, add another, and delete a whole directory.
+        Files.writeString(b, "package p; public class B2 {}");
+        var d = dir.resolve("p/D.java");
+        Files.writeString(d, "package p; public class D extends B2 {}");
+        Files.delete(a);
+        Files.delete(c);
+        Files.delete(c.getParent());
+        loader.update(projects, dir, List.of(a, b, c.getParent(), d));
+
+        assertThat(typeNames(projects))
+            .containsExactly("B2", "D:true")
+            .isEqualTo(typeNames(new ProjectLoader(new LanguageSet()).load(dir)));
+
+        assertThat(projects.values().stream().flatMap(Project::getNested).map(ScopedDefinition::getName))
+            .describedAs("empty packages removed")
+            .containsExactlyInAnyOrder("p");
+    }
+
+    @Test
+    void parseBudget() throws IOException
+    {
+        var a = dir.resolve("p/A.java");
+        var c = dir.resolve("q/C.py");
+        Files.createDirectories(a.getParent());
+        Files.createDirectories(c.getParent());
+        Files.writeString(a, "package p; public class A extends B {} class B { void m() {} }");
+        Files.writeString(c, "class C(D):\n    def m(self): pass\nclass D: pass\n");
+
+        var loader = new ProjectLoader(new LanguageSet()).parseBudget(100);
+        var projects = loader.load(dir);
+
+        assertThat(loader.getOverBudget()).containsExactlyInAnyOrder(a, c);
+        assertThat(typeNames(projects))
+            .describedAs("types found by fallback parsers")
+            .isEqualTo(typeNames(new ProjectLoader(new LanguageSet().scanning(true)).load(dir)))
+            .contains("A:true", "B", "C:true", "D");
+    }
+
+    @Test
+    void parseBudgetWithSharedPackages() throws IOException
+    {
+        // Every file goes over budget, and its partial results are discarded while other files in
+        // the same package are being parsed. Those must not lose their definitions. (Any such race
+        // is intermittent, so load many times.)
+        for(int i = 0; i < 40; i++)
+        {
+            var pkg = dir.resolve("p" + i);
+            Files.createDirectories(pkg);
+            for(int j = 0; j < 4; j++)
+            {
+                Files.writeString(pkg.resolve("A" + j + ".java"),
+                                  "package p" + i + "; class A" + j + " { void m(int a) {} }");
+            }
+        }
+
+        for(int run = 0; run < 100; run++)
+        {
+            var projects = new ProjectLoader(new LanguageSet()).threads(8).parseBudget(1).load(dir);
+            assertThat(projects.values().stream().flatMap(p -> p.walk(TypeDefinition.class)))
+                .describedAs("types found in run %d", run)
+                .hasSize(160);
+        }
+    }
+}
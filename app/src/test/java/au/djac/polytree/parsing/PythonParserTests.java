@@ -22,6 +22,11 @@ class PythonParserTests
     private Project project = new Project("test_python_project",
                                           new LanguageSet().getByExtension("py").get());
 
+    Parser newParser()
+    {
+        return new PythonParser();
+    }
+
 
     static Stream<List<String>> longThings()
     {
@@ -46,7 +51,7 @@ class PythonParserTests
 
         assertThatNoException()
             .describedAs("parsing long " + label)
-            .isThrownBy(() -> new PythonParser().parse(project, sourceFile));
+            .isThrownBy(() -> newParser().parse(project, sourceFile));
 
         assertThat(project.walk())
             .filteredOn("name", "A")
@@ -63,7 +68,7 @@ class PythonParserTests
                 "%s\nclass TestType: pass\n%s\ndef testMethod(): pass\n",
                 modifiers, modifiers));
 
-        new PythonParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(project.walk())
             .filteredOn("name", in("TestType", "testMethod"))
@@ -82,7 +87,7 @@ class PythonParserTests
             + "@abc.abstractmethod\ndef method4(): pass\n"
             + "@classmethod\n@abstractmethod\ndef method5(): pass\n");
 
-        new PythonParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(project.walk(MethodDefinition.class))
             .extracting(
@@ -105,7 +110,7 @@ class PythonParserTests
             project, FILE,
             "def testMethod(a, bc: de, fg = lambda hi, jk = lm: no, pq: rs[tu] = 'vw'): pass");
 
-        new PythonParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(project.walk(MethodDefinition.class).toList().get(0).getParameters())
             .extracting(
@@ -129,7 +134,7 @@ class PythonParserTests
             project, FILE,
             String.format("def testMethod(x, y) -> %s: pass", returnType));
 
-        new PythonParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(project.walk(MethodDefinition.class))
             .singleElement()
@@ -147,7 +152,7 @@ class PythonParserTests
             + "class TestClassC(TestInterfaceX): pass\n"
             + "class TestClassD(ABC, TestClassB, TestInterfaceX, TestInterfaceY): pass\n");
 
-        new PythonParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
         var typeDefs = project.walk(TypeDefinition.class).toList();
 
         assertThat(typeDefs)
@@ -184,7 +189,7 @@ class PythonParserTests
             + "  class C(): pass\n    \n"
             + "class D:\n   pass\n");
 
-        new PythonParser().parse(project, sourceFile);
+        newParser().parse(project, sourceFile);
 
         assertThat(project.getNested()).satisfiesExactly(
             module -> {
@@ -224,5 +229,53 @@ class PythonParserTests
                 );
             });
     }
-}
 
+    @Test
+    void declarationsInStrings()
+    {
+        var sourceFile = new SourceFile(
+            project, FILE,
+            "s = 'class Fake1: pass'\n"
+            + "t = \"def fake2(): pass\"\n"
+            + "u = \"\"\"\n"
+            + "class Fake3:\n"
+            + "    def fake4(): pass\n"
+            + "\"\"\"\n"
+            + "class Real:\n"
+            + "    '''\n"
+            + "    class Fake5: pass\n"
+            + "    '''\n"
+            + "    def real(): pass\n");
+
+        newParser().parse(project, sourceFile);
+
+        assertThat(project.walk(TypeDefinition.class).map(Definition::getName)).containsExactly("Real");
+        assertThat(project.walk(MethodDefinition.class).map(Definition::getName)).containsExactly("real");
+    }
+
+    @Test
+    void parameterPositions()
+    {
+        var code = "class A:\n    def f(self, bc: int = 5, d=x): pass\n";
+        newParser().parse(project, new SourceFile(project, FILE, code));
+
+        assertThat(project.walk(MethodDefinition.class).toList().get(0).getParameters())
+            .extracting(ParameterDefinition::getName, Definition::getStartPos, Definition::getEndPos)
+            .containsExactly(
+                tuple("self", code.indexOf("self"), code.indexOf("self") + 4),
+                tuple("bc",   code.indexOf("bc"),   code.indexOf("bc: int = 5") + 11),
+                tuple("d",    code.indexOf("d=x"),  code.indexOf("d=x") + 3)
+            );
+    }
+
+    @Test
+    void trailingCommaInSuperTypes()
+    {
+        newParser().parse(project, new SourceFile(project, FILE, "class A(B, ): pass\n"));
+
+        assertThat(project.walk(TypeDefinition.class))
+            .singleElement()
+            .extracting(d -> sset(d.getSuperTypes()))
+            .isEqualTo(Set.of("B"));
+    }
+}
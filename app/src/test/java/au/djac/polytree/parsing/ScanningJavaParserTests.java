@@ -0,0 +1,14 @@
+package au.djac.polytree.parsing;
+
+/**
+ * Runs all of JavaParserTests against ScanningJavaParser, to check that both produce the same
+ * definitions.
+ */
+class ScanningJavaParserTests extends JavaParserTests
+{
+    @Override
+    Parser newParser()
+    {
+        return new ScanningJavaParser();
+    }
+}
@@ -0,0 +1,41 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.file.*;
+
+/**
+ * Runs all of PythonParserTests against ScanningPythonParser, to check that both produce the same
+ * definitions.
+ */
+class ScanningPythonParserTests extends PythonParserTests
+{
+    @Override
+    Parser newParser()
+    {
+        return new ScanningPythonParser();
+    }
+
+    @Test
+    @Timeout(10)
+    void unclosedParameterLists()
+    {
+        // Each '(' is left unclosed, but the bracket depth is back to 0 by the next header, so
+        // each is a header. (Searching to the end of the file for each ')' takes minutes.)
+        var code = "def f(]\n".repeat(50_000)
+                   + "def f(\n    ]\n".repeat(50_000)
+                   + "def g(x): pass\n";
+        var project = new Project("test_python_project", new LanguageSet().getByExtension("py").get());
+        newParser().parse(project, new SourceFile(project, Path.of("test_data.py"), code));
+
+        assertThat(project.walk(MethodDefinition.class))
+            .singleElement()
+            .extracting(Definition::getName)
+            .isEqualTo("g");
+    }
+}
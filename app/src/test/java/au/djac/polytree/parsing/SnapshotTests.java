@@ -0,0 +1,83 @@
+package au.djac.polytree.parsing;
+import static au.djac.polytree.parsing.TestUtil.*;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+
+class SnapshotTests
+{
+    @TempDir
+    Path dir;
+
+    private Map<Language,Project> loadProjects() throws IOException
+    {
+        var a = dir.resolve("src/p/A.java");
+        var b = dir.resolve("src/q/B.java");
+        var c = dir.resolve("src/r/c.py");
+        Files.createDirectories(a.getParent());
+        Files.createDirectories(b.getParent());
+        Files.createDirectories(c.getParent());
+        Files.writeString(a, "package p;\nimport q.B;\npublic abstract class A<T> extends B implements Runnable {\n"
+                             + "    protected abstract int f(final List<String> xs, int... ys) throws IOException;\n"
+                             + "    Object o = new Object() { public String toString() { return \"\"; } };\n}\n");
+        Files.writeString(b, "package q;\npublic class B { void g(A a) {} }\n");
+        Files.writeString(c, "class C(D, metaclass=M):\n    @staticmethod\n    def f(x: int = 5, *args) -> str:\n"
+                             + "        return ''\nclass D: pass\n");
+        return new ProjectLoader(new LanguageSet()).load(dir.resolve("src"));
+    }
+
+    @Test
+    void roundTrip() throws IOException
+    {
+        var projects = loadProjects();
+        var snapshotFile = dir.resolve("snapshot");
+        Snapshot.write(snapshotFile, projects);
+
+        var snapshot = Snapshot.read(snapshotFile);
+        assertThat(snapshot.getLanguageNames()).containsExactlyInAnyOrder("Java", "Python");
+
+        var restored = snapshot.getProjects(new LanguageSet());
+        assertThat(restored).hasSize(2);
+        for(var project : projects.values())
+        {
+            var name = project.getLanguage().getName();
+            var restoredProject = restored.entrySet().stream()
+                                          .filter(e -> e.getKey().getName().equals(name))
+                                          .findFirst().get().getValue();
+
+            assertThat(restoredProject.getName()).isEqualTo(project.getName());
+            assertThat(describe(restoredProject)).describedAs(name).isEqualTo(describe(project));
+            assertThat(sset(restoredProject.walk(TypeDefinition.class)
+                                           .map(t -> t.getName() + "@" + t.getSourceFile().get().getPath())))
+                .isEqualTo(sset(project.walk(TypeDefinition.class)
+                                       .map(t -> t.getName() + "@" + t.getSourceFile().get().getPath())));
+        }
+    }
+
+    @Test
+    void damaged() throws IOException
+    {
+        var snapshotFile = dir.resolve("snapshot");
+        Snapshot.write(snapshotFile, loadProjects());
+        var bytes = Files.readAllBytes(snapshotFile);
+
+        Files.write(snapshotFile, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThatThrownBy(() -> Snapshot.read(snapshotFile).getProjects(new LanguageSet()))
+            .isInstanceOf(StreamCorruptedException.class);
+
+        bytes[7]++; // Format version
+        Files.write(snapshotFile, bytes);
+        assertThatThrownBy(() -> Snapshot.read(snapshotFile))
+            .isInstanceOf(StreamCorruptedException.class)
+            .hasMessageContaining("version");
+    }
+}
@@ -16,6 +16,45 @@ final class TestUtil
         return new TreeSet<>(stream.map(Object::toString).toList());
     }
 
+    /**
+     * Describes everything about a project's definitions, in a way that doesn't depend on the
+     * iteration order of any sets.
+     */
+    static List<String> describe(Project project)
+    {
+        return project.walk().map(defn ->
+        {
+            var desc = defn.getClass().getSimpleName() + " " + defn.getName().replaceAll("-anonymous-.*", "?")
+                + " " + defn.getStartPos() + "-" + defn.getEndPos()
+                + " " + new TreeSet<>(defn.getModifiers().map(Object::toString).toList())
+                + " " + defn.getTypeParams()
+                + " " + defn.getImports().map(i -> i.getLocalName() + "=" + i.getSource().getName())
+                                         .sorted().toList();
+            if(defn instanceof TypeDefinition)
+            {
+                var type = (TypeDefinition)defn;
+                desc += " " + type.getConstruct()
+                    + " " + type.getSuperTypes().map(s -> s + "/" + s.getConstructHint())
+                                                .sorted().toList()
+                    + " " + type.getMetaType();
+            }
+            if(defn instanceof MethodDefinition)
+            {
+                var method = (MethodDefinition)defn;
+                desc += " " + method.getReturnType()
+                    + " " + method.getCheckedExceptions().map(Object::toString).sorted().toList()
+                    + " " + method.getParameters()
+                                  .map(p -> p.getName() + ":" + p.getType() + "=" + p.getDefaultValue()
+                                            + " " + new TreeSet<>(p.getModifiers().map(Object::toString).toList())
+                                            + " " + p.getStartPos() + "-" + p.getEndPos())
+                                  .toList();
+            }
+            return desc;
+        })
+        .sorted()
+        .toList();
+    }
+
     static void dumpDefnTree(ScopedDefinition defn)
     {
         dumpDefnTree(defn, "");
@@ -0,0 +1,195 @@
+package au.djac.polytree.tree;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+import java.util.stream.*;
+
+class PersistentMapTests
+{
+    /** A key with a chosen hash code, so that hashes can be made to collide. */
+    private record Key(String name, int hash)
+    {
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /** Returns the map's contents, checking that forEach() and get() agree with each other. */
+    private static <K,V> Map<K,V> contents(PersistentMap<K,V> map)
+    {
+        var contents = new HashMap<K,V>();
+        map.forEach((key, value) ->
+            assertThat(contents.put(key, value)).describedAs("duplicate of %s", key).isNull());
+        contents.forEach((key, value) -> assertThat(map.get(key)).isEqualTo(value));
+        assertThat(map.isEmpty()).isEqualTo(contents.isEmpty());
+        return contents;
+    }
+
+    @Test
+    void collidingHashCodes()
+    {
+        // Keys 'c*' all have the same hash code, and 'd*' share their lowest bits with them.
+        var keys = new ArrayList<Key>();
+        var expected = new HashMap<Key,String>();
+        var map = PersistentMap.<Key,String>empty();
+        for(int i = 0; i < 6; i++)
+        {
+            keys.add(new Key("c" + i, 0x5555));
+            keys.add(new Key("d" + i, 0x5555 + (i << 26)));
+        }
+        for(var key : keys)
+        {
+            map = map.plus(key, key.name());
+            expected.put(key, key.name());
+            assertThat(contents(map)).isEqualTo(expected);
+        }
+
+        var before = map;
+        map = map.plus(new Key("c3", 0x5555), "replaced");
+        expected.put(new Key("c3", 0x5555), "replaced");
+        assertThat(contents(map)).isEqualTo(expected);
+        assertThat(before.get(new Key("c3", 0x5555))).describedAs("original map").isEqualTo("c3");
+
+        assertThat(map.get(new Key("c9", 0x5555))).isNull();
+        assertThat(map.get(new Key("d9", 0x5555 + (9 << 26)))).isNull();
+        assertThat(PersistentMap.<Key,String>empty().get(new Key("c0", 0x5555))).isNull();
+    }
+
+    @Test
+    void plusAllResolveOrder()
+    {
+        // Keys with distinct hashes, and keys that all collide, so that entries, subtrees and
+        // collision nodes each meet one another.
+        var keys = IntStream.range(0, 60)
+            .mapToObj(i -> new Key("k" + i, (i % 2 == 0) ? i * 1009 : 77))
+            .toList();
+
+        var left = PersistentMap.<Key,String>empty();
+        var right = PersistentMap.<Key,String>empty();
+        for(int i = 0; i < 40; i++)
+        {
+            left = left.plus(keys.get(i), "L" + i);
+        }
+        for(int i = 20; i < 60; i++)
+        {
+            right = right.plus(keys.get(i), "R" + i);
+        }
+
+        var calls = new ArrayList<String>();
+        var merged = left.plusAll(right, (v1, v2) ->
+        {
+            calls.add(v1 + "," + v2);
+            return v1 + v2;
+        });
+
+        assertThat(calls).containsExactlyInAnyOrderElementsOf(
+            IntStream.range(20, 40).mapToObj(i -> "L" + i + ",R" + i).toList());
+
+        var expected = new HashMap<Key,String>();
+        for(int i = 0; i < 60; i++)
+        {
+            expected.put(keys.get(i), (i < 20) ? "L" + i : (i < 40) ? "L" + i + "R" + i : "R" + i);
+        }
+        assertThat(contents(merged)).isEqualTo(expected);
+    }
+
+    @Test
+    void plusAllSharedSubtrees()
+    {
+        var base = PersistentMap.<Integer,String>empty();
+        for(int i = 0; i < 1000; i++)
+        {
+            base = base.plus(i, "base");
+        }
+        var map1 = base.plus(5, "map1").plus(2000, "map1").plus(7, "both1");
+        var map2 = base.plus(6, "map2").plus(3000, "map2").plus(7, "both2");
+
+        var calls = new ArrayList<String>();
+        var merged = map1.plusAll(map2, (v1, v2) ->
+        {
+            calls.add(v1 + "," + v2);
+            return v2;
+        });
+
+        // Only key 7 differs in both. Keys changed on one side only are compared with the base's
+        // entries that the other side still shares.
+        assertThat(calls).containsExactlyInAnyOrder("map1,base", "base,map2", "both1,both2");
+
+        // (Key 5 takes the value that map2 shares with the base.)
+        var expected = contents(base);
+        expected.put(6, "map2");
+        expected.put(7, "both2");
+        expected.put(2000, "map1");
+        expected.put(3000, "map2");
+        assertThat(contents(merged)).isEqualTo(expected);
+
+        // Merging a map with itself, or with the map it was derived from, changes nothing.
+        assertThat(map1.plusAll(map1, (v1, v2) -> v2)).isSameAs(map1);
+        assertThat(map1.plusAll(base, (v1, v2) -> v1)).isSameAs(map1);
+        assertThat(base.plusAll(PersistentMap.empty(), (v1, v2) -> v2)).isSameAs(base);
+        assertThat(PersistentMap.<Integer,String>empty().plusAll(base, (v1, v2) -> v2)).isSameAs(base);
+    }
+
+    @Test
+    void randomizedAgainstHashMap()
+    {
+        var random = new Random(1);
+        var counter = new int[] {0};
+        for(int trial = 0; trial < 200; trial++)
+        {
+            // Small hash ranges give many collisions; shifting them into the upper bits makes the
+            // keys share long hash prefixes.
+            var hashRange = (trial % 3 == 0) ? 4 : (trial % 3 == 1) ? 1000 : Integer.MAX_VALUE;
+            var hashShift = (trial % 5 == 0) ? 20 : 0;
+            var keys = IntStream.range(0, 300)
+                .mapToObj(i -> new Key("k" + i, random.nextInt(hashRange) << hashShift))
+                .toList();
+
+            var base = PersistentMap.<Key,String>empty();
+            var baseExpected = new HashMap<Key,String>();
+            for(int i = random.nextInt(400); i > 0; i--)
+            {
+                var key = keys.get(random.nextInt(keys.size()));
+                var value = "v" + counter[0]++;
+                base = base.plus(key, value);
+                baseExpected.put(key, value);
+            }
+
+            var map1 = base;
+            var map2 = base;
+            var expected1 = new HashMap<>(baseExpected);
+            var expected2 = new HashMap<>(baseExpected);
+            for(int i = random.nextInt(200); i > 0; i--)
+            {
+                var key = keys.get(random.nextInt(keys.size()));
+                var value = "v" + counter[0]++;
+                if(random.nextBoolean())
+                {
+                    map1 = map1.plus(key, value);
+                    expected1.put(key, value);
+                }
+                else
+                {
+                    map2 = map2.plus(key, value);
+                    expected2.put(key, value);
+                }
+            }
+            assertThat(contents(base)).isEqualTo(baseExpected);
+            assertThat(contents(map1)).isEqualTo(expected1);
+            assertThat(contents(map2)).isEqualTo(expected2);
+
+            // Values are unique to each plus(), so equal values mean a shared entry, which
+            // plusAll() keeps as is.
+            var merged = map1.plusAll(map2, (v1, v2) -> v1 + "+" + v2);
+            var expected = new HashMap<>(expected1);
+            expected2.forEach((key, value) ->
+                expected.merge(key, value, (v1, v2) -> v1.equals(v2) ? v1 : v1 + "+" + v2));
+            assertThat(contents(merged)).describedAs("trial %d", trial).isEqualTo(expected);
+        }
+    }
+}
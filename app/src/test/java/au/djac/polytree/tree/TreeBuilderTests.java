@@ -0,0 +1,219 @@
+package au.djac.polytree.tree;
+import static au.djac.polytree.tree.TreeTestUtil.*;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+import au.djac.polytree.view.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.file.*;
+import java.util.*;
+
+
+class TreeBuilderTests
+{
+    private final Language java = new LanguageSet().getByExtension("java").get();
+    private final Project project = new Project("test_java_project", java);
+    private final TreeBuilder builder = new TreeBuilder();
+
+    /** Replaces the definitions from one file (or just removes them, if 'content' is null). */
+    private void edit(String path, String content)
+    {
+        project.removeFrom(Path.of(path));
+        if(content != null)
+        {
+            java.getParser().parse(project, new SourceFile(project, Path.of(path), content));
+        }
+        project.walk().forEach(ScopedDefinition::clearImports);
+    }
+
+    private static String id(TypeNode type)
+    {
+        return type.getName() + "@" + type.getSourceFile().map(f -> f.getPath().toString()).orElse("-");
+    }
+
+    private static String id(MethodNode method)
+    {
+        return id(method.getType()) + "." + method.getName()
+            + method.getParameters().stream().map(p -> p.getType().map(TreeBuilderTests::id).orElse("?")).toList();
+    }
+
+    /** Describes the type nodes, their edges, methods and override links, in a fixed order. */
+    static List<String> describe(Collection<TypeNode> types)
+    {
+        var desc = new ArrayList<String>();
+        for(var type : types)
+        {
+            desc.add(id(type) + " parents=" + type.getParents().stream().map(TreeBuilderTests::id).toList()
+                     + " children=" + type.getChildren().stream().map(TreeBuilderTests::id).sorted().toList());
+            for(var method : type.getMethods())
+            {
+                desc.add(id(method)
+                         + " overrides=" + Optional.ofNullable(method.getOverrides()).map(TreeBuilderTests::id)
+                         + " overriddenBy=" + method.getOverriddenBy().stream().map(TreeBuilderTests::id).sorted().toList());
+            }
+        }
+        Collections.sort(desc);
+        return desc;
+    }
+
+    /** Brings 'builder' up to date, checks it against a fresh TreeBuilder, and returns its nodes. */
+    private Map<String,TypeNode> buildAndCompare(String step)
+    {
+        var definitions = project.walk(TypeDefinition.class).toList();
+        builder.update(definitions);
+        var types = builder.build();
+
+        var fresh = new TreeBuilder();
+        definitions.forEach(fresh::addDefinition);
+        assertThat(describe(types)).describedAs(step).isEqualTo(describe(fresh.build()));
+        assertThat(cycles(builder)).describedAs(step + ": cycles").isEqualTo(cycles(fresh));
+
+        return byName(types);
+    }
+
+    private static List<List<String>> cycles(TreeBuilder builder)
+    {
+        return builder.getCycles().stream()
+                      .map(cycle -> cycle.stream().map(TreeBuilderTests::id).toList())
+                      .toList();
+    }
+
+    /** Returns the lines of the tree view (as plain text) for the given types. */
+    private static List<String> view(Collection<TypeNode> types)
+    {
+        return capture(out -> new TreeViewer(out).view(types)).lines().toList();
+    }
+
+    private static MethodNode method(TypeNode type, String name)
+    {
+        return type.getMethods().stream().filter(m -> m.getName().equals(name)).findFirst().get();
+    }
+
+    @Test
+    void pythonDiamond()
+    {
+        var types = byName(build("test.py", "class A:\n    def m(self): pass\n"
+                                             + "class B(A): pass\n"
+                                             + "class C(A):\n    def m(self): pass\n"
+                                             + "class D(B, C):\n    def m(self): pass\n"));
+
+        // D's MRO is D, B, C, A, so C.m comes before A.m.
+        assertThat(method(types.get("D"), "m").getOverrides()).isSameAs(method(types.get("C"), "m"));
+        assertThat(method(types.get("C"), "m").getOverrides()).isSameAs(method(types.get("A"), "m"));
+        assertThat(method(types.get("A"), "m").getOverriddenBy()).containsExactly(method(types.get("C"), "m"));
+    }
+
+    @Test
+    void javaInterfaceDiamond()
+    {
+        var types = byName(build("test.java", "interface I { default void m() {} }"
+                                               + "interface J extends I { default void m() {} }"
+                                               + "interface K extends I {}"
+                                               + "class C implements K, J { public void m() {} }"));
+
+        // K only inherits I.m, which J.m overrides.
+        assertThat(method(types.get("C"), "m").getOverrides()).isSameAs(method(types.get("J"), "m"));
+        assertThat(method(types.get("J"), "m").getOverrides()).isSameAs(method(types.get("I"), "m"));
+    }
+
+    @Test
+    void externalRoot()
+    {
+        var types = byName(build("test.java", "class B extends Ext { void m() {} }"
+                                               + "class C extends B { void m() {} }"));
+
+        assertThat(types.get("Ext")).isInstanceOf(ExternalTypeNode.class);
+        assertThat(method(types.get("C"), "m").getOverrides()).isSameAs(method(types.get("B"), "m"));
+    }
+
+    @Test
+    void inconsistentMro()
+    {
+        // C has no C3 linearisation, since A and B list X and Y in opposite orders.
+        var types = byName(build("test.py", "class X:\n    def m(self): pass\n"
+                                             + "class Y:\n    def m(self): pass\n"
+                                             + "class A(X, Y):\n    def m(self): pass\n"
+                                             + "class B(Y, X): pass\n"
+                                             + "class C(A, B):\n    def m(self): pass\n"));
+
+        // The most-derived method wins instead.
+        assertThat(method(types.get("C"), "m").getOverrides()).isSameAs(method(types.get("A"), "m"));
+        assertThat(method(types.get("A"), "m").getOverrides()).isSameAs(method(types.get("X"), "m"));
+    }
+
+    @Test
+    void incrementalBuilds()
+    {
+        edit("A.java", "package p; public class A { void m(X x) {} void n() {} }");
+        edit("B.java", "package p; class B extends A { void m(X x) {} }");
+        edit("C.java", "package p; class C extends Ext implements I { public void run() {} }");
+        edit("D.java", "package p; class D extends B { void m(X x) {} void n() {} }");
+        edit("I.java", "package p; interface I { void run(); }");
+        var types = buildAndCompare("initial");
+        assertThat(types.get("Ext")).isInstanceOf(ExternalTypeNode.class);
+        assertThat(types.get("X")).isInstanceOf(ExternalTypeNode.class);
+
+        // Removing B leaves D's supertype unresolved.
+        edit("B.java", null);
+        types = buildAndCompare("B removed");
+        assertThat(types.get("B")).isInstanceOf(ExternalTypeNode.class);
+
+        edit("B.java", "package p; class B extends A { void m(X x) {} }");
+        buildAndCompare("B re-added");
+
+        // Change B's supertype, so that D no longer inherits from A.
+        edit("B.java", "package p; class B extends C { void m(X x) {} }");
+        types = buildAndCompare("B's supertype changed");
+        assertThat(method(types.get("D"), "n").getOverrides()).isNull();
+
+        // Define the types that were external, so that C, and the methods of A, B and D, now refer
+        // to project types.
+        edit("Ext.java", "package p; public class Ext { public void run() {} }");
+        edit("X.java", "package p; class X {}");
+        types = buildAndCompare("external types defined");
+        assertThat(types.get("Ext")).isInstanceOf(ProjectTypeNode.class);
+        assertThat(types.get("X")).isInstanceOf(ProjectTypeNode.class);
+        assertThat(types.get("C").getMethods().get(0).getOverrides().getType()).isEqualTo(types.get("Ext"));
+
+        edit("Ext.java", null);
+        edit("X.java", null);
+        edit("I.java", "package p; interface I { void run(); void stop(); }");
+        buildAndCompare("external types removed again");
+    }
+
+    @Test
+    void cycles()
+    {
+        edit("A.java", "package p; class A extends B { void m() {} }");
+        edit("B.java", "package p; class B extends A { void m() {} }");
+        edit("C.java", "package p; class C extends A { void m() {} }");
+        edit("S.java", "package p; class S extends S {}");
+        var types = buildAndCompare("cycles");
+        assertThat(cycles(builder)).containsExactly(List.of("A@A.java", "B@B.java"), List.of("S@S.java"));
+
+        // Each cycle is shown once, with its first type repeated (but not expanded) where the
+        // cycle returns to it.
+        var lines = view(types.values());
+        assertThat(lines).contains("Inheritance cycle(s)");
+        assertThat(lines.stream().filter(line -> line.endsWith("[inheritance cycle; see above]"))
+                                 .map(line -> line.substring(line.indexOf("class "))))
+            .containsExactly("class A [inheritance cycle; see above]",
+                             "class S [inheritance cycle; see above]");
+        assertThat(lines.stream().filter(line -> line.endsWith("class C"))).hasSize(1);
+
+        // Breaking the cycles clears them.
+        edit("B.java", "package p; class B { void m() {} }");
+        types = buildAndCompare("A-B cycle broken");
+        assertThat(cycles(builder)).containsExactly(List.of("S@S.java"));
+        assertThat(method(types.get("A"), "m").getOverrides()).isSameAs(method(types.get("B"), "m"));
+
+        edit("S.java", "package p; class S {}");
+        types = buildAndCompare("S cycle broken");
+        assertThat(cycles(builder)).isEmpty();
+        assertThat(view(types.values())).doesNotContain("Inheritance cycle(s)")
+                                         .noneMatch(line -> line.contains("[inheritance cycle"));
+    }
+}
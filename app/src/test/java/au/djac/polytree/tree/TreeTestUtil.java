@@ -0,0 +1,51 @@
+package au.djac.polytree.tree;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+import au.djac.polytree.view.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+/** Fixtures shared by the tests of the tree and view packages. */
+public final class TreeTestUtil
+{
+    private TreeTestUtil() {}
+
+    /**
+     * Parses source files (given as path, content, path, content, ...) into a new project, and
+     * builds its type nodes. The language is chosen by the first file's extension.
+     */
+    public static Collection<TypeNode> build(String... files)
+    {
+        var path = files[0];
+        var language = new LanguageSet().getByExtension(path.substring(path.lastIndexOf('.') + 1)).get();
+        var project = new Project("test_project", language);
+        for(int i = 0; i < files.length; i += 2)
+        {
+            language.getParser().parse(project, new SourceFile(project, Path.of(files[i]), files[i + 1]));
+        }
+        var builder = new TreeBuilder();
+        project.walk(TypeDefinition.class).forEach(builder::addDefinition);
+        return builder.build();
+    }
+
+    public static Map<String,TypeNode> byName(Collection<TypeNode> types)
+    {
+        var byName = new HashMap<String,TypeNode>();
+        types.forEach(t -> byName.put(t.getName(), t));
+        return byName;
+    }
+
+    /** Returns everything written to a (plain text) Output by 'writer'. */
+    public static String capture(Consumer<Output> writer)
+    {
+        var bytes = new ByteArrayOutputStream();
+        var out = new Output(new PrintStream(bytes, true, StandardCharsets.UTF_8)).ansi(false);
+        writer.accept(out);
+        out.flush();
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
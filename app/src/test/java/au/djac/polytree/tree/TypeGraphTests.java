@@ -0,0 +1,170 @@
+package au.djac.polytree.tree;
+import au.djac.polytree.definitions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+
+class TypeGraphTests
+{
+    private static List<TypeNode> newTypes(int n)
+    {
+        var types = new ArrayList<TypeNode>();
+        for(int i = 0; i < n; i++)
+        {
+            types.add(new ExternalTypeNode("T" + i, TypeCategory.CLASS, "class"));
+        }
+        return types;
+    }
+
+    private static void link(TypeNode parent, TypeNode child)
+    {
+        if(!child.getParents().contains(parent))
+        {
+            child.addParent(parent);
+            parent.addChild(child);
+        }
+    }
+
+    /**
+     * Returns the types reachable from 'type' along its parent (or child) edges, by breadth-first
+     * search, without leaving 'known'. The type itself is included only if it's in a cycle.
+     */
+    private static Set<TypeNode> reachable(TypeNode type, boolean up, Set<TypeNode> known)
+    {
+        var found = new HashSet<TypeNode>();
+        var queue = new ArrayDeque<TypeNode>();
+        queue.add(type);
+        while(!queue.isEmpty())
+        {
+            for(var next : up ? queue.remove().getParents() : queue.remove().getChildren())
+            {
+                if(known.contains(next) && found.add(next))
+                {
+                    queue.add(next);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static BitSet ids(TypeGraph graph, Set<TypeNode> types)
+    {
+        var ids = new BitSet();
+        types.forEach(t -> ids.set(graph.getId(t).getAsInt()));
+        return ids;
+    }
+
+    /** Checks every query on the graph against a breadth-first search of the TypeNodes. */
+    private static void check(TypeGraph graph, Collection<TypeNode> types, String desc)
+    {
+        var known = new HashSet<>(types);
+        assertThat(graph.size()).describedAs(desc).isEqualTo(types.size());
+
+        // Check the ID order (supertypes first, parents first) that the closure relies on.
+        var cyclic = new HashSet<TypeNode>();
+        for(var type : types)
+        {
+            if(reachable(type, true, known).contains(type))
+            {
+                cyclic.add(type);
+            }
+        }
+        var inOrBelowCycle = new HashSet<TypeNode>(cyclic);
+        cyclic.forEach(type -> inOrBelowCycle.addAll(reachable(type, false, known)));
+        for(var type : types)
+        {
+            var id = graph.getId(type).getAsInt();
+            assertThat(graph.getType(id)).isSameAs(type);
+            assertThat(id < graph.getSuperTypeCount())
+                .describedAs("%s: %s is a supertype", desc, type.getName())
+                .isEqualTo(!type.getChildren().isEmpty());
+            if(!inOrBelowCycle.contains(type))
+            {
+                graph.getParents(id).forEach(parentId ->
+                    assertThat(parentId).describedAs("%s: parent of %s", desc, type.getName()).isLessThan(id));
+            }
+        }
+
+        for(var type : types)
+        {
+            var id = graph.getId(type).getAsInt();
+            assertThat(graph.getParents(id).count()).isEqualTo(type.getParents().stream().filter(known::contains).count());
+            assertThat(graph.getChildren(id).count()).isEqualTo(type.getChildren().stream().filter(known::contains).count());
+
+            var ancestors = ids(graph, reachable(type, true, known));
+            assertThat(graph.getAncestors(id)).describedAs("%s: ancestors of %s", desc, type.getName()).isEqualTo(ancestors);
+            assertThat(graph.getDescendants(id))
+                .describedAs("%s: descendants of %s", desc, type.getName())
+                .isEqualTo(ids(graph, reachable(type, false, known)));
+            for(int other = 0; other < graph.size(); other++)
+            {
+                assertThat(graph.isAncestor(other, id))
+                    .describedAs("%s: isAncestor(%d, %d)", desc, other, id)
+                    .isEqualTo(ancestors.get(other));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void randomGraphs(boolean cycles)
+    {
+        var random = new Random(cycles ? 2 : 1);
+        for(int trial = 0; trial < 300; trial++)
+        {
+            // Sparse and dense graphs. Without cycles, parents always come before children in the
+            // list (which is shuffled before building the graph).
+            var n = 1 + random.nextInt(50);
+            var types = newTypes(n);
+            var nEdges = random.nextInt(n * ((trial % 2 == 0) ? 1 : 4));
+            for(int e = 0; e < nEdges; e++)
+            {
+                var parent = random.nextInt(n);
+                var child = random.nextInt(n);
+                if(cycles ? (parent != child || random.nextInt(10) == 0) : (parent < child))
+                {
+                    link(types.get(parent), types.get(child));
+                }
+            }
+            Collections.shuffle(types, random);
+            check(new TypeGraph(types), types, "trial " + trial);
+
+            // Edges to types outside the graph are ignored.
+            var subset = types.subList(0, (n + 1) / 2);
+            check(new TypeGraph(subset), subset, "subset of trial " + trial);
+        }
+    }
+
+    @Test
+    void cycleWithTypesBelow()
+    {
+        // Leaf type L inherits from B, in a cycle with A, and from C, below the cycle.
+        var types = newTypes(5);
+        var a = types.get(0);
+        var b = types.get(1);
+        var c = types.get(2);
+        var l = types.get(3);
+        var self = types.get(4);
+        link(a, b);
+        link(b, a);
+        link(b, c);
+        link(b, l);
+        link(c, l);
+        link(self, self);
+
+        var graph = new TypeGraph(types);
+        check(graph, types, "cycle");
+
+        var lId = graph.getId(l).getAsInt();
+        var selfId = graph.getId(self).getAsInt();
+        assertThat(lId).isGreaterThanOrEqualTo(graph.getSuperTypeCount());
+        assertThat(graph.getAncestors(lId)).isEqualTo(ids(graph, Set.of(a, b, c)));
+        assertThat(graph.getAncestors(selfId)).isEqualTo(ids(graph, Set.of(self)));
+        assertThat(graph.isAncestor(lId, lId)).isFalse();
+    }
+}
@@ -0,0 +1,148 @@
+package au.djac.polytree.view;
+import static au.djac.polytree.tree.TreeTestUtil.*;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.tree.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+import java.util.regex.*;
+
+class GraphExporterTests
+{
+    /** The nodes (by label), the clusters they're in, and the edges (by label) of a graph. */
+    private static class Graph
+    {
+        private final Map<String,String> labels = new HashMap<>();
+        private final Map<String,String> clusters = new TreeMap<>();
+        private final Set<String> edges = new TreeSet<>();
+    }
+
+    private static final Pattern DOT_NODE = Pattern.compile("\\s*(n\\w+) \\[label=\"((?:[^\"\\\\]|\\\\.)*)\".*");
+    private static final Pattern DOT_CLUSTER = Pattern.compile("        label=\"(.*)\";");
+    private static final Pattern DOT_EDGE = Pattern.compile("\\s*(n\\w+) -> (n\\w+);");
+    private static final Pattern MERMAID_NODE = Pattern.compile("\\s*(n\\w+)(?:\\(\\[|\\[/?)\"([^\"]*)\".*");
+    private static final Pattern MERMAID_CLUSTER = Pattern.compile("    subgraph \\w+\\[\"(.*)\"\\]");
+    private static final Pattern MERMAID_EDGE = Pattern.compile("\\s*(n\\w+) --> (n\\w+)");
+
+    private static List<String> export(String format, int collapse, String title, Collection<TypeNode> types)
+    {
+        return capture(out ->
+        {
+            var exporter = format.equals("dot") ? new DotExporter(out) : new MermaidExporter(out);
+            exporter.collapse(collapse).export(title, types);
+        }).lines().toList();
+    }
+
+    /** Reads back the nodes, clusters and edges written by either exporter. */
+    private static Graph parse(String format, List<String> lines)
+    {
+        var dot = format.equals("dot");
+        var graph = new Graph();
+        var edgeIds = new ArrayList<String[]>();
+        String cluster = null;
+        for(var line : lines)
+        {
+            Matcher m;
+            if((m = (dot ? DOT_CLUSTER : MERMAID_CLUSTER).matcher(line)).matches())
+            {
+                cluster = m.group(1);
+            }
+            else if(line.equals(dot ? "    }" : "    end"))
+            {
+                cluster = null;
+            }
+            else if((m = (dot ? DOT_NODE : MERMAID_NODE).matcher(line)).matches())
+            {
+                graph.labels.put(m.group(1), m.group(2));
+                graph.clusters.put(m.group(2), (cluster == null) ? "-" : cluster);
+            }
+            else if((m = (dot ? DOT_EDGE : MERMAID_EDGE).matcher(line)).matches())
+            {
+                edgeIds.add(new String[] {m.group(1), m.group(2)});
+            }
+        }
+        for(var edge : edgeIds)
+        {
+            assertThat(graph.edges.add(graph.labels.get(edge[0]) + " -> " + graph.labels.get(edge[1])))
+                .describedAs("duplicate edge %s -> %s", edge[0], edge[1])
+                .isTrue();
+        }
+        return graph;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "dot", "mermaid" })
+    void clustersAndEdges(String format)
+    {
+        var types = build("a/b/X.java", "package a.b; class X extends Ext {}",
+                          "a/b/I.java", "package a.b; interface I {}",
+                          "c/Y.java", "package c; class Y extends a.b.X implements a.b.I {}");
+        var graph = parse(format, export(format, 0, "Java", types));
+
+        assertThat(graph.clusters).isEqualTo(Map.of("X", "a.b", "I", "a.b", "Y", "c", "Ext", "-"));
+        assertThat(graph.edges).containsExactlyInAnyOrder("X -> Ext", "Y -> X", "Y -> I");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "dot", "mermaid" })
+    void collapsedNodes(String format)
+    {
+        // Big has 3 subtypes, and Root has 8, including S1, W, S2 and S3 by way of its small
+        // children. B1 also implements K, outside either subtree.
+        var types = build("p/T.java", "package p; class Root {} class Big extends Root {} interface K {}"
+                                      + " class B1 extends Big implements K {} class B2 extends Big {}"
+                                      + " class B3 extends Big {} class S1 extends Root {} class W extends S1 {}"
+                                      + " class S2 extends Root {} class S3 extends Root {}");
+
+        // With a threshold of 2, Big is collapsed, and so are Root's small children, together.
+        var graph = parse(format, export(format, 2, "Java", types));
+        assertThat(graph.clusters).isEqualTo(Map.of("Root", "p", "Big", "p", "K", "p", "3 subtypes", "p", "4 subtypes", "p"));
+        assertThat(graph.edges).containsExactlyInAnyOrder(
+            "Big -> Root", "4 subtypes -> Root", "3 subtypes -> Big", "3 subtypes -> K");
+
+        // With a threshold of 4, Big is small, so Root's whole subtree is collapsed.
+        graph = parse(format, export(format, 4, "Java", types));
+        assertThat(graph.clusters.keySet()).containsExactlyInAnyOrder("Root", "K", "8 subtypes");
+        assertThat(graph.edges).containsExactlyInAnyOrder("8 subtypes -> Root", "8 subtypes -> K");
+
+        // Without W and S3, Root's small children are within the threshold, and so are shown.
+        types = build("p/T.java", "package p; class Root {} class Big extends Root {} class B1 extends Big {}"
+                                  + " class B2 extends Big {} class B3 extends Big {} class S1 extends Root {}"
+                                  + " class S2 extends Root {}");
+        graph = parse(format, export(format, 2, "Java", types));
+        assertThat(graph.clusters.keySet()).containsExactlyInAnyOrder("Root", "Big", "S1", "S2", "3 subtypes");
+        assertThat(graph.edges).containsExactlyInAnyOrder(
+            "Big -> Root", "S1 -> Root", "S2 -> Root", "3 subtypes -> Big");
+    }
+
+    @Test
+    void dotEscaping()
+    {
+        var lines = export("dot", 0, "a \"b\" \\ c", List.of(new ExternalTypeNode("Q\"<#>\\", TypeCategory.CLASS, "class")));
+        assertThat(lines).contains("digraph \"a \\\"b\\\" \\\\ c\" {",
+                                   "    label=\"a \\\"b\\\" \\\\ c\";",
+                                   "    n0 [label=\"Q\\\"<#>\\\\\", style=dashed, color=grey50, fontcolor=grey50];");
+    }
+
+    @Test
+    void mermaidEscapingAndFences()
+    {
+        var lines = capture(out ->
+        {
+            var exporter = new MermaidExporter(out);
+            exporter.export("a \"b\" \\ c", List.of(new ExternalTypeNode("Q\"<#>\\", TypeCategory.CLASS, "class")));
+            exporter.export("Python", List.of(new ExternalTypeNode("R", TypeCategory.INTERFACE, "interface")));
+        }).lines().toList();
+
+        assertThat(lines).containsSubsequence("```mermaid", "---", "title: \"a \\\"b\\\" \\\\ c\"", "---", "flowchart BT",
+                                              "    n0[\"Q#quot;#lt;#35;#gt;\\\"]:::external", "```",
+                                              "```mermaid", "---", "title: \"Python\"", "---", "flowchart BT",
+                                              "    n0([\"R\"]):::external", "```");
+        assertThat(lines.stream().filter(line -> line.startsWith("```"))).hasSize(4);
+    }
+}
@@ -0,0 +1,271 @@
+package au.djac.polytree.view;
+import static au.djac.polytree.tree.TreeTestUtil.*;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+import au.djac.polytree.tree.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+import java.util.stream.*;
+
+class JsonExporterTests
+{
+    private final LanguageSet languages = new LanguageSet();
+
+    /**
+     * A minimal JSON reader, giving Maps, Lists, Strings, Longs, Booleans and nulls. It's strict
+     * about syntax, so that any malformed output fails the test.
+     */
+    private static class JsonReader
+    {
+        private final String text;
+        private int pos = 0;
+
+        private JsonReader(String text)
+        {
+            this.text = text;
+        }
+
+        static Object parse(String text)
+        {
+            var reader = new JsonReader(text);
+            var value = reader.value();
+            reader.skipSpace();
+            assertThat(reader.pos).describedAs("end of JSON").isEqualTo(text.length());
+            return value;
+        }
+
+        private void skipSpace()
+        {
+            while(pos < text.length() && " \t\r\n".indexOf(text.charAt(pos)) != -1) { pos++; }
+        }
+
+        private void expect(char ch)
+        {
+            skipSpace();
+            assertThat(pos < text.length() && text.charAt(pos) == ch)
+                .describedAs("'%s' expected at %d in %s", ch, pos, text)
+                .isTrue();
+            pos++;
+        }
+
+        private boolean next(char ch)
+        {
+            skipSpace();
+            if(pos < text.length() && text.charAt(pos) == ch)
+            {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private Object value()
+        {
+            skipSpace();
+            var ch = text.charAt(pos);
+            if(ch == '{')
+            {
+                pos++;
+                var map = new LinkedHashMap<String,Object>();
+                if(!next('}'))
+                {
+                    do
+                    {
+                        skipSpace();
+                        var key = string();
+                        expect(':');
+                        assertThat(map.put(key, value())).describedAs("duplicate key %s", key).isNull();
+                    }
+                    while(next(','));
+                    expect('}');
+                }
+                return map;
+            }
+            if(ch == '[')
+            {
+                pos++;
+                var list = new ArrayList<Object>();
+                if(!next(']'))
+                {
+                    do { list.add(value()); } while(next(','));
+                    expect(']');
+                }
+                return list;
+            }
+            if(ch == '"')  { return string(); }
+            if(text.startsWith("true", pos))  { pos += 4; return true; }
+            if(text.startsWith("false", pos)) { pos += 5; return false; }
+            if(text.startsWith("null", pos))  { pos += 4; return null; }
+
+            var start = pos;
+            while(pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '-'))
+            {
+                pos++;
+            }
+            assertThat(pos).describedAs("value expected at %d in %s", start, text).isGreaterThan(start);
+            return Long.parseLong(text.substring(start, pos));
+        }
+
+        private String string()
+        {
+            expect('"');
+            var s = new StringBuilder();
+            while(true)
+            {
+                var ch = text.charAt(pos++);
+                if(ch == '"') { return s.toString(); }
+                assertThat(ch).describedAs("raw control character").isGreaterThanOrEqualTo(' ');
+                if(ch != '\\')
+                {
+                    s.append(ch);
+                    continue;
+                }
+                var escaped = text.charAt(pos++);
+                switch(escaped)
+                {
+                    case '"': case '\\': case '/': s.append(escaped); break;
+                    case 'b': s.append('\b'); break;
+                    case 'f': s.append('\f'); break;
+                    case 'n': s.append('\n'); break;
+                    case 'r': s.append('\r'); break;
+                    case 't': s.append('\t'); break;
+                    case 'u':
+                        s.append((char)Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        fail("Invalid escape \\" + escaped);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String,Object> obj(Object value)
+    {
+        return (Map<String,Object>)value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Object value)
+    {
+        return (List<Object>)value;
+    }
+
+    private String export(boolean ndjson, Map<String,Collection<TypeNode>> typesByExtension)
+    {
+        return capture(out ->
+        {
+            var exporter = new JsonExporter(out).ndjson(ndjson);
+            exporter.start();
+            typesByExtension.forEach((ext, types) -> exporter.export(languages.getByExtension(ext).get(), types));
+            exporter.finish();
+        });
+    }
+
+    @Test
+    void framing()
+    {
+        var types = new LinkedHashMap<String,Collection<TypeNode>>();
+        types.put("java", build("test.java", "class A {} class B extends A {}"));
+        types.put("py", build("test.py", "class C: pass\n"));
+
+        var doc = obj(JsonReader.parse(export(false, types)));
+        var projects = list(doc.get("projects"));
+        assertThat(projects.stream().map(p -> obj(p).get("language")))
+            .containsExactly(languages.getByExtension("java").get().getName(),
+                             languages.getByExtension("py").get().getName());
+        assertThat(projects.stream().map(p -> list(obj(p).get("types")).size())).containsExactly(2, 1);
+
+        // One type per line, each with its language.
+        var lines = export(true, types).lines().toList();
+        assertThat(lines).hasSize(3);
+        assertThat(lines.stream().map(line -> obj(JsonReader.parse(line)).get("name"))).containsExactly("A", "B", "C");
+        assertThat(lines.stream().map(line -> obj(JsonReader.parse(line)).get("language")).distinct()).hasSize(2);
+
+        // No projects at all.
+        assertThat(obj(JsonReader.parse(export(false, Map.of()))).get("projects")).isEqualTo(List.of());
+        assertThat(export(true, Map.of())).isEmpty();
+    }
+
+    @Test
+    void stringEscaping()
+    {
+        var name = "Q\"\\/\n\r\t\u0001\u001f\u007fé ";
+        var doc = obj(JsonReader.parse(export(false, Map.of("java", List.of(
+            new ExternalTypeNode(name, TypeCategory.CLASS, "class"))))));
+        var type = obj(list(obj(list(doc.get("projects")).get(0)).get("types")).get(0));
+        assertThat(type.get("name")).isEqualTo(name);
+        assertThat(type.get("external")).isEqualTo(true);
+    }
+
+    @Test
+    void methodReferences()
+    {
+        // Many overriding subtypes, whose order in overriddenBy would otherwise depend on hashing.
+        var source = new StringBuilder("class A { void m(A a) {} void n() {} void p() {} }\n");
+        for(int i = 0; i < 20; i++)
+        {
+            source.append("class S" + i + " extends A { void n() {} void m(A a) {} }\n");
+        }
+        source.append("class T extends S3 { void p() {} void m(A a) {} }\n");
+        var typeNodes = build("test.java", source.toString());
+
+        var json = export(false, Map.of("java", typeNodes));
+        assertThat(export(false, Map.of("java", typeNodes))).describedAs("repeated export").isEqualTo(json);
+        var types = list(obj(list(obj(JsonReader.parse(json)).get("projects")).get(0)).get("types"));
+
+        var nodesByName = typeNodes.stream().collect(Collectors.toMap(TypeNode::getName, t -> t));
+        var nChecked = 0;
+        for(int id = 0; id < types.size(); id++)
+        {
+            var type = obj(types.get(id));
+            assertThat(type.get("id")).isEqualTo((long)id);
+            var node = nodesByName.get((String)type.get("name"));
+            var methods = list(type.get("methods"));
+            assertThat(methods).hasSize(node.getMethods().size());
+
+            for(int i = 0; i < methods.size(); i++)
+            {
+                var method = obj(methods.get(i));
+                var methodNode = node.getMethods().get(i);
+                assertThat(method.get("name")).isEqualTo(methodNode.getName());
+
+                var overrides = method.get("overrides");
+                assertThat(overrides == null ? null : describe(types, overrides))
+                    .isEqualTo(methodNode.getOverrides() == null ? null : describe(methodNode.getOverrides()));
+
+                var overriddenBy = (method.get("overriddenBy") == null) ? List.of() : list(method.get("overriddenBy"));
+                assertThat(overriddenBy.stream().map(ref -> describe(types, ref)).sorted())
+                    .containsExactlyElementsOf(methodNode.getOverriddenBy().stream().map(JsonExporterTests::describe).sorted().toList());
+                var refs = overriddenBy.stream().map(ref -> obj(ref).get("type") + "." + obj(ref).get("method")).toList();
+                assertThat(refs).isEqualTo(overriddenBy.stream()
+                    .sorted(Comparator.comparingLong((Object ref) -> (Long)obj(ref).get("type"))
+                                      .thenComparingLong(ref -> (Long)obj(ref).get("method")))
+                    .map(ref -> obj(ref).get("type") + "." + obj(ref).get("method"))
+                    .toList());
+                nChecked += overriddenBy.size() + (overrides == null ? 0 : 1);
+            }
+        }
+        // A.m and A.n each have 20 overrides, S3.m has 1 (from T), and T.p overrides A.p. Each
+        // link is checked from both ends.
+        assertThat(nChecked).isEqualTo(2 * (20 + 20 + 1 + 1));
+    }
+
+    /** Describes a method (as referred to in the JSON) by its type name, name and parameter count. */
+    private static String describe(List<Object> types, Object ref)
+    {
+        var type = obj(types.get((int)(long)(Long)obj(ref).get("type")));
+        var method = obj(list(type.get("methods")).get((int)(long)(Long)obj(ref).get("method")));
+        return type.get("name") + "." + method.get("name") + "/" + list(method.get("parameters")).size();
+    }
+
+    private static String describe(MethodNode method)
+    {
+        return method.getType().getName() + "." + method.getName() + "/" + method.getParameters().size();
+    }
+}
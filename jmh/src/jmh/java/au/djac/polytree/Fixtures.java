@@ -0,0 +1,375 @@
+package au.djac.polytree;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Generates the (deterministic) source code and projects that the benchmarks run against.
+ *
+ * "small" and "medium" inputs are ordinary code of different sizes (a few KB and a few tens of KB).
+ * "pathological" inputs lean on the things that are hard to parse with regexes: deep bracket
+ * nesting, long comments and strings that look like declarations, and so on.
+ */
+public class Fixtures
+{
+    private Fixtures() {}
+
+    public static String source(String language, String size)
+    {
+        switch(language + "/" + size)
+        {
+            case "java/small":          return javaClass(new Random(1), "Small", 1, 4);
+            case "java/medium":         return javaClass(new Random(1), "Medium", 12, 6);
+            case "java/pathological":   return javaPathological();
+            case "python/small":        return pythonModule(new Random(1), 1, 4);
+            case "python/medium":       return pythonModule(new Random(1), 12, 6);
+            case "python/pathological": return pythonPathological();
+            default: throw new IllegalArgumentException(language + "/" + size);
+        }
+    }
+
+    public static String extension(String language)
+    {
+        return language.equals("python") ? "py" : language;
+    }
+
+    private static String javaClass(Random random, String name, int nestedTypes, int methods)
+    {
+        var s = new StringBuilder();
+        s.append("package bench.").append(name.toLowerCase()).append(";\n\n")
+         .append("import java.util.*;\nimport java.util.function.*;\n\n")
+         .append("/** Generated benchmark input. */\n")
+         .append("public class ").append(name).append(" implements Comparable<").append(name).append(">\n{\n");
+        javaMembers(s, random, "    ", methods);
+        s.append("    @Override public int compareTo(").append(name).append(" o) { return 0; }\n\n");
+
+        for(int i = 0; i < nestedTypes; i++)
+        {
+            var superType = i == 0 ? "Object" : "Nested" + random.nextInt(i);
+            if(i % 5 == 4)
+            {
+                s.append("    public interface Nested").append(i).append("<T extends Comparable<? super T>>\n    {\n")
+                 .append("        T get(Map<String,List<T>> source, int index);\n")
+                 .append("        default void reset() { /* nothing */ }\n    }\n\n");
+            }
+            else
+            {
+                s.append("    protected static abstract class Nested").append(i).append(" extends ")
+                 .append(superType).append(" implements Runnable, Cloneable\n    {\n");
+                javaMembers(s, random, "        ", methods);
+                s.append("    }\n\n");
+            }
+        }
+        return s.append("}\n").toString();
+    }
+
+    private static void javaMembers(StringBuilder s, Random random, String indent, int methods)
+    {
+        s.append(indent).append("private final Map<String,List<Integer>> values = new HashMap<>();\n")
+         .append(indent).append("private String label = \"a {string} with class Foo extends Bar\";\n\n");
+
+        for(int i = 0; i < methods; i++)
+        {
+            s.append(indent).append("/**\n")
+             .append(indent).append(" * Method ").append(i).append(", which does something {useful}.\n")
+             .append(indent).append(" */\n");
+            switch(random.nextInt(4))
+            {
+                case 0:
+                    s.append(indent).append("public void run() { label = label + ").append(i).append("; }\n\n");
+                    break;
+                case 1:
+                    s.append(indent).append("public <T extends Number> List<T> method").append(i)
+                     .append("(final List<? extends T> items, int count, String... names)\n")
+                     .append(indent).append("{\n")
+                     .append(indent).append("    var result = new ArrayList<T>();\n")
+                     .append(indent).append("    items.forEach(item -> { if(item != null) { result.add(item); } });\n")
+                     .append(indent).append("    return result; // '}' inside a comment\n")
+                     .append(indent).append("}\n\n");
+                    break;
+                case 2:
+                    s.append(indent).append("protected Runnable method").append(i).append("(Map<String,int[]> map)\n")
+                     .append(indent).append("{\n")
+                     .append(indent).append("    return new Runnable()\n")
+                     .append(indent).append("    {\n")
+                     .append(indent).append("        @Override public void run() { System.out.println(\"}\" + map); }\n")
+                     .append(indent).append("    };\n")
+                     .append(indent).append("}\n\n");
+                    break;
+                default:
+                    s.append(indent).append("@SuppressWarnings(\"unchecked\")\n")
+                     .append(indent).append("static int method").append(i)
+                     .append("(Function<String,Integer> f, BiFunction<Integer,Integer,Integer> g) throws Exception\n")
+                     .append(indent).append("{\n")
+                     .append(indent).append("    return g.apply(f.apply(\"x\"), (int)(Math.max(1, 2) * (3 + 4)));\n")
+                     .append(indent).append("}\n\n");
+                    break;
+            }
+        }
+    }
+
+    private static String javaPathological()
+    {
+        var s = new StringBuilder();
+        s.append("package bench.pathological;\n\nimport java.util.*;\n\n");
+
+        // A long comment full of things that look like declarations.
+        s.append("/*\n");
+        for(int i = 0; i < 200; i++)
+        {
+            s.append(" * public class Fake").append(i).append(" extends Base<List<Map<K,V>>> { void f(int x) {} }\n");
+        }
+        s.append(" */\n");
+
+        s.append("public class Pathological\n{\n");
+
+        // Deeply-nested generic types.
+        for(int depth = 4; depth <= 24; depth += 4)
+        {
+            s.append("    public ").append(nest("Map<String,", "Integer", ">", depth))
+             .append(" generic").append(depth).append("(")
+             .append(nest("List<", "String", ">", depth)).append(" p) { return null; }\n");
+        }
+
+        // Deeply-nested parentheses, inside field initialisers and parameter defaults.
+        for(int depth = 4; depth <= 40; depth += 4)
+        {
+            s.append("    int paren").append(depth).append(" = ").append(nest("(1 + ", "1", ")", depth)).append(";\n");
+            s.append("    void parens").append(depth).append("(int x) { call").append(nest("(x, ", "x", ")", depth))
+             .append("; }\n");
+        }
+
+        // Long strings containing quotes, escapes and braces.
+        for(int i = 0; i < 50; i++)
+        {
+            s.append("    String str").append(i).append(" = \"");
+            for(int j = 0; j < 20; j++)
+            {
+                s.append("\\\"class X").append(j).append(" { void f() {} }\\\" ");
+            }
+            s.append("\";\n");
+        }
+
+        // Anonymous classes and lambdas nested inside one another.
+        s.append("    Runnable anon = ");
+        for(int depth = 0; depth < 12; depth++)
+        {
+            s.append("new Runnable() { public void run() { Runnable r").append(depth).append(" = () -> { ");
+        }
+        s.append("System.out.println(\"}\");");
+        for(int depth = 0; depth < 12; depth++)
+        {
+            s.append(" }; } }");
+        }
+        s.append(";\n");
+
+        // A method with a very long parameter list.
+        s.append("    public void manyParams(");
+        for(int i = 0; i < 80; i++)
+        {
+            s.append(i > 0 ? ", " : "").append("final @Deprecated Map<String,List<int[]>> p").append(i);
+        }
+        s.append(") {}\n");
+
+        // Nested types.
+        for(int depth = 0; depth < 20; depth++)
+        {
+            s.append("    ".repeat(depth + 1)).append("static class Inner").append(depth).append(" extends Pathological {\n");
+        }
+        for(int depth = 19; depth >= 0; depth--)
+        {
+            s.append("    ".repeat(depth + 1)).append("}\n");
+        }
+
+        return s.append("}\n").toString();
+    }
+
+    private static String pythonModule(Random random, int classes, int methods)
+    {
+        var s = new StringBuilder();
+        s.append("\"\"\"Generated benchmark input.\"\"\"\n\nimport os\nfrom typing import List, Dict\n\n");
+        for(int i = 0; i < classes; i++)
+        {
+            var superType = i == 0 ? "object" : "Class" + random.nextInt(i);
+            s.append("class Class").append(i).append("(").append(superType).append(", metaclass=Meta):\n")
+             .append("    '''A class with a {docstring} that mentions class Foo(Bar).'''\n")
+             .append("    label = \"a string # not a comment\"\n\n");
+
+            for(int j = 0; j < methods; j++)
+            {
+                switch(random.nextInt(3))
+                {
+                    case 0:
+                        s.append("    def method").append(j).append("(self, x: int = 5, *args, **kwargs) -> str:\n")
+                         .append("        # Comment with def fake(): pass\n")
+                         .append("        return str(x) + ''.join(args)\n\n");
+                        break;
+                    case 1:
+                        s.append("    @staticmethod\n")
+                         .append("    def method").append(j).append("(values: Dict[str, List[int]],\n")
+                         .append("                 default=(1, (2, 3), [4, 5])):\n")
+                         .append("        def helper(v):\n")
+                         .append("            return v * 2\n")
+                         .append("        return [helper(v) for v in values]\n\n");
+                        break;
+                    default:
+                        s.append("    @property\n")
+                         .append("    def method").append(j).append("(self):\n")
+                         .append("        return {'key': \"value\", 'other': [1, 2, 3]}\n\n");
+                        break;
+                }
+            }
+            s.append("\n");
+        }
+        return s.toString();
+    }
+
+    private static String pythonPathological()
+    {
+        var s = new StringBuilder();
+        s.append("import os\n\n");
+
+        // Long strings full of things that look like declarations.
+        s.append("DOC = \"\"\"\n");
+        for(int i = 0; i < 200; i++)
+        {
+            s.append("class Fake").append(i).append("(Base):\n    def f(self, x=(1, 2)): pass\n");
+        }
+        s.append("\"\"\"\n\n");
+        for(int i = 0; i < 50; i++)
+        {
+            s.append("s").append(i).append(" = '");
+            for(int j = 0; j < 20; j++)
+            {
+                s.append("\\'class X").append(j).append("(Y): pass\\' ");
+            }
+            s.append("'\n");
+        }
+
+        // Deeply-nested brackets in default values.
+        s.append("\nclass Pathological:\n");
+        for(int depth = 4; depth <= 40; depth += 4)
+        {
+            s.append("    def parens").append(depth).append("(self, x=").append(nest("(1, ", "1", ")", depth))
+             .append(", y=").append(nest("[", "0", "]", depth)).append("):\n        pass\n\n");
+        }
+
+        // Line continuations and a very long parameter list.
+        s.append("    def many_params(self");
+        for(int i = 0; i < 80; i++)
+        {
+            s.append(", \\\n            p").append(i).append(": Dict[str, List[int]] = None");
+        }
+        s.append("):\n        pass\n\n");
+
+        // Nested classes and functions.
+        for(int depth = 0; depth < 20; depth++)
+        {
+            var indent = "    ".repeat(depth + 1);
+            s.append(indent).append(depth % 2 == 0 ? "class Inner" : "def inner").append(depth)
+             .append(depth % 2 == 0 ? "(Pathological):\n" : "(self):\n");
+        }
+        s.append("    ".repeat(21)).append("pass\n");
+        return s.toString();
+    }
+
+    private static String nest(String open, String middle, String close, int depth)
+    {
+        return open.repeat(depth) + middle + close.repeat(depth);
+    }
+
+    /**
+     * Generates and parses a Java project with the given number of types, spread across packages
+     * and referring to one another via a mixture of explicit, wildcard and same-package imports.
+     */
+    public static Project javaProject(int nTypes)
+    {
+        var language = new LanguageSet().scanning(true).getByExtension("java").get();
+        var project = new Project("bench", language);
+        var random = new Random(1);
+        int nPackages = Math.max(1, nTypes / 20);
+
+        for(int i = 0; i < nTypes; i++)
+        {
+            var pkg = "p" + (i % nPackages);
+            var s = new StringBuilder();
+            s.append("package ").append(pkg).append(";\n");
+
+            var superClass = Optional.<Integer>empty();
+            var interfaces = new ArrayList<Integer>();
+            if(i > 0)
+            {
+                superClass = Optional.of(random.nextInt(i));
+                for(int j = random.nextInt(3); j > 0; j--)
+                {
+                    interfaces.add(random.nextInt(i));
+                }
+            }
+            var referenced = new ArrayList<Integer>(interfaces);
+            superClass.ifPresent(referenced::add);
+            for(int ref : referenced)
+            {
+                var refPkg = "p" + (ref % nPackages);
+                if(!refPkg.equals(pkg))
+                {
+                    s.append(random.nextBoolean() ? "import " + refPkg + ".*;\n"
+                                                  : "import " + refPkg + ".T" + ref + ";\n");
+                }
+            }
+
+            s.append("public class T").append(i);
+            superClass.ifPresent(sc -> s.append(" extends T").append(sc));
+            if(!interfaces.isEmpty())
+            {
+                s.append(" implements ").append(String.join(", ", interfaces.stream().map(n -> "T" + n).toList()));
+            }
+            s.append("\n{\n");
+            for(int m = 0; m < 5; m++)
+            {
+                // Draw method names from a small pool, so that many of them override one another.
+                s.append("    public void m").append(random.nextInt(10)).append("(int x, String y) {}\n");
+            }
+            s.append("}\n");
+
+            var file = new SourceFile(project, Path.of(pkg, "T" + i + ".java"), s.toString());
+            language.getParser().parse(project, file);
+        }
+        return project;
+    }
+
+    /**
+     * Generates and parses a Java project consisting of a single chain of inheritance, 'depth'
+     * classes deep. Each class overrides half of its 'methods' methods from the classes above it,
+     * and adds the other half, so that the set of inherited methods keeps growing down the chain.
+     */
+    public static Project deepJavaProject(int depth, int methods)
+    {
+        var language = new LanguageSet().scanning(true).getByExtension("java").get();
+        var project = new Project("bench", language);
+        var random = new Random(1);
+
+        for(int i = 0; i < depth; i++)
+        {
+            var s = new StringBuilder();
+            s.append("package deep;\n");
+            s.append("public class D").append(i);
+            if(i > 0)
+            {
+                s.append(" extends D").append(i - 1);
+            }
+            s.append("\n{\n");
+            for(int m = 0; m < methods; m++)
+            {
+                var name = (m % 2 == 0 || i == 0) ? "m" + i + "_" + m : "m" + random.nextInt(i) + "_" + (m - 1);
+                s.append("    public void ").append(name).append("(int x, String y) {}\n");
+            }
+            s.append("}\n");
+
+            var file = new SourceFile(project, Path.of("deep", "D" + i + ".java"), s.toString());
+            language.getParser().parse(project, file);
+        }
+        return project;
+    }
+}
@@ -0,0 +1,66 @@
+package au.djac.polytree.definitions;
+import au.djac.polytree.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.*;
+
+/**
+ * Times the resolution of every type name (supertypes, return types, parameter types and checked
+ * exceptions) in a generated project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QualifiedNameBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int types;
+
+    /** Whether to keep resolution results from one invocation to the next. */
+    @Param({"false", "true"})
+    public boolean warmCache;
+
+    private Project project;
+    private List<QualifiedTypeName> names;
+
+    @Setup
+    public void setup()
+    {
+        project = Fixtures.javaProject(types);
+        names = Stream.concat(
+            project.walk(TypeDefinition.class).flatMap(TypeDefinition::getSuperTypes),
+            project.walk(MethodDefinition.class).flatMap(method -> Stream.of(
+                method.getReturnType().stream(),
+                method.getParameters().flatMap(p -> p.getType().stream()),
+                method.getCheckedExceptions()).flatMap(s -> s)))
+            .toList();
+    }
+
+    /**
+     * Otherwise, after the first invocation, resolve() would only be timing ResolutionCache hits.
+     */
+    @Setup(Level.Invocation)
+    public void clearCache()
+    {
+        if(!warmCache)
+        {
+            project.getResolutionCache().clear();
+        }
+    }
+
+    @Benchmark
+    public void resolve(Blackhole blackhole)
+    {
+        for(var name : names)
+        {
+            blackhole.consume(name.resolve());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the censoring of comments and strings (the first step of both regex-based parsers), and
+ * the censoring of individual ranges on a shared (copy-on-write) CensoredString.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CensoredStringBenchmark
+{
+    @Param({"medium", "pathological"})
+    public String size;
+
+    private String javaContent;
+    private String pythonContent;
+    private CensoredString shared;
+
+    @Setup
+    public void setup()
+    {
+        javaContent = Fixtures.source("java", size);
+        pythonContent = Fixtures.source("python", size);
+        shared = new CensoredString(javaContent);
+    }
+
+    @Benchmark
+    public CensoredString censorJava()
+    {
+        var content = new CensoredString(javaContent);
+        content.censor(JavaParser.MAIN_CENSOR_PATTERN);
+        return content;
+    }
+
+    @Benchmark
+    public CensoredString censorPython()
+    {
+        var content = new CensoredString(pythonContent);
+        content.censor(PythonParser.MAIN_CENSOR_PATTERN);
+        return content;
+    }
+
+    @Benchmark
+    public CensoredString censorRanges()
+    {
+        var content = shared.view(0, shared.length());
+        for(int i = 0; i + 20 < content.length(); i += 100)
+        {
+            content.censor(i, i + 20);
+        }
+        return content;
+    }
+}
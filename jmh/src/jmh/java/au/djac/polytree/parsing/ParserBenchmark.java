@@ -0,0 +1,50 @@
+package au.djac.polytree.parsing;
+import au.djac.polytree.*;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.languages.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times a single parse of one source file, for each parser (regex-based and scanning) and each
+ * size of input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark
+{
+    @Param({"java", "python"})
+    public String language;
+
+    @Param({"regex", "scanning"})
+    public String parser;
+
+    @Param({"small", "medium", "pathological"})
+    public String size;
+
+    private Language lang;
+    private String content;
+
+    @Setup
+    public void setup()
+    {
+        lang = new LanguageSet().scanning(parser.equals("scanning"))
+                                .getByExtension(Fixtures.extension(language)).get();
+        content = Fixtures.source(language, size);
+    }
+
+    @Benchmark
+    public Project parse()
+    {
+        var project = new Project("bench", lang);
+        lang.getParser().parse(project, new SourceFile(project, Path.of("Bench." + Fixtures.extension(language)), content));
+        return project;
+    }
+}
@@ -0,0 +1,60 @@
+package au.djac.polytree.tree;
+import au.djac.polytree.*;
+import au.djac.polytree.definitions.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the construction of the inheritance tree for a single deep chain of classes, where the
+ * override analysis has to carry a large (and growing) table of inherited methods down the chain.
+ * Run with -Pprofilers=gc to see the memory allocated per build (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeepHierarchyBenchmark
+{
+    @Param({"100", "1000"})
+    public int depth;
+
+    @Param({"20"})
+    public int methods;
+
+    /** Whether to keep resolution results from one invocation to the next. */
+    @Param({"false", "true"})
+    public boolean warmCache;
+
+    private Project project;
+    private List<TypeDefinition> definitions;
+
+    @Setup
+    public void setup()
+    {
+        project = Fixtures.deepJavaProject(depth, methods);
+        definitions = project.walk(TypeDefinition.class).toList();
+    }
+
+    /** As in TreeBuilderBenchmark, makes each build resolve its supertypes afresh. */
+    @Setup(Level.Invocation)
+    public void clearCache()
+    {
+        if(!warmCache)
+        {
+            project.getResolutionCache().clear();
+        }
+    }
+
+    @Benchmark
+    public Collection<TypeNode> build()
+    {
+        var treeBuilder = new TreeBuilder();
+        definitions.forEach(treeBuilder::addDefinition);
+        return treeBuilder.build();
+    }
+}
@@ -0,0 +1,56 @@
+package au.djac.polytree.tree;
+import au.djac.polytree.*;
+import au.djac.polytree.definitions.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the construction of the inheritance tree (including the override analysis) for a
+ * generated project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBuilderBenchmark
+{
+    @Param({"100", "1000"})
+    public int types;
+
+    /** Whether to keep resolution results from one invocation to the next. */
+    @Param({"false", "true"})
+    public boolean warmCache;
+
+    private Project project;
+    private List<TypeDefinition> definitions;
+
+    @Setup
+    public void setup()
+    {
+        project = Fixtures.javaProject(types);
+        definitions = project.walk(TypeDefinition.class).toList();
+    }
+
+    /** TreeBuilder resolves type names through the project's ResolutionCache. */
+    @Setup(Level.Invocation)
+    public void clearCache()
+    {
+        if(!warmCache)
+        {
+            project.getResolutionCache().clear();
+        }
+    }
+
+    @Benchmark
+    public Collection<TypeNode> build()
+    {
+        var treeBuilder = new TreeBuilder();
+        definitions.forEach(treeBuilder::addDefinition);
+        return treeBuilder.build();
+    }
+}
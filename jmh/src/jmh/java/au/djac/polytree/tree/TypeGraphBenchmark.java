@@ -0,0 +1,80 @@
+package au.djac.polytree.tree;
+import au.djac.polytree.definitions.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the construction of a TypeGraph and its transitive closure, for a synthetic inheritance
+ * graph in which about a fifth of the types have subtypes, and a quarter implement a second
+ * (interface-like) supertype.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypeGraphBenchmark
+{
+    @Param({"10000", "100000"})
+    public int types;
+
+    private List<TypeNode> nodes;
+    private TypeGraph graph;
+
+    @Setup
+    public void setup()
+    {
+        var random = new Random(1);
+        nodes = new ArrayList<>(types);
+        for(int i = 0; i < types; i++)
+        {
+            nodes.add(new ExternalTypeNode("T" + i, TypeCategory.CLASS, "class"));
+        }
+        for(int i = 1; i < types; i++)
+        {
+            link(nodes.get(random.nextInt(Math.max(1, i / 4))), nodes.get(i));
+            if(random.nextInt(4) == 0)
+            {
+                link(nodes.get(random.nextInt(Math.min(i, 500))), nodes.get(i));
+            }
+        }
+        graph = new TypeGraph(nodes);
+    }
+
+    private static void link(TypeNode parent, TypeNode child)
+    {
+        if(!child.getParents().contains(parent))
+        {
+            child.addParent(parent);
+            parent.addChild(child);
+        }
+    }
+
+    @Benchmark
+    public TypeGraph build()
+    {
+        return new TypeGraph(nodes);
+    }
+
+    @Benchmark
+    public boolean buildWithClosure()
+    {
+        var g = new TypeGraph(nodes);
+        return g.isAncestor(0, g.size() - 1);
+    }
+
+    @Benchmark
+    public long ancestorsOfEveryType()
+    {
+        long total = 0;
+        for(int id = 0; id < graph.size(); id++)
+        {
+            total += graph.getAncestors(id).cardinality();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,48 @@
+package au.djac.polytree.view;
+import au.djac.polytree.*;
+import au.djac.polytree.definitions.*;
+import au.djac.polytree.tree.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the rendering of the inheritance tree for a generated project, discarding the output so
+ * that only the traversal and formatting are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeViewerBenchmark
+{
+    @Param({"100", "1000"})
+    public int types;
+
+    @Param({"true", "false"})
+    public boolean ansi;
+
+    private Collection<TypeNode> typeNodes;
+    private Output output;
+
+    @Setup
+    public void setup()
+    {
+        var treeBuilder = new TreeBuilder();
+        Fixtures.javaProject(types).walk(TypeDefinition.class).forEach(treeBuilder::addDefinition);
+        typeNodes = treeBuilder.build();
+        output = new Output(new PrintStream(OutputStream.nullOutputStream())).ansi(ansi);
+    }
+
+    @Benchmark
+    public void view()
+    {
+        new TreeViewer(output).view(typeNodes);
+        output.flush();
+    }
+}